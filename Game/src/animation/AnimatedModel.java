@@ -1,6 +1,8 @@
 package animation;
 import org.joml.Matrix4f;
 
+import api.main.src.AnimationState;
+
 import engine.Mesh;
 import engine.Texture;
 
@@ -102,6 +104,27 @@ public class AnimatedModel {
 		animator.update(deltaTime);
 	}
 
+	/**
+	 * Updates the pose of this entity from the animation state replicated by
+	 * the server. Must be called every frame instead of
+	 * {@link #update(float)} for entities controlled by the server.
+	 * 
+	 * Nothing calls this yet: the game doesn't draw the entities it receives
+	 * from the server, and only ships a single clip. Drawing them needs a
+	 * model per entity and a table of clips indexed by
+	 * {@link AnimationState#IDLE} and {@link AnimationState#WALK}.
+	 * 
+	 * @param state
+	 *            - the replicated animation state.
+	 * @param tick
+	 *            - the current world tick, which can be between two ticks.
+	 * @param clips
+	 *            - the animations, indexed by clip id.
+	 */
+	public void update(AnimationState state, double tick, Animation[] clips) {
+		animator.update(state, tick, clips);
+	}
+
 	/**
 	 * Gets an array of the all important model-space transforms of all the
 	 * joints (with the current animation pose applied) in the entity. The
@@ -5,6 +5,8 @@ import java.util.Map;
 
 import org.joml.Matrix4f;
 
+import api.main.src.AnimationState;
+
 /**
  * 
  * This class contains all the functionality to apply an animation to an
@@ -33,6 +35,10 @@ public class Animator {
 
 	private Animation currentAnimation;
 	private float animationTime = 0;
+	private float speed = 1;
+
+	private Animation blendAnimation;
+	private float blendWeight = 0;
 
 	/**
 	 * @param entity
@@ -50,10 +56,68 @@ public class Animator {
 	 *            - the new animation to carry out.
 	 */
 	public void doAnimation(Animation animation) {
-		this.animationTime = 0;
+		doAnimation(animation, 0, 1);
+	}
+
+	/**
+	 * Indicates that the entity should carry out the given animation from a
+	 * given time and at a given speed.
+	 * 
+	 * @param animation
+	 *            - the new animation to carry out.
+	 * @param startTime
+	 *            - the time in the animation to start from, in seconds.
+	 * @param speed
+	 *            - the playback speed, 1 being the animation's normal speed.
+	 */
+	public void doAnimation(Animation animation, float startTime, float speed) {
 		this.currentAnimation = animation;
+		this.speed = speed;
+		this.animationTime = animation == null ? 0 : startTime % animation.getLength();
+	}
+
+	/**
+	 * Blends a second animation over the current one. Both animations play in
+	 * step, and the pose of each joint is interpolated between them.
+	 * 
+	 * @param animation
+	 *            - the animation to blend in, or null to stop blending.
+	 * @param weight
+	 *            - the weight of the blended animation, between 0 and 1.
+	 */
+	public void blend(Animation animation, float weight) {
+		this.blendAnimation = animation;
+		this.blendWeight = weight;
+	}
+
+	/**
+	 * Plays the animation replicated by the server. The animation time is
+	 * computed from the shared world tick rather than accumulated, so every
+	 * client shows the same pose without drifting.
+	 * 
+	 * @param state
+	 *            - the replicated animation state.
+	 * @param tick
+	 *            - the current world tick, which can be between two ticks.
+	 * @param clips
+	 *            - the animations, indexed by clip id.
+	 */
+	public void update(AnimationState state, double tick, Animation[] clips) {
+		this.currentAnimation = clip(clips, state.getClip());
+		this.speed = state.getSpeed();
+		blend(clip(clips, state.getBlendClip()), state.getBlendWeight());
+		if (currentAnimation == null) {
+			return;
+		}
+		this.animationTime = state.getTime(tick) % currentAnimation.getLength();
+		update(0);
+	}
+
+	private static Animation clip(Animation[] clips, short id) {
+		return id > AnimationState.NONE && id < clips.length ? clips[id] : null;
 	}
 
+
 	/**
 	 * This method should be called each frame to update the animation currently
 	 * being played. This increases the animation time (and loops it back to
@@ -65,7 +129,7 @@ public class Animator {
 		if (currentAnimation == null) {
 			return;
 		}
-		increaseAnimationTime(deltaTime);
+		increaseAnimationTime(deltaTime * speed);
 		Map<String, Matrix4f> currentPose = calculateCurrentAnimationPose();
 		applyPoseToJoints(currentPose, entity.getRootJoint(), new Matrix4f());
 	}
@@ -102,8 +166,38 @@ public class Animator {
 	 *         the joint that they should be applied to.
 	 */
 	private Map<String, Matrix4f> calculateCurrentAnimationPose() {
-		KeyFrame[] frames = getPreviousAndNextFrames();
-		float progression = calculateProgression(frames[0], frames[1]);
+		Map<String, JointTransform> pose = calculatePose(currentAnimation, animationTime);
+		if (blendAnimation != null && blendWeight > 0) {
+			// The blended animation is played at the same point of its own length.
+			float blendTime = animationTime / currentAnimation.getLength() * blendAnimation.getLength();
+			Map<String, JointTransform> blendPose = calculatePose(blendAnimation, blendTime);
+			for (Map.Entry<String, JointTransform> joint : pose.entrySet()) {
+				JointTransform blended = blendPose.get(joint.getKey());
+				if (blended != null) {
+					joint.setValue(JointTransform.interpolate(joint.getValue(), blended, blendWeight));
+				}
+			}
+		}
+		Map<String, Matrix4f> currentPose = new HashMap<String, Matrix4f>();
+		for (Map.Entry<String, JointTransform> joint : pose.entrySet()) {
+			currentPose.put(joint.getKey(), joint.getValue().getLocalTransform());
+		}
+		return currentPose;
+	}
+
+	/**
+	 * Calculates the pose of an animation at a given time.
+	 * 
+	 * @param animation
+	 *            - the animation.
+	 * @param time
+	 *            - the time in the animation.
+	 * @return The local-space transforms of the joints, indexed by the name of
+	 *         the joint they correspond to.
+	 */
+	private Map<String, JointTransform> calculatePose(Animation animation, float time) {
+		KeyFrame[] frames = getPreviousAndNextFrames(animation, time);
+		float progression = calculateProgression(frames[0], frames[1], time);
 		return interpolatePoses(frames[0], frames[1], progression);
 	}
 
@@ -159,11 +253,15 @@ public class Animator {
 	 * previous and next keyframe. The last keyframe is used for both next and
 	 * previous if there is no next keyframe.
 	 * 
+	 * @param animation
+	 *            - the animation to look in.
+	 * @param animationTime
+	 *            - the time in the animation.
 	 * @return The previous and next keyframes, in an array which therefore will
 	 *         always have a length of 2.
 	 */
-	private KeyFrame[] getPreviousAndNextFrames() {
-		KeyFrame[] allFrames = currentAnimation.getKeyFrames();
+	private KeyFrame[] getPreviousAndNextFrames(Animation animation, float animationTime) {
+		KeyFrame[] allFrames = animation.getKeyFrames();
 		KeyFrame previousFrame = allFrames[0];
 		KeyFrame nextFrame = allFrames[0];
 		for (int i = 1; i < allFrames.length; i++) {
@@ -184,11 +282,16 @@ public class Animator {
 	 *            - the previous keyframe in the animation.
 	 * @param nextFrame
 	 *            - the next keyframe in the animation.
+	 * @param animationTime
+	 *            - the time in the animation.
 	 * @return A number between 0 and 1 indicating how far between the two
 	 *         keyframes the current animation time is.
 	 */
-	private float calculateProgression(KeyFrame previousFrame, KeyFrame nextFrame) {
+	private float calculateProgression(KeyFrame previousFrame, KeyFrame nextFrame, float animationTime) {
 		float totalTime = nextFrame.getTimeStamp() - previousFrame.getTimeStamp();
+		if (totalTime <= 0) {
+			return 0;
+		}
 		float currentTime = animationTime - previousFrame.getTimeStamp();
 		return currentTime / totalTime;
 	}
@@ -209,13 +312,13 @@ public class Animator {
 	 *         current pose. They are returned in a map, indexed by the name of
 	 *         the joint to which they should be applied.
 	 */
-	private Map<String, Matrix4f> interpolatePoses(KeyFrame previousFrame, KeyFrame nextFrame, float progression) {
-		Map<String, Matrix4f> currentPose = new HashMap<String, Matrix4f>();
+	private Map<String, JointTransform> interpolatePoses(KeyFrame previousFrame, KeyFrame nextFrame, float progression) {
+		Map<String, JointTransform> currentPose = new HashMap<String, JointTransform>();
 		for (String jointName : previousFrame.getJointKeyFrames().keySet()) {
 			JointTransform previousTransform = previousFrame.getJointKeyFrames().get(jointName);
 			JointTransform nextTransform = nextFrame.getJointKeyFrames().get(jointName);
 			JointTransform currentTransform = JointTransform.interpolate(previousTransform, nextTransform, progression);
-			currentPose.put(jointName, currentTransform.getLocalTransform());
+			currentPose.put(jointName, currentTransform);
 		}
 		return currentPose;
 	}
@@ -98,6 +98,22 @@ public abstract class Camera {
 		return new Vector3f((float)(Math.sin(Math.toRadians(rot.z))), 0.0f, (float)(Math.cos(Math.toRadians(rot.z))));
 	}
 	
+	/**
+	 * Returns the camera's yaw, the rotation around the vertical axis.
+	 * @return [<b>float</b>] The yaw in degrees.
+	 */
+	public float getYaw() {
+		return rot.y;
+	}
+	
+	public Vector3f getPosition() {
+		return pos;
+	}
+	
+	public Vector3f getRotation() {
+		return rot;
+	}
+	
 	/**
 	 * Moves the Camera depending on the last change in position of the mouse cursor.
 	 * @param dx The difference in the x-position of the mouse cursor.
@@ -111,6 +127,16 @@ public abstract class Camera {
 	 * @return [{@link Matrix4f}] The view matrix.
 	 */
 	public Matrix4f getTransform() {
+		return transform(pos, rot);
+	}
+	
+	/**
+	 * Returns the view matrix of a camera with a transform.
+	 * @param pos The camera's position.
+	 * @param rot The camera's Euler rotation.
+	 * @return [{@link Matrix4f}] The view matrix.
+	 */
+	public static Matrix4f transform(Vector3f pos, Vector3f rot) {
 		
 		// Create the matrix and set it to identity.
 		Matrix4f mat = new Matrix4f().identity();
@@ -190,11 +190,30 @@ public class Entity {
 		return rot;
 	}
 	
+	/**
+	 * Returns the scale of the entity.
+	 * @return [<b>float</b>] The scale of the entity.
+	 */
+	public float getScale() {
+		return scale;
+	}
+	
 	/**
 	 * Returns the entity's model matrix.
 	 * @return [{@link Matrix4f}] The model matrix of this entity.
 	 */
 	public Matrix4f getTransform() {
+		return transform(pos, rot, scale);
+	}
+	
+	/**
+	 * Returns the model matrix of an entity with a transform.
+	 * @param pos The entity's position.
+	 * @param rot The entity's Euler rotation.
+	 * @param scale The entity's scale.
+	 * @return [{@link Matrix4f}] The model matrix.
+	 */
+	public static Matrix4f transform(Vector3f pos, Vector3f rot, float scale) {
 		
 		// Identity matrix
 		Matrix4f mat = new Matrix4f();
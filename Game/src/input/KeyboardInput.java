@@ -6,6 +6,8 @@ import java.util.HashMap;
 
 import org.lwjgl.glfw.GLFWKeyCallback;
 
+import api.main.src.WorldEntity;
+
 /*
  * Class that extends GLFWKeyCallback to get the key being used
  */
@@ -51,6 +53,23 @@ public class KeyboardInput extends GLFWKeyCallback{
 		return keys[key];
 	}
 	
+	/**
+	 * Returns the movement keys being pressed as the bits sent to the server.
+	 * @return [int] The movement bits, see {@link WorldEntity#setInput(int, float)}.
+	 */
+	public static int getMovementMask() {
+		int mask = 0;
+		if(isKeyDown(Keybinds.PLYR_FORWARD))
+			mask |= WorldEntity.FORWARD;
+		if(isKeyDown(Keybinds.PLYR_BACKWARD))
+			mask |= WorldEntity.BACKWARD;
+		if(isKeyDown(Keybinds.PLYR_LEFT))
+			mask |= WorldEntity.LEFT;
+		if(isKeyDown(Keybinds.PLYR_RIGHT))
+			mask |= WorldEntity.RIGHT;
+		return mask;
+	}
+	
 	/**
 	 * Registers a key released action for the specified key.
 	 * @param key The key code of the wanted key.
@@ -1,5 +1,7 @@
 package input;
 
+import static org.lwjgl.glfw.GLFW.glfwSetCursorPos;
+
 import org.lwjgl.glfw.GLFWCursorPosCallback;
 
 import camera.CameraTPS;
@@ -9,6 +11,15 @@ import main.Game;
 public class MouseInput extends GLFWCursorPosCallback{
 
 	private double xpos, ypos;
+	
+	/**
+	 * Cursor position the deltas are measured from, where it was last centered or seen.
+	 */
+	private double lastX, lastY;
+	
+	/**
+	 * Cursor movement since the last tick, callbacks run on the display's thread and ticks on the simulation's.
+	 */
 	private int dx = 0, dy = 0;
 	private CameraTPS cam;
 	
@@ -23,21 +34,47 @@ public class MouseInput extends GLFWCursorPosCallback{
 	 * Method being called whenever it listens to a change in position of the cursor
 	 */
 	@Override
-	public void invoke(long window, double xpos, double ypos) {
-		// TODO Auto-generated method stub
+	public synchronized void invoke(long window, double xpos, double ypos) {
 		
 		setXpos(xpos);
 		setYpos(ypos);
 		
-		dx = (int) ((Display.getWidth() / 2) - xpos);
-		dy = (int) ((Display.getHeight() / 2) - ypos);
+		dx += (int) (lastX - xpos);
+		dy += (int) (lastY - ypos);
+		lastX = xpos;
+		lastY = ypos;
 		
 		cam = (CameraTPS)Game.getCamera();
 		
 	}
 	
+	/**
+	 * Moves the cursor back to the center of the display, must be called from the display's thread.
+	 * @param window The handle to the window.
+	 * @return [void]
+	 */
+	public synchronized void center(long window) {
+		
+		lastX = Display.getWidth() / 2;
+		lastY = Display.getHeight() / 2;
+		glfwSetCursorPos(window, lastX, lastY);
+		
+	}
+	
+	/**
+	 * Moves the camera by the cursor movement since the last tick.
+	 * @return [void]
+	 */
 	public void tick() {
 		
+		int dx, dy;
+		synchronized(this) {
+			dx = this.dx;
+			dy = this.dy;
+			this.dx = 0;
+			this.dy = 0;
+		}
+		
 		if(cam != null)
 			cam.move(dx, dy);
 		
@@ -123,6 +123,15 @@ public class Display {
 	 * @return [<b>void</b>]
 	 */
 	public static void updateDisplay() {
+		swapBuffers();
+		pollEvents();
+	}
+	
+	/**
+	 * Shows the frame that was just rendered.
+	 * @return [<b>void</b>]
+	 */
+	public static void swapBuffers() {
 		
 		// Check if display was created.
 		if(hWnd == NULL)
@@ -130,10 +139,22 @@ public class Display {
 		
 		// Swap the frame buffer (show the next frame).
 		glfwSwapBuffers(hWnd);
-
+		
+	}
+	
+	/**
+	 * Polls keyboard and mouse events, as late as possible before a frame so it reacts to the latest input.
+	 * @return [<b>void</b>]
+	 */
+	public static void pollEvents() {
+		
+		// Check if display was created.
+		if(hWnd == NULL)
+			return;
+		
 		// Poll keyboard and mouse events.
 		glfwPollEvents();
-	
+		
 	}
 	
 	/**
@@ -7,7 +7,6 @@ import static org.lwjgl.glfw.GLFW.GLFW_OPENGL_CORE_PROFILE;
 import static org.lwjgl.glfw.GLFW.GLFW_OPENGL_FORWARD_COMPAT;
 import static org.lwjgl.glfw.GLFW.GLFW_OPENGL_PROFILE;
 import static org.lwjgl.glfw.GLFW.glfwInit;
-import static org.lwjgl.glfw.GLFW.glfwSetCursorPos;
 import static org.lwjgl.glfw.GLFW.glfwSetErrorCallback;
 import static org.lwjgl.glfw.GLFW.glfwSetWindowShouldClose;
 import static org.lwjgl.glfw.GLFW.glfwTerminate;
@@ -16,6 +15,8 @@ import static org.lwjgl.opengl.GL11.GL_TRUE;
 import static org.lwjgl.opengl.GL11.glClear;
 
 import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
 
 import org.joml.Matrix4f;
 import org.joml.Vector2f;
@@ -25,6 +26,11 @@ import org.lwjgl.glfw.GLFWErrorCallback;
 import org.lwjgl.opengl.GL11;
 
 import GUI.Button;
+import api.main.src.Client;
+import api.main.src.MeteredTransport;
+import api.main.src.Metrics;
+import api.main.src.MetricsServer;
+import api.main.src.TransportFactory;
 import animation.AnimatedModel;
 import animation.Animation;
 import camera.Camera;
@@ -35,6 +41,7 @@ import engine.Texture;
 import engine.TexturedMesh;
 import entities.Entity;
 import entities.Player;
+import input.KeyboardInput;
 import lights.Light;
 import lights.LightController;
 import parsers.ColladaGeometry;
@@ -42,9 +49,11 @@ import parsers.ColladaParser;
 import parsers.ObjParser;
 import render.AnimatedModelRenderer;
 import render.EntityRenderer;
+import render.RenderSnapshot;
 import textMeshCreator.FontType;
 import textMeshCreator.GUIText;
 import textRendering.TextMaster;
+import util.FramePacer;
 import util.Logger;
 
 
@@ -70,6 +79,21 @@ public class Game extends Thread{
 	 */
 	public static final int TICKS_PER_SEC = 60;
 	
+	/**
+	 * Length of a game tick in nanoseconds.
+	 */
+	public static final long TICK_LENGTH = 1000000000 / TICKS_PER_SEC;
+	
+	/**
+	 * Most ticks run to catch up after a slow frame, the time past them is dropped.
+	 */
+	public static final int MAX_CATCH_UP = 5;
+	
+	/**
+	 * Default frame rate cap, the game.fps property overrides it and 0 removes it.
+	 */
+	public static final int TARGET_FPS = 120;
+	
 	/**
 	 * Handle to the window.
 	 */
@@ -85,12 +109,48 @@ public class Game extends Thread{
 	 */
 	private static Camera cam;
 	
+	/**
+	 * Connection to the game server, null when playing offline.
+	 */
+	private static Client client;
+	
+	/**
+	 * Metrics of the game, only served (locally) when the metrics.port property is set.
+	 */
+	private static final Metrics METRICS = Metrics.DEFAULT;
+	private static final Metrics.Histogram FRAME_DURATIONS = METRICS.histogram("game_frame_seconds", "Time between two frames.", Metrics.DURATION_BUCKETS);
+	private static final Metrics.Histogram TICK_DURATIONS = METRICS.histogram("game_tick_seconds", "Time spent ticking the game logic.", Metrics.DURATION_BUCKETS);
+	private static final Metrics.Gauge FPS = METRICS.gauge("game_fps", "Frames rendered during the last second.");
+	private static final Metrics.Gauge TPS = METRICS.gauge("game_tps", "Ticks run during the last second.");
+	private static final Metrics.Gauge FRAME_JITTER = METRICS.gauge("game_frame_stddev_seconds", "Standard deviation of the frame times during the last second.");
+	private static final Metrics.Gauge FRAME_P99 = METRICS.gauge("game_frame_p99_seconds", "99th percentile of the frame times during the last second.");
+	
 	/**
 	 * Static main method to start up the game.
-	 * @param args The command-line arguments.
+	 * @param args The command-line arguments, optionally the server's host, port and our username.
 	 * @return [void]
 	 */
 	public static void main(String[] args) {
+		
+		Integer metricsPort = Integer.getInteger("metrics.port");
+		if(metricsPort != null) {
+			try {
+				new MetricsServer(METRICS.withJvmMetrics(), metricsPort);
+			} catch (IOException e) {
+				LOGGER.println("Unable to serve the metrics.");
+			}
+		}
+		
+		if(args.length >= 3) {
+			try {
+				client = new Client(InetAddress.getByName(args[0]), Integer.parseInt(args[1]), args[2], metricsPort == null ? TransportFactory.UDP
+						: MeteredTransport.factory(TransportFactory.UDP, METRICS, "role", "client"));
+				client.start();
+			} catch (Exception e) {
+				LOGGER.println("Unable to connect to " + args[0] + ":" + args[1] + ".");
+			}
+		}
+		
 		Game game = new Game();
 		game.start();
 	}
@@ -164,57 +224,80 @@ public class Game extends Thread{
 		// Register all key bindings used for the game.
 		registerKeybinds();
 		
+		// Run the game logic on its own thread, it hands the render loop snapshots of the state.
+		Entity[] entities = {cubeEnt, cubeEnt2, player};
+		AnimatedModel[] models = {aChar};
+		Simulation simulation = new Simulation(() -> {
+			long currentTick = System.nanoTime();
+			tick();
+			
+			// TEST
+			float pos = 15 * (float)Math.sin((double)System.currentTimeMillis() / 100.0f);
+			sun.setPosition(new Vector3f(pos, 0, 0));
+			
+			aChar.update(TICK_LENGTH / 1000000000.0f);
+			TICK_DURATIONS.observeNanos(System.nanoTime() - currentTick);
+		}, time -> new RenderSnapshot(time, entities, cam, lm.getLights(), models));
+		simulation.start();
+		
 		// Main loop.
+		FramePacer pacer = new FramePacer(Integer.getInteger("game.fps", TARGET_FPS));
+		Vector3f lightDirection = new Vector3f(1, 1, 1).normalize();
 		long lastFrame = System.nanoTime();
 		long lastTime = System.nanoTime();
-		long lastTick = System.nanoTime();
+		long lastTicks = 0;
 		int fps = 0;
-		int ticks = 0;
 		while(!Display.isCloseRequested()) {
 			
+			// Wait for the frame's turn, then take the input in as late as possible before using it.
+			long currentFrame = pacer.waitForFrame();
+			Display.pollEvents();
+			Display.mouseIn.center(window);
+			
 			// INFO
 			long currentTime = System.nanoTime();
 			if(currentTime - lastTime >= 1000000000) {
-				LOGGER.println("FPS: " + fps + ", TICKS: " + ticks);
+				long ticks = simulation.getTicks() - lastTicks;
+				LOGGER.log(Logger.INFO, "FPS: %d, TICKS: %d, %s", fps, ticks, pacer.toString());
+				FPS.set(fps);
+				TPS.set(ticks);
+				FRAME_JITTER.set(pacer.getStdDev() / 1000);
+				FRAME_P99.set(pacer.getPercentile(99) / 1000);
+				pacer.reset();
 				fps = 0;
-				ticks = 0;
+				lastTicks += ticks;
 				lastTime = currentTime;
 			}
 			
-			// TICK
-			long currentTick = System.nanoTime();
-			if(currentTick - lastTick >= 1000000000 / TICKS_PER_SEC) {
-				tick();
-				
-				// TEST
-				float pos = 15 * (float)Math.sin((double)System.currentTimeMillis() / 100.0f);
-				sun.setPosition(new Vector3f(pos, 0, 0));
-				
-				ticks++;
-				lastTick = currentTick;
-			}
-			
-			long currentFrame = System.nanoTime();
-			float deltaTime = ((float)(currentFrame - lastFrame) / 1000000000.0f);
+			FRAME_DURATIONS.observeNanos(currentFrame - lastFrame);
 			lastFrame = currentFrame;
 			
+			// Draw between the two latest ticks, whatever the simulation is doing right now.
+			Simulation.Frames frames = simulation.getFrames();
+			if(frames == null)
+				continue;
+			RenderSnapshot snapshot = frames.current;
+			float alpha = frames.getAlpha(System.nanoTime());
+			Matrix4f view = snapshot.getViewTransform(frames.previous, alpha);
+			
 			// RENDER
 			glClear(GL11.GL_COLOR_BUFFER_BIT | GL11.GL_DEPTH_BUFFER_BIT);
 			
-			er.render(cubeEnt, cam, lm.getLights());
-			er.render(cubeEnt2, cam, lm.getLights());
-			er.render(player, cam, lm.getLights());
+			for(int i = 0; i < snapshot.getEntityCount(); i++)
+				er.render(snapshot.getMesh(i), snapshot.getTransform(i, frames.previous, alpha), view, snapshot.getLights());
 			
-			aChar.update(deltaTime);
-			ar.render(aChar, cam, new Vector3f(1, 1, 1).normalize());
+			for(int i = 0; i < snapshot.getModelCount(); i++)
+				ar.render(snapshot.getModel(i), snapshot.getPose(i), view, lightDirection);
 		
 			button.render();
 			
-			Display.updateDisplay();
+			Display.swapBuffers();
 			
 			fps++;
 		}
 		
+		simulation.halt();
+		
 		// Close the display.
 		Display.closeDisplay();
 		
@@ -228,14 +311,17 @@ public class Game extends Thread{
 	}
 	
 	/**
-	 * Ticks the game logic.
+	 * Ticks the game logic, on the simulation's thread.
 	 * @return [void]
 	 */
 	private void tick() {
 		
-		glfwSetCursorPos(window, Display.getWidth()/2, Display.getHeight()/2);
 		player.tick();
 		Display.mouseIn.tick();
+		
+		// The client sends our input to the server on every tick.
+		if(client != null)
+			client.setInput(KeyboardInput.getMovementMask(), cam.getYaw());
 		//cam.tick();
 		
 	}
@@ -0,0 +1,113 @@
+package main;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongFunction;
+
+import render.RenderSnapshot;
+
+/**
+ * Thread running the game logic on a fixed timestep, apart from the thread
+ * rendering it. After every tick it publishes a {@link RenderSnapshot} of the
+ * state along with the one before it, so the render thread can draw between the
+ * two without ever waiting on a tick, and a tick never waits on a frame.
+ */
+public class Simulation extends Thread {
+	
+	/**
+	 * The two latest snapshots, swapped in at once so the render thread always
+	 * gets a matching pair.
+	 */
+	public static class Frames{
+		public final RenderSnapshot previous;
+		public final RenderSnapshot current;
+		
+		private Frames(RenderSnapshot previous, RenderSnapshot current) {
+			this.previous = previous;
+			this.current = current;
+		}
+		
+		/**
+		 * Returns how far a frame drawn now is between the two snapshots. Frames
+		 * are drawn a tick behind the simulation so there's always a tick to blend to.
+		 * @param now The time of the frame, in nanoseconds.
+		 * @return [<b>float</b>] From 0 for the previous snapshot to 1 for the current one.
+		 */
+		public float getAlpha(long now) {
+			float alpha = (float)(now - current.getTime()) / Game.TICK_LENGTH;
+			return Math.max(0, Math.min(1, alpha));
+		}
+	}
+	
+	private final Runnable tick;
+	private final LongFunction<RenderSnapshot> capture;
+	
+	private volatile Frames frames;
+	private final AtomicLong ticks = new AtomicLong();
+	private volatile boolean running = true;
+	
+	/**
+	 * Creates the simulation, start it once the world is loaded.
+	 * @param tick Runs a tick of the game logic.
+	 * @param capture Takes a snapshot of the state for the tick at the given time.
+	 */
+	public Simulation(Runnable tick, LongFunction<RenderSnapshot> capture) {
+		super("Simulation");
+		this.tick = tick;
+		this.capture = capture;
+		setDaemon(true);
+	}
+	
+	public void run() {
+		
+		long nextTick = System.nanoTime();
+		frames = new Frames(null, capture.apply(nextTick));
+		while(running) {
+			
+			long now = System.nanoTime();
+			if(now < nextTick) {
+				LockSupport.parkNanos(nextTick - now);
+				continue;
+			}
+			
+			// Catch up after a slow tick, but don't try to after a long stall.
+			if(now - nextTick >= Game.TICK_LENGTH * Game.MAX_CATCH_UP)
+				nextTick = now;
+			
+			tick.run();
+			ticks.incrementAndGet();
+			frames = new Frames(frames.current, capture.apply(nextTick));
+			
+			nextTick += Game.TICK_LENGTH;
+		}
+		
+	}
+	
+	/**
+	 * Returns the two latest snapshots.
+	 * @return [{@link Frames}] The snapshots, or null before the simulation started.
+	 */
+	public Frames getFrames() {
+		return frames;
+	}
+	
+	/**
+	 * Returns the number of ticks run so far.
+	 * @return [<b>long</b>] The number of ticks.
+	 */
+	public long getTicks() {
+		return ticks.get();
+	}
+	
+	/**
+	 * Stops the simulation and waits for the tick in progress.
+	 * @return [void]
+	 */
+	public void halt() {
+		running = false;
+		try {
+			join();
+		} catch (InterruptedException e) { }
+	}
+	
+}
@@ -13,6 +13,7 @@ import org.joml.Vector3f;
 import engine.Loader;
 import engine.Mesh;
 import main.Game;
+import util.Logger;
 
 public class ObjParser {
 	
@@ -24,7 +25,7 @@ public class ObjParser {
 		try {
 			fr = new FileReader(new File("res/" + fileName + ".obj"));
 		} catch (FileNotFoundException e) {
-			Game.LOGGER.println("ERROR: File name " + fileName + " cannnot be found.");
+			Game.LOGGER.println("File name " + fileName + " cannnot be found.", Logger.ERROR);
 			// TODO Auto-generated catch block
 			e.printStackTrace();
 		}
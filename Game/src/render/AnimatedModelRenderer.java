@@ -37,14 +37,25 @@ public class AnimatedModelRenderer {
 	
 	
 	public void render(AnimatedModel ent, Camera cam, Vector3f lightDirection) {
+		render(ent, ent.getJointTransforms(), cam.getTransform(), lightDirection);
+	}
+	
+	/**
+	 * Renders an animated model in a pose computed beforehand.
+	 * @param ent The animated model.
+	 * @param transforms The model-space transforms of its joints.
+	 * @param view The view matrix.
+	 * @param lightDirection The direction of the light.
+	 * @return [<b>void</b>]
+	 */
+	public void render(AnimatedModel ent, Matrix4f[] transforms, Matrix4f view, Vector3f lightDirection) {
 		
 		begin();
 		
 		shader.loadVector(shader.location_lightDirection, lightDirection);
 		shader.loadMatrix(shader.location_modelMatrix, new Matrix4f().rotate((float)Math.toRadians(-90), new Vector3f(1, 0, 0)));
-		shader.loadMatrix(shader.location_viewMatrix, cam.getTransform());
+		shader.loadMatrix(shader.location_viewMatrix, view);
 		
-		Matrix4f[] transforms = ent.getJointTransforms();
 		//System.out.println(transforms.length);
 		for(int i = 0; i < transforms.length; i++)
 			shader.loadMatrix(shader.location_jointTransforms[i], transforms[i]);
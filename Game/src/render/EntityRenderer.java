@@ -4,6 +4,7 @@ import org.joml.Matrix4f;
 
 import camera.Camera;
 import engine.Loader;
+import engine.TexturedMesh;
 import entities.Entity;
 import lights.Light;
 import shaders.StaticShader;
@@ -37,24 +38,36 @@ public class EntityRenderer {
 	
 	
 	public void render(Entity ent, Camera cam, Light[] lights) {
+		render(ent.getTexturedMesh(), ent.getTransform(), cam.getTransform(), lights);
+	}
+	
+	/**
+	 * Renders a mesh with precomputed matrices.
+	 * @param mesh The textured mesh.
+	 * @param model The model matrix.
+	 * @param view The view matrix.
+	 * @param lights The lights.
+	 * @return [<b>void</b>]
+	 */
+	public void render(TexturedMesh mesh, Matrix4f model, Matrix4f view, Light[] lights) {
 		
 		begin();
 		
 		for(int i = 0; i < lights.length; i++)
 			shader.loadLight(i, lights[i]);
 		
-		shader.loadMatrix(shader.location_modelMatrix, ent.getTransform());
-		shader.loadMatrix(shader.location_viewMatrix, cam.getTransform());
+		shader.loadMatrix(shader.location_modelMatrix, model);
+		shader.loadMatrix(shader.location_viewMatrix, view);
 		
 		
-		if(ent.getTexturedMesh().getTexture() != null)
-			ent.getTexturedMesh().getTexture().bindToUnit(0);
+		if(mesh.getTexture() != null)
+			mesh.getTexture().bindToUnit(0);
 		else
 			Loader.MISSING_TEXTURE.bindToUnit(0);
 		
-		ent.getTexturedMesh().getMesh().getVao().bind(0, 1, 2);
-		ent.getTexturedMesh().getMesh().draw();
-		ent.getTexturedMesh().getMesh().getVao().unbind(0, 1, 2);
+		mesh.getMesh().getVao().bind(0, 1, 2);
+		mesh.getMesh().draw();
+		mesh.getMesh().getVao().unbind(0, 1, 2);
 		
 		end();
 		
@@ -0,0 +1,145 @@
+package render;
+
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import animation.AnimatedModel;
+import camera.Camera;
+import engine.TexturedMesh;
+import entities.Entity;
+import lights.Light;
+import util.Interpolation;
+
+/**
+ * Everything the renderer needs from one game tick: the entities' transforms,
+ * the camera, the lights and the poses of the animated models. The state is
+ * copied when the snapshot is taken, so the simulation can keep going while
+ * the render thread reads it, and a snapshot never changes afterwards.
+ */
+public class RenderSnapshot {
+	
+	/**
+	 * Time of the tick the snapshot was taken at, in nanoseconds.
+	 */
+	private final long time;
+	
+	private final TexturedMesh[] meshes;
+	private final Vector3f[] positions, rotations;
+	private final float[] scales;
+	
+	private final Vector3f cameraPos, cameraRot;
+	
+	private final Light[] lights;
+	
+	private final AnimatedModel[] models;
+	private final Matrix4f[][] poses;
+	
+	/**
+	 * Takes a snapshot, must be called from the thread changing the state.
+	 * @param time The time of the tick, in nanoseconds.
+	 * @param entities The entities to render.
+	 * @param cam The camera.
+	 * @param lights The lights.
+	 * @param models The animated models to render.
+	 */
+	public RenderSnapshot(long time, Entity[] entities, Camera cam, Light[] lights, AnimatedModel[] models) {
+		
+		this.time = time;
+		
+		this.meshes = new TexturedMesh[entities.length];
+		this.positions = new Vector3f[entities.length];
+		this.rotations = new Vector3f[entities.length];
+		this.scales = new float[entities.length];
+		for(int i = 0; i < entities.length; i++) {
+			meshes[i] = entities[i].getTexturedMesh();
+			positions[i] = new Vector3f(entities[i].getPosition());
+			rotations[i] = new Vector3f(entities[i].getRotation());
+			scales[i] = entities[i].getScale();
+		}
+		
+		this.cameraPos = new Vector3f(cam.getPosition());
+		this.cameraRot = new Vector3f(cam.getRotation());
+		
+		this.lights = new Light[lights.length];
+		for(int i = 0; i < lights.length; i++)
+			this.lights[i] = new Light(lights[i].getPosition(), lights[i].getColor());
+		
+		this.models = models.clone();
+		this.poses = new Matrix4f[models.length][];
+		for(int i = 0; i < models.length; i++) {
+			Matrix4f[] pose = models[i].getJointTransforms();
+			for(int j = 0; j < pose.length; j++)
+				pose[j] = new Matrix4f(pose[j]);
+			poses[i] = pose;
+		}
+		
+	}
+	
+	public long getTime() {
+		return time;
+	}
+	
+	public int getEntityCount() {
+		return meshes.length;
+	}
+	
+	public TexturedMesh getMesh(int index) {
+		return meshes[index];
+	}
+	
+	/**
+	 * Returns the model matrix of an entity between the previous snapshot and this one.
+	 * @param index The entity's index.
+	 * @param previous The previous snapshot, or null to use this one only.
+	 * @param alpha How far between the snapshots, 0 for the previous one and 1 for this one.
+	 * @return [{@link Matrix4f}] The model matrix.
+	 */
+	public Matrix4f getTransform(int index, RenderSnapshot previous, float alpha) {
+		
+		// Entities that weren't in the previous snapshot can't be blended.
+		if(previous == null || index >= previous.meshes.length || previous.meshes[index] != meshes[index] || alpha >= 1)
+			return Entity.transform(positions[index], rotations[index], scales[index]);
+		
+		return Entity.transform(
+				Interpolation.lerp(previous.positions[index], positions[index], alpha, new Vector3f()), 
+				Interpolation.lerpAngles(previous.rotations[index], rotations[index], alpha, new Vector3f()), 
+				previous.scales[index] + (scales[index] - previous.scales[index]) * alpha);
+		
+	}
+	
+	/**
+	 * Returns the camera's view matrix between the previous snapshot and this one.
+	 * @param previous The previous snapshot, or null to use this one only.
+	 * @param alpha How far between the snapshots, 0 for the previous one and 1 for this one.
+	 * @return [{@link Matrix4f}] The view matrix.
+	 */
+	public Matrix4f getViewTransform(RenderSnapshot previous, float alpha) {
+		if(previous == null || alpha >= 1)
+			return Camera.transform(cameraPos, cameraRot);
+		return Camera.transform(
+				Interpolation.lerp(previous.cameraPos, cameraPos, alpha, new Vector3f()), 
+				Interpolation.lerpAngles(previous.cameraRot, cameraRot, alpha, new Vector3f()));
+	}
+	
+	public Light[] getLights() {
+		return lights;
+	}
+	
+	public int getModelCount() {
+		return models.length;
+	}
+	
+	public AnimatedModel getModel(int index) {
+		return models[index];
+	}
+	
+	/**
+	 * Returns the pose of an animated model.
+	 * @param index The model's index.
+	 * @return [{@link Matrix4f}[]] The model-space transforms of its joints.
+	 */
+	public Matrix4f[] getPose(int index) {
+		return poses[index];
+	}
+	
+}
@@ -12,6 +12,7 @@ import org.lwjgl.opengl.GL30;
 import org.lwjgl.opengl.GL32;
 
 import main.Game;
+import util.Logger;
 
 /**
  * Class that represents a shader program in OpenGL.
@@ -132,7 +133,7 @@ public abstract class ShaderProgram {
 					(	type == GL30.GL_VERTEX_SHADER ? "VERTEX" : 
 						type == GL30.GL_FRAGMENT_SHADER ? "FRAGMENT" : 
 							"GEOMETRY")
-					+ "\n" + infoLog + "\n -- --------------------------------------------------- -- ");
+					+ "\n" + infoLog + "\n -- --------------------------------------------------- -- ", Logger.ERROR);
 					return false;
 				}
 				return true;
@@ -140,7 +141,7 @@ public abstract class ShaderProgram {
 				int progSuccess = GL30.glGetProgrami(programID, GL20.GL_LINK_STATUS);
 				if(progSuccess == 0) {
 					String infoLog = GL30.glGetProgramInfoLog(programID);
-					Game.LOGGER.println("ERROR::PROGRAM_LINKING_ERROR of type: " + type + "\n" + infoLog + "\n -- --------------------------------------------------- -- ");
+					Game.LOGGER.println("ERROR::PROGRAM_LINKING_ERROR of type: " + type + "\n" + infoLog + "\n -- --------------------------------------------------- -- ", Logger.ERROR);
 					return false;
 				}
 				return false;
@@ -0,0 +1,148 @@
+package util;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Caps the frame rate without pegging a core. The pacer sleeps through most of
+ * the time left until the next frame and only spins for the last moments, for
+ * as long as sleeping has been seen to overshoot, so frames still start on time.
+ * <p>
+ * It also keeps the frame times since the last {@link #reset()}, to report how
+ * much they vary.
+ */
+public class FramePacer {
+	
+	/**
+	 * Bounds of the time spent spinning before a frame, in nanoseconds.
+	 */
+	public static final long MIN_SPIN = 100000, MAX_SPIN = 4000000;
+	
+	/**
+	 * Most frame times kept between two resets.
+	 */
+	private static final int MAX_SAMPLES = 4096;
+	
+	private long frameLength;
+	private long nextFrame = 0;
+	private long spin = 1000000;
+	
+	private final long[] samples = new long[MAX_SAMPLES];
+	private int numSamples = 0;
+	private long lastFrame = 0;
+	
+	/**
+	 * Creates a pacer.
+	 * @param fps The target frame rate, 0 for no limit.
+	 */
+	public FramePacer(int fps) {
+		setTargetFps(fps);
+	}
+	
+	/**
+	 * Sets the target frame rate.
+	 * @param fps The target frame rate, 0 for no limit.
+	 * @return [<b>void</b>]
+	 */
+	public void setTargetFps(int fps) {
+		if(fps < 0)
+			throw new RuntimeException("Negative frame rate specified.");
+		this.frameLength = fps == 0 ? 0 : 1000000000L / fps;
+		this.nextFrame = 0;
+	}
+	
+	/**
+	 * Waits until the next frame should start and records the frame time.
+	 * @return [<b>long</b>] The time the frame starts at, in nanoseconds.
+	 */
+	public long waitForFrame() {
+		
+		long now = System.nanoTime();
+		if(frameLength > 0) {
+			if(nextFrame == 0)
+				nextFrame = now;
+			
+			// Sleep through most of the wait, and learn how late waking up can be.
+			long sleep = nextFrame - now - spin;
+			if(sleep > 0) {
+				LockSupport.parkNanos(sleep);
+				long late = System.nanoTime() - (now + sleep);
+				spin = Math.max(MIN_SPIN, Math.min(MAX_SPIN, late > spin ? late : spin - (spin - late) / 16));
+			}
+			
+			// Spin for the rest.
+			while((now = System.nanoTime()) < nextFrame)
+				Thread.yield();
+			
+			// Keep a steady cadence, but don't rush frames out after a slow one.
+			nextFrame += frameLength;
+			if(now - nextFrame > frameLength)
+				nextFrame = now + frameLength;
+		}
+		
+		if(lastFrame != 0 && numSamples < MAX_SAMPLES)
+			samples[numSamples++] = now - lastFrame;
+		lastFrame = now;
+		return now;
+		
+	}
+	
+	/**
+	 * Forgets the frame times recorded so far.
+	 * @return [<b>void</b>]
+	 */
+	public void reset() {
+		numSamples = 0;
+	}
+	
+	public int getFrames() {
+		return numSamples;
+	}
+	
+	/**
+	 * Returns the average frame time since the last reset.
+	 * @return [<b>double</b>] The average in milliseconds.
+	 */
+	public double getMean() {
+		if(numSamples == 0)
+			return 0;
+		double sum = 0;
+		for(int i = 0; i < numSamples; i++)
+			sum += samples[i];
+		return sum / numSamples / 1e6;
+	}
+	
+	/**
+	 * Returns the standard deviation of the frame times since the last reset.
+	 * @return [<b>double</b>] The standard deviation in milliseconds.
+	 */
+	public double getStdDev() {
+		if(numSamples < 2)
+			return 0;
+		double mean = getMean() * 1e6;
+		double variance = 0;
+		for(int i = 0; i < numSamples; i++)
+			variance += (samples[i] - mean) * (samples[i] - mean);
+		return Math.sqrt(variance / (numSamples - 1)) / 1e6;
+	}
+	
+	/**
+	 * Returns a percentile of the frame times since the last reset.
+	 * @param percentile The percentile, from 0 to 100.
+	 * @return [<b>double</b>] The frame time in milliseconds.
+	 */
+	public double getPercentile(double percentile) {
+		if(numSamples == 0)
+			return 0;
+		long[] sorted = Arrays.copyOf(samples, numSamples);
+		Arrays.sort(sorted);
+		int index = (int) Math.ceil(percentile / 100 * numSamples) - 1;
+		return sorted[Math.max(0, Math.min(numSamples - 1, index))] / 1e6;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("frame %.2f ms +- %.2f, p99 %.2f ms, max %.2f ms", getMean(), getStdDev(), getPercentile(99), getPercentile(100));
+	}
+	
+}
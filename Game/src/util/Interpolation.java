@@ -0,0 +1,50 @@
+package util;
+
+import org.joml.Vector3f;
+
+/**
+ * Util class blending between the states of two game ticks.
+ */
+public class Interpolation {
+	
+	/**
+	 * Blends two positions.
+	 * @param from The position at the previous tick.
+	 * @param to The position at the current tick.
+	 * @param alpha How far between the ticks, from 0 to 1.
+	 * @param dest The vector to store the result in.
+	 * @return [{@link Vector3f}] The destination vector.
+	 */
+	public static Vector3f lerp(Vector3f from, Vector3f to, float alpha, Vector3f dest) {
+		return from.lerp(to, alpha, dest);
+	}
+	
+	/**
+	 * Blends two Euler rotations, taking the shortest way around for every angle.
+	 * @param from The rotation at the previous tick, in degrees.
+	 * @param to The rotation at the current tick, in degrees.
+	 * @param alpha How far between the ticks, from 0 to 1.
+	 * @param dest The vector to store the result in.
+	 * @return [{@link Vector3f}] The destination vector.
+	 */
+	public static Vector3f lerpAngles(Vector3f from, Vector3f to, float alpha, Vector3f dest) {
+		return dest.set(lerpAngle(from.x, to.x, alpha), lerpAngle(from.y, to.y, alpha), lerpAngle(from.z, to.z, alpha));
+	}
+	
+	/**
+	 * Blends two angles, taking the shortest way around.
+	 * @param from The angle at the previous tick, in degrees.
+	 * @param to The angle at the current tick, in degrees.
+	 * @param alpha How far between the ticks, from 0 to 1.
+	 * @return [<b>float</b>] The blended angle.
+	 */
+	public static float lerpAngle(float from, float to, float alpha) {
+		float delta = (to - from) % 360;
+		if(delta > 180)
+			delta -= 360;
+		else if(delta < -180)
+			delta += 360;
+		return from + delta * alpha;
+	}
+	
+}
@@ -7,85 +7,405 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
-import java.util.Calendar;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
 
+/**
+ * Asynchronous logger. Callers only claim a slot of a ring buffer and store the
+ * message's pieces into it, a background thread formats them, writes them to the
+ * log file and the console. Messages below the logger's level are discarded
+ * before anything is formatted, and messages logged while the buffer is full are
+ * dropped and counted rather than blocking the caller.
+ * <p>
+ * The log file is rotated when it grows past a size or gets too old, and only
+ * the newest log files of the folder are kept.
+ */
 public class Logger {
 	
-	private PrintStream stream;
-	private Date currentTime;
-	private DateFormat format = new SimpleDateFormat("MMMMM dd, YYYY [HH:mm:ss]");
+	public static final int DEBUG = -1, INFO = 0, WARNING = 1, ERROR = 2;
+	
+	/**
+	 * Number of messages the buffer holds, a power of two.
+	 */
+	public static final int CAPACITY = 8192;
+	
+	/**
+	 * Default size in bytes past which the log file is rotated.
+	 */
+	public static final long MAX_FILE_SIZE = 8 * 1024 * 1024;
+	
+	/**
+	 * Default age in milliseconds past which the log file is rotated.
+	 */
+	public static final long ROTATION_INTERVAL = TimeUnit.DAYS.toMillis(1);
+	
+	/**
+	 * Default number of log files kept in the folder.
+	 */
+	public static final int MAX_FILES = 20;
+	
+	/**
+	 * Longest time in nanoseconds the writer sleeps when there's nothing to write.
+	 */
+	private static final long MAX_IDLE = TimeUnit.MILLISECONDS.toNanos(5);
+	
+	private static final String[] PREFIXES = {"DEBUG: ", "INFO: ", "WARNING: ", "ERROR: "};
+	
+	/**
+	 * A slot of the ring buffer, reused once the writer is done with it.
+	 */
+	private static class Record{
+		/**
+		 * Sequence of the message stored in the slot plus one, set once it can be read.
+		 */
+		private volatile long published;
+		private long time;
+		private int type;
+		private boolean raw;
+		private String text;
+		private Object[] args;
+		private Supplier<String> supplier;
+	}
+	
+	private final Record[] records = new Record[CAPACITY];
+	private final AtomicLong tail = new AtomicLong();
+	private volatile long head = 0;
+	private final LongAdder dropped = new LongAdder();
+	
+	private final File folder;
 	private DateFormat fileName = new SimpleDateFormat("dd-MM-YYYY [HHmmss]");
-	private final String prefix = "INFO: ";
-	private final String errPrefix = "ERROR: ";
-	private final String warnPrefix = "WARNING: ";
-	public static final int INFO = 0, WARNING = 1, ERROR = 2;
-	private int substring = 0;
+	private volatile DateFormat format = new SimpleDateFormat("MMMMM dd, YYYY [HH:mm:ss]");
+	private volatile int level = INFO;
+	private volatile long maxFileSize = MAX_FILE_SIZE;
+	private volatile long rotationInterval = ROTATION_INTERVAL;
+	private volatile int maxFiles = MAX_FILES;
+	
+	// Only used by the writer.
+	private PrintStream stream;
+	private File file;
+	private long fileSize;
+	private long fileOpened;
+	private final StringBuilder line = new StringBuilder();
+	private long lastStamp = -1;
+	private String stamp;
+	
+	private final Thread writer;
+	private volatile boolean running = true;
 	
 	public Logger(String logFolderPath, DateFormat fileFormat){
-		try {
-			if(fileFormat != null)
-				this.fileName = fileFormat;
-			updateTime();
-			if(!new File(logFolderPath).exists())
-				new File(logFolderPath).mkdirs();
-			stream = new PrintStream(new FileOutputStream(new File(logFolderPath + fileName.format(currentTime) + ".log")));
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		if(fileFormat != null)
+			this.fileName = fileFormat;
+		for(int i = 0; i < records.length; i++)
+			records[i] = new Record();
+		
+		this.folder = new File(logFolderPath);
+		if(!folder.exists())
+			folder.mkdirs();
+		rotate(System.currentTimeMillis());
+		
+		this.writer = new Thread(this::write, "Logger");
+		this.writer.setDaemon(true);
+		this.writer.start();
+		
+		// The game exits through System.exit, write what's left before it does.
+		Runtime.getRuntime().addShutdownHook(new Thread(this::close, "Logger-Shutdown"));
 	}
 	
 	public Logger(String logFolderPath){
-		try {
-			updateTime();
-			if(!new File(logFolderPath).exists())
-				new File(logFolderPath).mkdirs();
-			stream = new PrintStream(new FileOutputStream(new File(logFolderPath + fileName.format(currentTime) + ".log")));
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		this(logFolderPath, null);
 	}
-
+	
 	public void setLoggerFormat(DateFormat format){
 		this.format = format;
 	}
 	
+	/**
+	 * Sets the lowest level logged, messages below it are discarded.
+	 * @param level One of {@link #DEBUG}, {@link #INFO}, {@link #WARNING} and {@link #ERROR}.
+	 * @return [void]
+	 */
+	public void setLevel(int level){
+		this.level = level;
+	}
+	
+	/**
+	 * Sets when the log file is rotated.
+	 * @param maxFileSize The size in bytes past which it's rotated, 0 for no limit.
+	 * @param interval The age in milliseconds past which it's rotated, 0 for no limit.
+	 * @return [void]
+	 */
+	public void setRotation(long maxFileSize, long interval){
+		if(maxFileSize < 0 || interval < 0)
+			throw new RuntimeException("Negative rotation specified.");
+		this.maxFileSize = maxFileSize;
+		this.rotationInterval = interval;
+	}
+	
+	/**
+	 * Sets how many log files are kept, the oldest are deleted on rotation.
+	 * @param maxFiles The number of files, 0 to keep them all.
+	 * @return [void]
+	 */
+	public void setRetention(int maxFiles){
+		if(maxFiles < 0)
+			throw new RuntimeException("Negative retention specified.");
+		this.maxFiles = maxFiles;
+	}
+	
+	/**
+	 * Returns whether messages of a level are logged, to skip building them otherwise.
+	 * @param type The level.
+	 * @return [boolean] True if they're logged.
+	 */
+	public boolean isEnabled(int type){
+		return type >= level;
+	}
+	
+	/**
+	 * Returns the number of messages dropped because the buffer was full.
+	 * @return [long] The number of messages.
+	 */
+	public long getDropped(){
+		return dropped.sum();
+	}
+	
 	public void println(String line){
-		updateTime();
-		stream.append(prefix + format.format(currentTime) + " " + line + "\n");
-		System.out.println(prefix + format.format(currentTime) + " " + line);
+		publish(INFO, false, line, null, null);
 	}
 	
 	public void print(String text){
-		updateTime();
-		stream.append(text);
-		System.out.print(text);
+		publish(INFO, true, text, null, null);
 	}
 	
 	public void println(String line, int type){
-		updateTime();
-		if(type == INFO){
-			stream.append(prefix + format.format(currentTime) + " " + line + "\n");
-			System.out.println(prefix + format.format(currentTime) + " " + line);
-		}else if(type == WARNING){
-			stream.append(warnPrefix + format.format(currentTime) + " " + line + "\n");
-			System.out.println(warnPrefix + format.format(currentTime) + " " + line);
-		}else if(type == ERROR){
-			stream.append(errPrefix + format.format(currentTime) + " " + line + "\n");
-			System.err.println(errPrefix + format.format(currentTime) + " " + line);
-		}
+		publish(type, false, line, null, null);
+	}
+	
+	/**
+	 * Logs a message formatted by the writer with {@link String#format}. The
+	 * arguments are formatted later on, they shouldn't be changed afterwards.
+	 * @param type The message's level.
+	 * @param format The message's format.
+	 * @param arg The argument.
+	 * @return [void]
+	 */
+	public void log(int type, String format, Object arg){
+		if(type >= level)
+			publish(type, false, format, new Object[] {arg}, null);
+	}
+	
+	public void log(int type, String format, Object arg1, Object arg2){
+		if(type >= level)
+			publish(type, false, format, new Object[] {arg1, arg2}, null);
+	}
+	
+	public void log(int type, String format, Object... args){
+		if(type >= level)
+			publish(type, false, format, args, null);
+	}
+	
+	/**
+	 * Logs a message built by the writer.
+	 * @param type The message's level.
+	 * @param message Builds the message.
+	 * @return [void]
+	 */
+	public void log(int type, Supplier<String> message){
+		if(type >= level)
+			publish(type, false, null, null, message);
 	}
 	
 	public String addSpaces(String text){
 		String s = " ";
+		int substring = format.format(new Date()).length() + PREFIXES[INFO + 1].length();
 		for(int i = 0; i < substring; i++){
 			s += " ";
 		}
 		return s + text;
 	}
 	
-	private void updateTime(){
-		currentTime = Calendar.getInstance().getTime();
-		substring = format.format(currentTime).length() + prefix.length();
+	/**
+	 * Waits until every message logged so far has been written.
+	 * @return [void]
+	 */
+	public void flush(){
+		long target = tail.get();
+		while(head < target && writer.isAlive())
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+	}
+	
+	/**
+	 * Writes the remaining messages and closes the log file.
+	 * @return [void]
+	 */
+	public void close(){
+		if(!running)
+			return;
+		flush();
+		running = false;
+		try {
+			writer.join();
+		} catch (InterruptedException e) { }
+	}
+	
+	private void publish(int type, boolean raw, String text, Object[] args, Supplier<String> supplier){
+		
+		if(type < level || !running)
+			return;
+		
+		// Claim a slot, or drop the message when the writer is a whole buffer behind.
+		long sequence;
+		do {
+			sequence = tail.get();
+			if(sequence - head >= CAPACITY){
+				dropped.increment();
+				return;
+			}
+		}while(!tail.compareAndSet(sequence, sequence + 1));
+		
+		Record record = records[(int) sequence & (CAPACITY - 1)];
+		record.time = System.currentTimeMillis();
+		record.type = Math.max(DEBUG, Math.min(ERROR, type));
+		record.raw = raw;
+		record.text = text;
+		record.args = args;
+		record.supplier = supplier;
+		record.published = sequence + 1;
+		
+	}
+	
+	private void write(){
+		
+		long idle = 0;
+		long reported = 0;
+		while(true){
+			long sequence = head;
+			Record record = records[(int) sequence & (CAPACITY - 1)];
+			
+			if(record.published != sequence + 1){
+				// Nothing left, or a caller is still filling the slot.
+				if(!running && sequence == tail.get())
+					break;
+				if(stream != null)
+					stream.flush();
+				idle = Math.min(MAX_IDLE, Math.max(idle * 2, 50000));
+				LockSupport.parkNanos(idle);
+				continue;
+			}
+			idle = 0;
+			
+			write(record);
+			record.text = null;
+			record.args = null;
+			record.supplier = null;
+			head = sequence + 1;
+			
+			long lost = dropped.sum();
+			if(lost > reported){
+				line.setLength(0);
+				line.append(PREFIXES[WARNING + 1]).append(stamp(record.time)).append(' ').append(lost - reported).append(" log messages dropped.\n");
+				emit(WARNING, record.time);
+				reported = lost;
+			}
+		}
+		
+		if(stream != null)
+			stream.close();
+		
+	}
+	
+	private void write(Record record){
+		
+		String message;
+		try {
+			if(record.supplier != null)
+				message = record.supplier.get();
+			else if(record.args != null)
+				message = String.format(record.text, record.args);
+			else
+				message = record.text;
+		}catch(RuntimeException e){
+			message = "Unable to format " + record.text + ": " + e;
+		}
+		
+		line.setLength(0);
+		if(record.raw){
+			line.append(message);
+		}else{
+			line.append(PREFIXES[record.type + 1]).append(stamp(record.time)).append(' ').append(message).append('\n');
+		}
+		emit(record.type, record.time);
+		
+	}
+	
+	private String stamp(long time){
+		// Timestamps only have a resolution of a second, don't format them again within one.
+		long second = time / 1000;
+		if(second != lastStamp){
+			stamp = format.format(new Date(time));
+			lastStamp = second;
+		}
+		return stamp;
+	}
+	
+	private void emit(int type, long time){
+		
+		String text = line.toString();
+		if(type == ERROR)
+			System.err.print(text);
+		else
+			System.out.print(text);
+		
+		if((maxFileSize > 0 && fileSize >= maxFileSize) || (rotationInterval > 0 && time - fileOpened >= rotationInterval))
+			rotate(time);
+		if(stream != null){
+			stream.append(text);
+			fileSize += text.length();
+		}
+		
+	}
+	
+	private void rotate(long time){
+		
+		if(stream != null)
+			stream.close();
+		stream = null;
+		
+		String name = fileName.format(new Date(time));
+		File next = new File(folder, name + ".log");
+		for(int i = 1; next.exists(); i++)
+			next = new File(folder, name + "-" + i + ".log");
+		
+		try {
+			stream = new PrintStream(new FileOutputStream(next), false);
+			file = next;
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		fileSize = 0;
+		fileOpened = time;
+		
+		deleteOldFiles();
+		
+	}
+	
+	private void deleteOldFiles(){
+		
+		File[] logs = folder.listFiles((dir, name) -> name.endsWith(".log"));
+		if(maxFiles == 0 || logs == null || logs.length <= maxFiles)
+			return;
+		
+		// Newest first, never delete the file being written.
+		Arrays.sort(logs, Comparator.comparingLong(File::lastModified).reversed());
+		for(int i = maxFiles; i < logs.length; i++)
+			if(!logs[i].equals(file))
+				logs[i].delete();
+		
 	}
 }
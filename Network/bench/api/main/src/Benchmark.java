@@ -0,0 +1,176 @@
+package api.main.src;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Minimal benchmark harness measuring the time and the heap allocated per
+ * operation. Every benchmark is warmed up first so it runs compiled, then
+ * measured over a few timed rounds. Results can be appended to a CSV file to
+ * compare them from one release to the next.
+ * <p>
+ * Allocations are read from the JVM's per-thread allocation counter, so they
+ * are only reported on JVMs that have one.
+ */
+public class Benchmark {
+	
+	/**
+	 * Time in nanoseconds spent warming up every benchmark.
+	 */
+	public static final long WARMUP_TIME = 1000000000L;
+	
+	/**
+	 * Time in nanoseconds of a measured round.
+	 */
+	public static final long ROUND_TIME = 1000000000L;
+	
+	public static final int ROUNDS = 5;
+	
+	@FunctionalInterface
+	public interface Operation{
+		/**
+		 * Runs the operation once.
+		 * @return [<b>Object</b>] The operation's result, consumed so it isn't optimized away.
+		 */
+		Object run() throws Exception;
+	}
+	
+	/**
+	 * Measurements of a benchmark.
+	 */
+	public static class Result{
+		public final String name;
+		public final double nanosPerOp;
+		public final double error;
+		public final double bytesPerOp;
+		public final long operations;
+		
+		private Result(String name, double nanosPerOp, double error, double bytesPerOp, long operations) {
+			this.name = name;
+			this.nanosPerOp = nanosPerOp;
+			this.error = error;
+			this.bytesPerOp = bytesPerOp;
+			this.operations = operations;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("%-40s %12.1f ns/op  +- %5.1f%%  %10s B/op", name, nanosPerOp, 100 * error / nanosPerOp,
+					bytesPerOp < 0 ? "?" : String.format("%.1f", bytesPerOp));
+		}
+	}
+	
+	private static final com.sun.management.ThreadMXBean threads = threads();
+	
+	/**
+	 * Results are written here so the JIT can't remove the operations producing them.
+	 */
+	private static volatile Object sink;
+	
+	private final List<Result> results = new ArrayList<Result>();
+	private final String filter;
+	
+	/**
+	 * @param filter Only the benchmarks whose name contains it are run, or null to run them all.
+	 */
+	public Benchmark(String filter) {
+		this.filter = filter;
+	}
+	
+	/**
+	 * Measures an operation and prints the result.
+	 * @param name The benchmark's name.
+	 * @param operation The operation.
+	 * @return [<b>void</b>]
+	 */
+	public void run(String name, Operation operation) throws Exception {
+		
+		if(filter != null && !name.contains(filter))
+			return;
+		
+		// Warm up, and size the batches so reading the clock doesn't weigh on fast operations.
+		long batch = 1;
+		long start = System.nanoTime();
+		while(System.nanoTime() - start < WARMUP_TIME) {
+			long batchStart = System.nanoTime();
+			for(long i = 0; i < batch; i++)
+				sink = operation.run();
+			if(System.nanoTime() - batchStart < ROUND_TIME / 1000)
+				batch *= 2;
+		}
+		
+		double[] rounds = new double[ROUNDS];
+		long operations = 0;
+		long allocated = 0;
+		long thread = Thread.currentThread().getId();
+		for(int r = 0; r < ROUNDS; r++) {
+			long count = 0;
+			long bytes = allocated(thread);
+			long roundStart = System.nanoTime();
+			long elapsed;
+			do {
+				for(long i = 0; i < batch; i++)
+					sink = operation.run();
+				count += batch;
+				elapsed = System.nanoTime() - roundStart;
+			}while(elapsed < ROUND_TIME);
+			allocated += allocated(thread) - bytes;
+			rounds[r] = (double) elapsed / count;
+			operations += count;
+		}
+		
+		double mean = 0;
+		for(double round : rounds)
+			mean += round / ROUNDS;
+		double variance = 0;
+		for(double round : rounds)
+			variance += (round - mean) * (round - mean) / (ROUNDS - 1);
+		
+		Result result = new Result(name, mean, Math.sqrt(variance), threads != null ? (double) allocated / operations : -1, operations);
+		results.add(result);
+		System.out.println(result);
+		
+	}
+	
+	public List<Result> getResults() {
+		return results;
+	}
+	
+	/**
+	 * Appends the results to a CSV file, tagged with a label and the date.
+	 * @param file The file's path.
+	 * @param label The label, the release for example.
+	 * @return [<b>void</b>]
+	 */
+	public void append(String file, String label) throws IOException {
+		String date = new SimpleDateFormat("yyyy-MM-dd HH:mm").format(new Date());
+		try(PrintWriter out = new PrintWriter(new FileWriter(file, true))) {
+			for(Result result : results)
+				out.printf("%s,%s,%s,%.1f,%.1f,%.1f,%d%n", date, label, result.name, result.nanosPerOp, result.error,
+						result.bytesPerOp, result.operations);
+		}
+	}
+	
+	private static long allocated(long thread) {
+		return threads != null ? threads.getThreadAllocatedBytes(thread) : 0;
+	}
+	
+	private static com.sun.management.ThreadMXBean threads() {
+		try {
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+			if(!threads.isThreadAllocatedMemorySupported())
+				return null;
+			threads.setThreadAllocatedMemoryEnabled(true);
+			return threads;
+		}catch(RuntimeException | LinkageError e) {
+			return null;
+		}
+	}
+	
+}
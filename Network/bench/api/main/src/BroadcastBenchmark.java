@@ -0,0 +1,75 @@
+package api.main.src;
+
+import java.net.InetAddress;
+import java.nio.channels.DatagramChannel;
+import java.security.KeyPair;
+import java.util.Random;
+
+import api.main.src.Server.SClient;
+
+/**
+ * Compares sending the same state to 1,000 clients one by one (serialize and
+ * RSA encrypt per client) with {@link Broadcaster} (serialize once, seal per
+ * client, batched sends). Every datagram goes to a sink on loopback.
+ */
+public class BroadcastBenchmark {
+	
+	private static final int RECIPIENTS = 1000;
+	private static final int PAYLOAD = 400;
+	private static final int WARMUP = 20;
+	private static final int ROUNDS = 20;
+	
+	public static void main(String[] args) throws Exception {
+		
+		// Generating one RSA key per recipient would take far too long, they all share one.
+		KeyPair keys = RSA.generateKeyPair(Server.KEY_SIZE);
+		
+		DatagramChannel sink = DatagramChannel.open();
+		sink.bind(null);
+		int sinkPort = sink.socket().getLocalPort();
+		InetAddress loopback = InetAddress.getLoopbackAddress();
+		
+		SClient[] clients = new SClient[RECIPIENTS];
+		for(int i = 0; i < RECIPIENTS; i++) {
+			clients[i] = new SClient(loopback, sinkPort, keys.getPublic(), System.currentTimeMillis());
+			clients[i].sessionKey = Seal.generateKey();
+		}
+		
+		byte[] payload = new byte[PAYLOAD];
+		new Random(0).nextBytes(payload);
+		
+		Transport socket = new UdpTransport(0);
+		Broadcaster broadcaster = new Broadcaster(new UdpTransport(0));
+		
+		for(int i = 0; i < WARMUP; i++) {
+			unicastAll(clients, payload, socket);
+			broadcaster.broadcast(clients, RECIPIENTS, Packet.INVALID, payload);
+		}
+		
+		long start = System.nanoTime();
+		for(int i = 0; i < ROUNDS; i++)
+			unicastAll(clients, payload, socket);
+		long unicast = (System.nanoTime() - start) / ROUNDS;
+		
+		start = System.nanoTime();
+		for(int i = 0; i < ROUNDS; i++)
+			broadcaster.broadcast(clients, RECIPIENTS, Packet.INVALID, payload);
+		long broadcast = (System.nanoTime() - start) / ROUNDS;
+		
+		System.out.println(RECIPIENTS + " recipients, " + PAYLOAD + " byte payload");
+		System.out.println("Server.sendPacket per client : " + unicast / 1000 + " us/broadcast, " + unicast / RECIPIENTS + " ns/recipient");
+		System.out.println("Broadcaster                  : " + broadcast / 1000 + " us/broadcast, " + broadcast / RECIPIENTS + " ns/recipient");
+		System.out.printf("Speedup                      : %.1fx%n", (double) unicast / broadcast);
+		
+		broadcaster.close();
+		socket.close();
+		sink.close();
+		
+	}
+	
+	private static void unicastAll(SClient[] clients, byte[] payload, Transport socket) {
+		for(SClient client : clients)
+			Server.sendPacket(client, Packet.INVALID, payload, socket);
+	}
+	
+}
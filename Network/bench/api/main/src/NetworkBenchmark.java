@@ -0,0 +1,112 @@
+package api.main.src;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.util.Random;
+
+import javax.crypto.SecretKey;
+
+import api.main.src.Server.SClient;
+
+/**
+ * Measures the cost per packet of the network's hot paths: the packet codec,
+ * RSA against the AES-GCM seal, looking clients up by address and decoding
+ * and dispatching a received datagram.
+ * <p>
+ * Usage: NetworkBenchmark [filter] [results.csv label]. Only the benchmarks
+ * whose name contains the filter are run, and the results are appended to the
+ * CSV file under the label, the release for example, when one is given.
+ */
+public class NetworkBenchmark {
+	
+	private static final int[] SESSIONS = {20000, 35000, 50000};
+	private static final int STATE_LENGTH = 400;
+	private static final int INPUT_LENGTH = 32;
+	
+	public static void main(String[] args) throws Exception {
+		
+		Benchmark benchmark = new Benchmark(args.length > 0 && !args[0].equals("*") ? args[0] : null);
+		Random random = new Random(0);
+		
+		// Generating the server's key takes a few seconds, it's shared by everything below.
+		KeyPair keys = RSA.generateKeyPair(Server.KEY_SIZE);
+		SecretKey sessionKey = Seal.generateKey();
+		Seal.Nonces nonces = new Seal.Nonces((byte) 0);
+		
+		byte[] state = new byte[STATE_LENGTH];
+		random.nextBytes(state);
+		byte[] input = new byte[INPUT_LENGTH];
+		random.nextBytes(input);
+		
+		// Codec.
+		Packet statePacket = new Packet(Packet.INVALID, state);
+		byte[] serializedState = statePacket.serialize();
+		benchmark.run("packet.serialize", statePacket::serialize);
+		benchmark.run("packet.fromData", () -> Packet.fromData(serializedState));
+		
+		// RSA against the seal, on an input sized packet and a state sized one.
+		byte[] serializedInput = new Packet(Packet.INPUT, input).serialize();
+		byte[] encryptedInput = RSA.encrypt(keys.getPublic(), serializedInput);
+		byte[] sealedInput = Seal.seal(sessionKey, nonces, serializedInput);
+		byte[] sealedState = Seal.seal(sessionKey, nonces, serializedState);
+		benchmark.run("rsa.encrypt.input", () -> RSA.encrypt(keys.getPublic(), serializedInput));
+		benchmark.run("rsa.decrypt.input", () -> RSA.decrypt(keys.getPrivate(), encryptedInput));
+		benchmark.run("seal.input", () -> Seal.seal(sessionKey, nonces, serializedInput));
+		benchmark.run("seal.open.input", () -> Seal.open(sessionKey, sealedInput));
+		benchmark.run("seal.state", () -> Seal.seal(sessionKey, nonces, serializedState));
+		benchmark.run("seal.open.state", () -> Seal.open(sessionKey, sealedState));
+		
+		// Looking clients up, for a client that's connected and for a stranger.
+		for(int sessions : SESSIONS) {
+			Server server = new Server(keys);
+			InetAddress[] addresses = new InetAddress[sessions];
+			int[] ports = new int[sessions];
+			for(int i = 0; i < sessions; i++) {
+				addresses[i] = InetAddress.getByAddress(new byte[] {10, (byte)(i >> 16), (byte)(i >> 8), (byte) i});
+				ports[i] = 1024 + random.nextInt(60000);
+				server.add(new SClient(addresses[i], ports[i], keys.getPublic(), 0));
+			}
+			InetAddress stranger = InetAddress.getByAddress(new byte[] {11, 0, 0, 1});
+			
+			int[] next = {0};
+			benchmark.run("server.getClient.hit." + sessions, () -> {
+				int i = next[0] = (next[0] + 7919) % sessions;
+				return server.getClient(addresses[i], ports[i]);
+			});
+			benchmark.run("server.getClient.miss." + sessions, () -> server.getClient(stranger, 1));
+		}
+		
+		// Decoding a received datagram and handing it to its handler, the way a worker does.
+		Receiver receiver = new Receiver(TransportFactory.LOCAL, 0, keys.getPrivate());
+		receiver.setSessionKey(sessionKey);
+		MessageRegistry<Object> messages = new MessageRegistry<Object>()
+				.on(Packet.INPUT, InputMessage.class, (message, info, context) -> {})
+				.onRaw(Packet.STATE, (info, context) -> {});
+		InputMessage message = messages.message(Packet.INPUT);
+		message.mask = 5;
+		message.yaw = 90;
+		ByteBuffer inputPacket = messages.toPacket(Packet.INPUT, message);
+		ByteBuffer sealedPacket = ByteBuffer.allocate(inputPacket.remaining() + Seal.OVERHEAD);
+		Seal.seal(sessionKey, nonces, inputPacket, sealedPacket);
+		byte[] inputDatagram = sealedPacket.array();
+		byte[] stateDatagram = Seal.seal(sessionKey, nonces, new Packet(Packet.STATE, state).serialize());
+		InetAddress loopback = InetAddress.getLoopbackAddress();
+		benchmark.run("receiver.dispatch.input", () -> {
+			PacketInfo info = receiver.decode(loopback, 4000, inputDatagram);
+			messages.dispatch(info, null);
+			return info;
+		});
+		benchmark.run("receiver.dispatch.state", () -> {
+			PacketInfo info = receiver.decode(loopback, 4000, stateDatagram);
+			messages.dispatch(info, null);
+			return info;
+		});
+		receiver.halt();
+		
+		if(args.length > 2)
+			benchmark.append(args[1], args[2]);
+		
+	}
+	
+}
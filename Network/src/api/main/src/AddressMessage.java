@@ -0,0 +1,35 @@
+package api.main.src;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Content of packets naming a client or a server, such as zone redirects
+ * and handoff acknowledgements.
+ */
+public class AddressMessage {
+	
+	@MessageField(id = 0)
+	public byte[] ip;
+	
+	@MessageField(id = 1)
+	public int port;
+	
+	public AddressMessage set(InetAddress ip, int port) {
+		this.ip = ip.getAddress();
+		this.port = port;
+		return this;
+	}
+	
+	/**
+	 * @return [{@link InetAddress}] The address, or null if it's invalid.
+	 */
+	public InetAddress getAddress() {
+		try {
+			return InetAddress.getByAddress(ip);
+		} catch (UnknownHostException e) {
+			return null;
+		}
+	}
+	
+}
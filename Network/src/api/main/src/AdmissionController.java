@@ -0,0 +1,238 @@
+package api.main.src;
+
+import java.net.InetSocketAddress;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Decides when a server lets new clients in. The capacity comes from the
+ * measured tick headroom: the load each client adds is estimated from the
+ * tick load of the {@link TickGovernor}, and clients are let in as long as
+ * the load stays under a target, a few per second so the measure keeps up.
+ * Clients connecting while the server is full wait in a login queue, first
+ * come first served, and learn their position every time they retry.
+ */
+public class AdmissionController {
+	
+	/**
+	 * Returned by {@link #admit(InetSocketAddress, int, long)} when the client may connect.
+	 */
+	public static final int ADMITTED = 0;
+	
+	/**
+	 * Returned by {@link #admit(InetSocketAddress, int, long)} when the queue itself is full.
+	 */
+	public static final int REJECTED = -1;
+	
+	/**
+	 * Default load to stay under, below the load degrading the tick rate.
+	 */
+	public static final float TARGET_LOAD = 0.6f;
+	
+	public static final int DEFAULT_MAX_CLIENTS = 4096;
+	public static final int DEFAULT_MAX_QUEUE = 1024;
+	public static final int ADMISSIONS_PER_SECOND = 10;
+	
+	/**
+	 * Milliseconds after which a client that stopped retrying leaves the queue.
+	 */
+	public static final int QUEUE_TIMEOUT = 5000;
+	
+	/**
+	 * Least load assumed per client, so a few idle clients don't let everyone in.
+	 */
+	private static final float MIN_CLIENT_LOAD = 0.0005f;
+	private static final float SMOOTHING = 0.05f;
+	
+	private float targetLoad = TARGET_LOAD;
+	private int maxClients = DEFAULT_MAX_CLIENTS;
+	private int maxQueue = DEFAULT_MAX_QUEUE;
+	
+	private final LinkedHashMap<InetSocketAddress, long[]> queue = new LinkedHashMap<InetSocketAddress, long[]>();
+	
+	private float baseLoad = 0;
+	private float clientLoad = MIN_CLIENT_LOAD;
+	private int capacity = ADMISSIONS_PER_SECOND;
+	private boolean measured = false;
+	
+	private float tokens = ADMISSIONS_PER_SECOND;
+	private long lastRefill = 0;
+	
+	private long admitted = 0;
+	private long queued = 0;
+	private long rejected = 0;
+	
+	/**
+	 * Sets the load to stay under.
+	 * @param targetLoad The share of a tick's time the ticks may take.
+	 * @return [{@link AdmissionController}] This controller.
+	 */
+	public AdmissionController withTargetLoad(float targetLoad) {
+		if(targetLoad <= 0)
+			throw new RuntimeException("Invalid target load specified.");
+		this.targetLoad = targetLoad;
+		return this;
+	}
+	
+	/**
+	 * Sets the most clients ever let in, whatever the headroom.
+	 * @param maxClients The limit.
+	 * @return [{@link AdmissionController}] This controller.
+	 */
+	public AdmissionController withMaxClients(int maxClients) {
+		if(maxClients < 1)
+			throw new RuntimeException("Invalid client limit specified.");
+		this.maxClients = maxClients;
+		return this;
+	}
+	
+	/**
+	 * Sets the most clients waiting in the queue. Others are told the server is full.
+	 * @param maxQueue The limit.
+	 * @return [{@link AdmissionController}] This controller.
+	 */
+	public AdmissionController withMaxQueue(int maxQueue) {
+		if(maxQueue < 0)
+			throw new RuntimeException("Negative queue limit specified.");
+		this.maxQueue = maxQueue;
+		return this;
+	}
+	
+	/**
+	 * Updates the capacity from the server's load, after every tick.
+	 * @param governor The governor measuring the ticks, or null if they aren't measured.
+	 * @param clients The number of connected clients.
+	 * @return [<b>void</b>]
+	 */
+	public synchronized void update(TickGovernor governor, int clients) {
+		
+		if(governor == null) {
+			capacity = maxClients;
+			return;
+		}
+		
+		// A degraded server has no headroom, whatever its load at the lower rates.
+		float load = governor.getLoad();
+		if(governor.getLevel() > 0)
+			load = Math.max(load, targetLoad);
+		
+		// The load without clients is the world's own, the rest is shared by the clients.
+		if(clients == 0 || !measured) {
+			baseLoad += (load - baseLoad) * (measured ? SMOOTHING : 1);
+			measured = true;
+		}else
+			clientLoad += (Math.max(MIN_CLIENT_LOAD, (load - baseLoad) / clients) - clientLoad) * SMOOTHING;
+		
+		int headroom = (int) ((targetLoad - load) / clientLoad);
+		capacity = Math.min(maxClients, clients + Math.max(0, headroom));
+		
+	}
+	
+	/**
+	 * Lets a connecting client in, or puts it in the queue.
+	 * @param address The client's address.
+	 * @param clients The number of connected clients.
+	 * @param now The current time, in milliseconds.
+	 * @return [<b>int</b>] {@link #ADMITTED}, {@link #REJECTED} or the client's position in the queue.
+	 */
+	public synchronized int admit(InetSocketAddress address, int clients, long now) {
+		
+		expire(now);
+		
+		// Let a few clients in per second, the load only shows them after a while.
+		tokens = Math.min(ADMISSIONS_PER_SECOND, tokens + (now - lastRefill) * ADMISSIONS_PER_SECOND / 1000f);
+		lastRefill = now;
+		
+		long[] lastSeen = queue.get(address);
+		boolean arrived = lastSeen == null;
+		if(arrived) {
+			if(queue.size() >= maxQueue) {
+				rejected++;
+				return REJECTED;
+			}
+			queue.put(address, lastSeen = new long[1]);
+		}
+		lastSeen[0] = now;
+		
+		// Only the first clients of the queue fit in the free slots.
+		int free = Math.min(capacity - clients, (int) tokens);
+		int position = 1;
+		for(InetSocketAddress waiting : queue.keySet()) {
+			if(waiting.equals(address))
+				break;
+			position++;
+		}
+		
+		if(position > free) {
+			if(arrived)
+				queued++;
+			return position;
+		}
+		
+		queue.remove(address);
+		tokens--;
+		admitted++;
+		return ADMITTED;
+		
+	}
+	
+	private void expire(long now) {
+		Iterator<Map.Entry<InetSocketAddress, long[]>> waiting = queue.entrySet().iterator();
+		while(waiting.hasNext())
+			if(now - waiting.next().getValue()[0] > QUEUE_TIMEOUT)
+				waiting.remove();
+	}
+	
+	public int getMaxClients() {
+		return maxClients;
+	}
+	
+	/**
+	 * @return [<b>int</b>] The number of clients the measured headroom allows.
+	 */
+	public synchronized int getCapacity() {
+		return capacity;
+	}
+	
+	/**
+	 * @return [<b>int</b>] The number of clients waiting in the queue.
+	 */
+	public synchronized int getWaiting() {
+		return queue.size();
+	}
+	
+	/**
+	 * @return [<b>float</b>] The estimated share of a tick's time each client takes.
+	 */
+	public synchronized float getClientLoad() {
+		return clientLoad;
+	}
+	
+	/**
+	 * @return [<b>long</b>] The number of clients let in.
+	 */
+	public synchronized long getAdmitted() {
+		return admitted;
+	}
+	
+	/**
+	 * @return [<b>long</b>] The number of clients that had to wait in the queue.
+	 */
+	public synchronized long getQueued() {
+		return queued;
+	}
+	
+	/**
+	 * @return [<b>long</b>] The number of clients turned away with a full queue.
+	 */
+	public synchronized long getRejected() {
+		return rejected;
+	}
+	
+	public synchronized String toString() {
+		return "capacity " + capacity + ", " + queue.size() + " waiting, " 
+				+ String.format("%.2f", clientLoad * 100) + "% load per client";
+	}
+	
+}
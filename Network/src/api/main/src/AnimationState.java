@@ -0,0 +1,138 @@
+package api.main.src;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Animation an entity is playing, replicated instead of its joint transforms.
+ * Clients know the clips and share the world's tick, so the clip, the tick it
+ * started on, its playback speed and the weight of a second clip blended over
+ * it are enough for them to compute the same pose on their own.
+ */
+public class AnimationState {
+	
+	/**
+	 * Clip ids, indexes into the clips known by the clients.
+	 */
+	public static final short NONE = 0, IDLE = 1, WALK = 2;
+	
+	/**
+	 * Size of the state in a state snapshot: clip, start tick, speed, blended clip and its weight.
+	 */
+	public static final int LENGTH = Short.BYTES + Integer.BYTES + Short.BYTES + Short.BYTES + Byte.BYTES;
+	
+	/**
+	 * Resolution of the playback speed on the wire.
+	 */
+	private static final float SPEED_SCALE = 256f;
+	
+	private short clip = NONE;
+	private long startTick = 0;
+	private float speed = 1;
+	
+	private short blendClip = NONE;
+	private float blendWeight = 0;
+	
+	/**
+	 * Starts playing a clip, unless it's already playing at the same speed. Only
+	 * changing the speed of the clip playing carries on from where it is in the clip.
+	 * @param clip The clip id.
+	 * @param tick The tick the clip starts on.
+	 * @param speed The playback speed, 1 being the clip's normal speed.
+	 * @return [<b>boolean</b>] Whether the animation changed.
+	 */
+	public boolean play(short clip, long tick, float speed) {
+		if(this.clip == clip && this.speed == speed)
+			return false;
+		
+		// Move the start so that the time in the clip stays the same at the new speed.
+		if(this.clip == clip && speed > 0)
+			this.startTick = tick - Math.round((tick - startTick) * (double) this.speed / speed);
+		else
+			this.startTick = tick;
+		
+		this.clip = clip;
+		this.speed = speed;
+		return true;
+	}
+	
+	/**
+	 * Blends a second clip over the one playing. It plays at the same time
+	 * and speed as the main clip.
+	 * @param clip The clip id, or {@link #NONE} to stop blending.
+	 * @param weight The weight of the blended clip, between 0 and 1.
+	 * @return [<b>void</b>]
+	 */
+	public void blend(short clip, float weight) {
+		this.blendClip = clip;
+		this.blendWeight = Math.max(0, Math.min(1, weight));
+	}
+	
+	/**
+	 * Computes how far in the clip the animation is.
+	 * @param tick The current tick, which can be between two ticks.
+	 * @return [<b>float</b>] The time in the clip in seconds, before looping.
+	 */
+	public float getTime(double tick) {
+		return (float) Math.max(0, (tick - startTick) / World.TICKS_PER_SECOND * speed);
+	}
+	
+	/**
+	 * Copies the state of another animation.
+	 * @param other The animation to copy.
+	 * @return [<b>void</b>]
+	 */
+	void set(AnimationState other) {
+		this.clip = other.clip;
+		this.startTick = other.startTick;
+		this.speed = other.speed;
+		this.blendClip = other.blendClip;
+		this.blendWeight = other.blendWeight;
+	}
+	
+	void write(ByteBuffer buffer) {
+		buffer.putShort(clip)
+			.putInt((int) startTick)
+			.putShort((short) Math.round(speed * SPEED_SCALE))
+			.putShort(blendClip)
+			.put((byte) Math.round(blendWeight * 255));
+	}
+	
+	/**
+	 * Reads the state from a snapshot.
+	 * @param buffer The snapshot.
+	 * @param tick The tick of the snapshot, used to restore the start tick's high bits.
+	 * @return [<b>void</b>]
+	 */
+	void read(ByteBuffer buffer, long tick) {
+		this.clip = buffer.getShort();
+		
+		// Only the low bits are sent, take the closest start tick before the snapshot.
+		int low = buffer.getInt();
+		this.startTick = tick - (((int) tick - low) & 0xffffffffL);
+		
+		this.speed = buffer.getShort() / SPEED_SCALE;
+		this.blendClip = buffer.getShort();
+		this.blendWeight = (buffer.get() & 0xff) / 255f;
+	}
+	
+	public short getClip() {
+		return clip;
+	}
+	
+	public long getStartTick() {
+		return startTick;
+	}
+	
+	public float getSpeed() {
+		return speed;
+	}
+	
+	public short getBlendClip() {
+		return blendClip;
+	}
+	
+	public float getBlendWeight() {
+		return blendWeight;
+	}
+	
+}
@@ -0,0 +1,296 @@
+package api.main.src;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Picks which entity updates each client gets every tick so it never goes over
+ * its bandwidth budget. Every entity has a priority accumulator per client,
+ * which grows each tick by the entity's priority and is reset when the entity
+ * is sent. The priority is higher for entities closer to the client's player
+ * and for faster ones, and the accumulation makes up for the time since the
+ * last update, so a client short on bandwidth gets less frequent updates of
+ * far and still entities instead of bursts.
+ */
+public class BandwidthScheduler {
+	
+	/**
+	 * Default budget, in bytes per tick.
+	 */
+	public static final int DEFAULT_BUDGET = 1000;
+	
+	/**
+	 * Bytes sent for a state packet on top of its entities.
+	 */
+	public static final int PACKET_OVERHEAD = Seal.OVERHEAD + Packet.HEADER_LENGTH + World.STATE_HEADER;
+	
+	private static final float VIEWER_PRIORITY = 1e6f;
+	
+	private int budget = DEFAULT_BUDGET;
+	private float distanceScale = 50;
+	private float velocityWeight = 4;
+	private float radius = 0;
+	
+	private World world;
+	private final ArrayList<WorldEntity> entities = new ArrayList<WorldEntity>();
+	private long[] order = new long[0];
+	
+	/**
+	 * Scheduling state of a single client.
+	 */
+	public static class Schedule{
+		
+		private final Map<WorldEntity, float[]> accumulators = new HashMap<WorldEntity, float[]>();
+		private int budget = -1;
+		private int interval = 1;
+		private float credit = 0;
+		
+		private long ticks = 0;
+		private long bytes = 0;
+		private long updates = 0;
+		
+		/**
+		 * Sets the budget of the client, overriding the scheduler's.
+		 * @param budget The budget in bytes per tick, or -1 to use the scheduler's.
+		 * @return [<b>void</b>]
+		 */
+		public void setBudget(int budget) {
+			this.budget = budget;
+		}
+		
+		public int getBudget() {
+			return budget;
+		}
+		
+		/**
+		 * Sets how often the client gets updates. Priorities and budget still
+		 * accumulate on the ticks in between.
+		 * @param interval The number of ticks between updates.
+		 * @return [<b>void</b>]
+		 */
+		public void setInterval(int interval) {
+			if(interval < 1)
+				throw new RuntimeException("Invalid update interval specified.");
+			this.interval = interval;
+		}
+		
+		public int getInterval() {
+			return interval;
+		}
+		
+		/**
+		 * @return [<b>float</b>] The average number of bytes sent per tick.
+		 */
+		public float getBytesPerTick() {
+			return ticks == 0 ? 0 : bytes / (float) ticks;
+		}
+		
+		/**
+		 * @return [<b>float</b>] The average number of entity updates sent per tick.
+		 */
+		public float getUpdatesPerTick() {
+			return ticks == 0 ? 0 : updates / (float) ticks;
+		}
+		
+		/**
+		 * @param entity An entity.
+		 * @return [<b>float</b>] The entity's accumulated priority.
+		 */
+		public float getPriority(WorldEntity entity) {
+			float[] accumulator = accumulators.get(entity);
+			return accumulator == null ? 0 : accumulator[0];
+		}
+		
+	}
+	
+	/**
+	 * Receives the state packets picked for a client.
+	 */
+	public interface Sender{
+		void send(byte[] state);
+	}
+	
+	public BandwidthScheduler withBudget(int budget) {
+		if(budget < 0)
+			throw new RuntimeException("Negative bandwidth budget specified.");
+		this.budget = budget;
+		return this;
+	}
+	
+	/**
+	 * Sets the distance at which an entity's priority is halved.
+	 * @param distanceScale The distance in world units.
+	 * @return [{@link BandwidthScheduler}] This scheduler.
+	 */
+	public BandwidthScheduler withDistanceScale(float distanceScale) {
+		if(distanceScale <= 0)
+			throw new RuntimeException("Invalid distance scale specified.");
+		this.distanceScale = distanceScale;
+		return this;
+	}
+	
+	/**
+	 * Sets how much an entity's speed raises its priority.
+	 * @param velocityWeight The priority added per world unit moved per tick.
+	 * @return [{@link BandwidthScheduler}] This scheduler.
+	 */
+	public BandwidthScheduler withVelocityWeight(float velocityWeight) {
+		if(velocityWeight < 0)
+			throw new RuntimeException("Negative velocity weight specified.");
+		this.velocityWeight = velocityWeight;
+		return this;
+	}
+	
+	/**
+	 * Sets the area of interest of the clients. Entities farther than the
+	 * radius from a client's player are never sent to it.
+	 * @param radius The radius in world units, or 0 to send every entity.
+	 * @return [{@link BandwidthScheduler}] This scheduler.
+	 */
+	public BandwidthScheduler withRadius(float radius) {
+		if(radius < 0)
+			throw new RuntimeException("Negative radius specified.");
+		this.radius = radius;
+		return this;
+	}
+	
+	/**
+	 * Checks whether an entity is in the area of interest of a client.
+	 * @param entity The entity.
+	 * @param viewer The client's player, or null if it has none.
+	 * @return [<b>boolean</b>] Whether the entity can be sent to the client.
+	 */
+	public boolean isInterested(WorldEntity entity, WorldEntity viewer) {
+		if(radius == 0 || viewer == null)
+			return true;
+		float dx = entity.x - viewer.x, dy = entity.y - viewer.y, dz = entity.z - viewer.z;
+		return dx * dx + dy * dy + dz * dz <= radius * radius;
+	}
+	
+	public int getBudget() {
+		return budget;
+	}
+	
+	/**
+	 * Computes the priority of an entity for a client.
+	 * @param entity The entity.
+	 * @param viewer The client's player, or null if it has none.
+	 * @return [<b>float</b>] The entity's priority.
+	 */
+	public float priority(WorldEntity entity, WorldEntity viewer) {
+		
+		// A client always needs its own player.
+		if(entity == viewer)
+			return VIEWER_PRIORITY;
+		
+		float distance = 0;
+		if(viewer != null) {
+			float dx = entity.x - viewer.x, dy = entity.y - viewer.y, dz = entity.z - viewer.z;
+			distance = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+		}
+		
+		float speed = (float) Math.sqrt(entity.velX * entity.velX + entity.velY * entity.velY + entity.velZ * entity.velZ);
+		return (1 + speed * velocityWeight) / (1 + distance / distanceScale);
+		
+	}
+	
+	/**
+	 * Starts a new tick, gathering the entities of the world.
+	 * @param world The world.
+	 * @return [<b>void</b>]
+	 */
+	public void begin(World world) {
+		this.world = world;
+		entities.clear();
+		entities.addAll(world.getEntities());
+		if(order.length < entities.size())
+			order = new long[entities.size() * 2];
+	}
+	
+	/**
+	 * Picks the entity updates of a client for the current tick and writes them
+	 * in state packets, in the same format as {@link World#snapshot()}.
+	 * @param tick The world's tick.
+	 * @param schedule The client's scheduling state.
+	 * @param viewer The client's player, or null if it has none.
+	 * @param sender Receives the state packets.
+	 * @return [<b>int</b>] The number of bytes sent.
+	 */
+	public int schedule(long tick, Schedule schedule, WorldEntity viewer, Sender sender) {
+		
+		int count = entities.size();
+		int candidates = 0;
+		
+		// Accumulate the priorities of the entities in the client's area of interest.
+		for(int i = 0; i < count; i++) {
+			WorldEntity entity = entities.get(i);
+			if(!isInterested(entity, viewer))
+				continue;
+			
+			float[] accumulator = schedule.accumulators.get(entity);
+			if(accumulator == null)
+				schedule.accumulators.put(entity, accumulator = new float[1]);
+			accumulator[0] += priority(entity, viewer);
+			
+			// Priorities are positive so their bits sort like them, keep the index in the low bits.
+			order[candidates++] = ((long) Float.floatToIntBits(accumulator[0]) << 32) | i;
+		}
+		
+		// Forget the entities removed from the world.
+		if(schedule.accumulators.size() > count * 2 + 16) {
+			Iterator<WorldEntity> known = schedule.accumulators.keySet().iterator();
+			while(known.hasNext()) {
+				WorldEntity entity = known.next();
+				if(world.getEntity(entity.getId()) != entity)
+					known.remove();
+			}
+		}
+		
+		// Unused budget carries over a little so small budgets still send now and then.
+		int budget = schedule.budget >= 0 ? schedule.budget : this.budget;
+		schedule.credit = Math.min(schedule.credit + budget, budget * (schedule.interval + 1f));
+		if(schedule.ticks++ % schedule.interval != 0)
+			return 0;
+		
+		int available = (int) schedule.credit;
+		int sendable = 0;
+		while(sendable < candidates) {
+			int packets = sendable / World.ENTITIES_PER_PACKET + 1;
+			if(packets * PACKET_OVERHEAD + (sendable + 1) * WorldEntity.STATE_LENGTH > available)
+				break;
+			sendable++;
+		}
+		if(sendable == 0)
+			return 0;
+		
+		// Send the entities with the highest accumulated priority.
+		Arrays.sort(order, 0, candidates);
+		int sent = 0;
+		short chunk = 0;
+		for(int start = 0; start < sendable; start += World.ENTITIES_PER_PACKET) {
+			int size = Math.min(World.ENTITIES_PER_PACKET, sendable - start);
+			ByteBuffer buffer = ByteBuffer.allocate(World.STATE_HEADER + size * WorldEntity.STATE_LENGTH)
+					.putLong(tick)
+					.putShort(chunk++)
+					.putShort((short) size);
+			for(int i = start; i < start + size; i++) {
+				WorldEntity entity = entities.get((int) order[candidates - 1 - i]);
+				World.write(entity, buffer);
+				schedule.accumulators.get(entity)[0] = 0;
+			}
+			sender.send(buffer.array());
+			sent += PACKET_OVERHEAD + buffer.capacity();
+		}
+		
+		schedule.credit -= sent;
+		schedule.bytes += sent;
+		schedule.updates += sendable;
+		return sent;
+		
+	}
+	
+}
@@ -0,0 +1,136 @@
+package api.main.src;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+import api.main.src.Server.SClient;
+
+/**
+ * Sends the same packet to many clients. The packet is serialized once and
+ * only sealed per recipient with its session key, which is a lot cheaper than
+ * serializing and RSA encrypting it for each one. Sealed datagrams are
+ * prepared and submitted to the transport in batches, which is a
+ * {@link java.nio.channels.DatagramChannel} for {@link UdpTransport}.
+ */
+public class Broadcaster {
+	
+	private static final int BATCH_SIZE = 64;
+	
+	private final Transport channel;
+	
+	private final ByteBuffer[] batch = new ByteBuffer[BATCH_SIZE];
+	private final InetSocketAddress[] targets = new InetSocketAddress[BATCH_SIZE];
+	
+	public Broadcaster(Transport channel) {
+		this.channel = channel;
+		for(int i = 0; i < BATCH_SIZE; i++)
+			batch[i] = ByteBuffer.allocateDirect(Receiver.BUFFER_LENGTH);
+	}
+	
+	/**
+	 * Broadcasts a packet to every logged in client.
+	 * @param recipients The clients to send the packet to.
+	 * @param count The number of clients in the array.
+	 * @param type The packet type.
+	 * @param data The packet content.
+	 * @return [<b>int</b>] The number of clients the packet was sent to.
+	 */
+	public int broadcast(SClient[] recipients, int count, int type, byte[] data) {
+		
+		// Serialize the packet once for every recipient.
+		return broadcast(recipients, count, ByteBuffer.wrap(new Packet(type, data).serialize()));
+		
+	}
+	
+	/**
+	 * Broadcasts a serialized packet to every logged in client.
+	 * @param recipients The clients to send the packet to.
+	 * @param count The number of clients in the array.
+	 * @param packet The serialized packet, from its position to its limit.
+	 * @return [<b>int</b>] The number of clients the packet was sent to.
+	 */
+	public synchronized int broadcast(SClient[] recipients, int count, ByteBuffer packet) {
+		
+		if(packet.remaining() + Seal.OVERHEAD > Receiver.BUFFER_LENGTH)
+			throw new RuntimeException("Packet too large to broadcast.");
+		
+		int start = packet.position();
+		int sent = 0;
+		int index = 0;
+		while(index < count) {
+			
+			// Seal the next batch of datagrams.
+			int size = 0;
+			while(size < BATCH_SIZE && index < count) {
+				SClient client = recipients[index++];
+				if(client == null || client.sessionKey == null || !client.connected)
+					continue;
+				
+				ByteBuffer out = batch[size];
+				out.clear();
+				packet.position(start);
+				if(!Seal.seal(client.sessionKey, client.nonces, packet, out))
+					continue;
+				out.flip();
+				
+				targets[size++] = client.getAddress();
+			}
+			
+			// Submit the batch.
+			for(int i = 0; i < size; i++) {
+				try {
+					channel.send(batch[i], targets[i]);
+					sent++;
+				} catch (IOException e) {}
+				targets[i] = null;
+			}
+			
+		}
+		
+		return sent;
+		
+	}
+	
+	/**
+	 * Sends a packet to a single logged in client.
+	 * @param recipient The client.
+	 * @param type The packet type.
+	 * @param data The packet content.
+	 * @return [<b>boolean</b>] Whether the packet was sent.
+	 */
+	public boolean send(SClient recipient, int type, byte[] data) {
+		return send(recipient, ByteBuffer.wrap(new Packet(type, data).serialize()));
+	}
+	
+	/**
+	 * Sends a serialized packet to a single logged in client.
+	 * @param recipient The client.
+	 * @param packet The serialized packet, from its position to its limit.
+	 * @return [<b>boolean</b>] Whether the packet was sent.
+	 */
+	public synchronized boolean send(SClient recipient, ByteBuffer packet) {
+		
+		if(recipient.sessionKey == null || !recipient.connected)
+			return false;
+		
+		ByteBuffer out = batch[0];
+		out.clear();
+		if(!Seal.seal(recipient.sessionKey, recipient.nonces, packet, out))
+			return false;
+		out.flip();
+		
+		try {
+			channel.send(out, recipient.getAddress());
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+		
+	}
+	
+	public void close() {
+		channel.close();
+	}
+	
+}
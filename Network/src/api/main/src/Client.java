@@ -1,49 +1,140 @@
 package api.main.src;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
-import java.nio.ByteBuffer;
+import java.net.InetSocketAddress;
 import java.security.KeyPair;
 import java.security.PublicKey;
+import java.util.function.Consumer;
+
+import javax.crypto.SecretKey;
 
 public class Client extends Thread{
 	
-	private static final int TICKS_PER_SECOND = 15;
+	private static final int TICKS_PER_SECOND = World.TICKS_PER_SECOND;
+	
+	/**
+	 * Number of input commands sent in every input packet.
+	 */
+	private static final int INPUT_REDUNDANCY = 8;
 	private static final int TIMEOUT = 5000;
 	
-	private InetAddress host;
-	private int port;
+	private static final int TIMER_SLOTS = 128;
+	private static final int TIMER_RESOLUTION = 10;
+	
+	private volatile InetAddress host;
+	private volatile int port;
 	
 	private PublicKey serverKey;
 	
-	private DatagramSocket socket;
+	private Transport socket;
 	public KeyPair keys;
 	private Receiver receiver;
 	
 	private String username;
 	
-	private long lastPacket;
+	private volatile long lastPacket;
 	private int ping = 0;
 	
+	private final TimingWheel timers = new TimingWheel(TIMER_SLOTS, TIMER_RESOLUTION);
+	private final MessageRegistry<Client> messages;
+	
 	private volatile boolean running = false;
 	
 	private volatile boolean connected = false;
 	private volatile boolean loggedIn = false;
+	private boolean subscriber = false;
+	private SecretKey subscriptionKey;
+	private final Seal.Nonces subscriptionNonces = new Seal.Nonces((byte) 0);
+	private volatile int queuePosition = 0;
+	
+	private volatile byte inputMask = 0;
+	private volatile float inputYaw = 0;
+	
+	private final byte[] commandMasks = new byte[INPUT_REDUNDANCY];
+	private final float[] commandYaws = new float[INPUT_REDUNDANCY];
+	private int commandTick = 0;
+	private int sentTick = 0;
+	private short sequence = 0;
+	private double nextCommand = 0;
+	
+	private final CongestionControl congestion = new CongestionControl();
+	
+	private volatile LockstepSimulation lockstep;
+	private int lockstepMatch, lockstepLeft;
+	private int lockstepPeer, lockstepDelay;
+	private int lockstepInputTick = -1;
+	private final byte[] lockstepMasks = new byte[LockstepSession.REDUNDANCY];
+	private final int[] lockstepYaws = new int[LockstepSession.REDUNDANCY];
+	private byte[] peerMasks;
+	private int[] peerYaws;
+	
+	private Consumer<WorldSnapshot> stateCallback;
 	
 	
 	public Client(InetAddress host, int port, String username) throws Exception {
+		this(host, port, username, TransportFactory.UDP);
+	}
+	
+	public Client(InetAddress host, int port, String username, TransportFactory transport) throws Exception {
 		this.host = host;
 		this.port = port;
 		this.username = username;
 		this.keys = RSA.generateKeyPair(Server.KEY_SIZE);
-		this.receiver = new Receiver(this.keys.getPrivate()).withCallback(this::processPacket);
+		this.messages = new MessageRegistry<Client>()
+				.onRaw(Packet.ACCEPT_CONNECTION, (info, client) -> processConnection(info))
+				.onRaw(Packet.INVALID, (info, client) -> processInvalid(info))
+				.onRaw(Packet.STATE, (info, client) -> processState(info))
+				.on(Packet.PING, PingMessage.class, (ping, info, client) -> processPing(ping, info))
+				.on(Packet.PORT_REDIRECT, PortMessage.class, (redirect, info, client) -> processRedirect(redirect))
+				.on(Packet.QUEUE, QueueMessage.class, (queue, info, client) -> processQueue(queue))
+				.on(Packet.ZONE_REDIRECT, AddressMessage.class, (redirect, info, client) -> processZoneRedirect(redirect, info))
+				.on(Packet.LOCKSTEP_START, LockstepStartMessage.class, (start, info, client) -> processLockstepStart(start, info))
+				.on(Packet.LOCKSTEP_TICK, LockstepTickMessage.class, (tick, info, client) -> processLockstepTick(tick, info))
+				.on(Packet.LOCKSTEP_STOP, LockstepStopMessage.class, (stop, info, client) -> processLockstepStop(stop, info))
+				.on(Packet.LOCKSTEP_INPUT, LockstepInputMessage.class, null)
+				.on(Packet.INPUT, InputMessage.class, null);
+		this.receiver = new Receiver(transport, 0, this.keys.getPrivate()).withCallback(this::processPacket);
 		this.socket = receiver.getSocket();
 		this.receiver.start();
 		
 	}
 	
+	/**
+	 * Sets the callback receiving the world state published by the server.
+	 * @param stateCallback The callback.
+	 * @return [{@link Client}] This client.
+	 */
+	public Client withStateCallback(Consumer<WorldSnapshot> stateCallback) {
+		this.stateCallback = stateCallback;
+		return this;
+	}
+	
+	/**
+	 * Subscribes to the server's whole world state instead of playing, to
+	 * relay it to spectators. The client sends no input.
+	 * @param clusterKey The server's cluster key, the subscription is sealed with it to prove it comes from a relay.
+	 * @return [{@link Client}] This client.
+	 */
+	public Client withSubscription(SecretKey clusterKey) {
+		if(clusterKey == null)
+			throw new RuntimeException("No cluster key specified.");
+		this.subscriber = true;
+		this.subscriptionKey = clusterKey;
+		return this;
+	}
+	
+	/**
+	 * Sets the movement input sent to the server on every tick.
+	 * @param mask The movement bits ({@link WorldEntity#FORWARD}, {@link WorldEntity#BACKWARD}, ...).
+	 * @param yaw The yaw of the camera in degrees.
+	 * @return [<b>void</b>]
+	 */
+	public void setInput(int mask, float yaw) {
+		this.inputYaw = yaw;
+		this.inputMask = (byte) mask;
+	}
+	
 	@Override
 	public void start() {
 		if(running) return;
@@ -62,71 +153,128 @@ public class Client extends Thread{
 	
 	public void run() {
 		
-		long lastTime = System.nanoTime();
-		long lastTick = System.nanoTime();
+		// Send our input at the world's tick rate, it also keeps the connection alive.
+		timers.every(1000 / TICKS_PER_SECOND, this::keepAlive);
+		
+		// Connect, login or ping once a second.
+		timers.every(1000, this::heartbeat);
+		
+		// Check for a timed out connection.
+		timers.schedule(TIMEOUT, this::checkTimeout);
+		
 		while(running) {
 			
-			long currentTick = System.nanoTime();
-			if(currentTick - lastTick >= 1000000000 / TICKS_PER_SECOND) {
-		
-				if(connected && loggedIn) {
-					sendPacket(Packet.INVALID, null, false);
-					if(System.currentTimeMillis() - lastPacket >= TIMEOUT) {
-						connected = false;
-						loggedIn = false;
-						System.out.println("Connection to " + host.toString() + " timed out.");
-					}
-				}
-				
-				
-				lastTick = currentTick;
-			}
+			timers.advance(System.currentTimeMillis());
 			
-			long currentTime = System.nanoTime();
-			if(currentTime - lastTime >= 1000000000) {
-
-				if(!connected)
-					connect();
-				else if(!loggedIn)
-					login();
-				else {
-					sendPacket(Packet.PING, null, false);
-					
-					System.out.println("Connected to " + host + ":" + port + " (" + ping + " ms)");
-				}
-				
-				lastTime = currentTime;
-			}
+			try {
+				Thread.sleep(timers.getResolution());
+			} catch (InterruptedException e) {}
 			
 		}
 		
 	}
-
-	public void processPacket(PacketInfo packetInfo) {
-		if(packetInfo == null) 
+	
+	private void keepAlive() {
+		
+		// Our input doubles as the keepalive once logged in.
+		if(!connected || !loggedIn || subscriber)
 			return;
-		switch(packetInfo.packet.getType()) {
 		
-			case Packet.ACCEPT_CONNECTION:
-				processConnection(packetInfo);
-				break;
-				
-			case Packet.INVALID:
-				processInvalid(packetInfo);
-				break;
-				
-			case Packet.PING:
-				processPing(packetInfo);
-				break;
-				
-			case Packet.PORT_REDIRECT:
-				processRedirect(packetInfo);
-				break;
-				
+		// Take one command per tick elapsed, the timer isn't precise enough to fire on every tick.
+		long now = System.currentTimeMillis();
+		if(nextCommand == 0 || now - nextCommand > INPUT_REDUNDANCY * 1000.0 / TICKS_PER_SECOND)
+			nextCommand = now;
+		
+		boolean sampled = false;
+		while(nextCommand <= now) {
+			commandTick++;
+			commandMasks[commandTick % INPUT_REDUNDANCY] = inputMask;
+			commandYaws[commandTick % INPUT_REDUNDANCY] = inputYaw;
+			nextCommand += 1000.0 / TICKS_PER_SECOND;
+			sampled = true;
+		}
+		
+		// Send less often on a congested connection, the repeated commands fill the gaps.
+		int interval = congestion.update(now);
+		if(sampled && commandTick - sentTick >= interval)
+			sendInput();
+		
+	}
+	
+	private void sendInput() {
+		
+		InputMessage input = messages.message(Packet.INPUT);
+		input.sequence = ++sequence;
+		input.tick = commandTick;
+		input.mask = commandMasks[commandTick % INPUT_REDUNDANCY];
+		input.yaw = commandYaws[commandTick % INPUT_REDUNDANCY];
+		
+		// Repeat the previous commands, newest first.
+		int repeated = Math.min(commandTick - 1, INPUT_REDUNDANCY - 1);
+		if(input.history == null || input.historySize() != repeated)
+			input.history = new byte[repeated * InputMessage.COMMAND_LENGTH];
+		for(int i = 0; i < repeated; i++) {
+			int tick = commandTick - 1 - i;
+			input.setCommand(i, commandMasks[tick % INPUT_REDUNDANCY], commandYaws[tick % INPUT_REDUNDANCY]);
+		}
+		
+		sendMessage(Packet.INPUT, input);
+		sentTick = commandTick;
+		
+	}
+	
+	private void heartbeat() {
+		if(!connected)
+			connect();
+		else if(!loggedIn)
+			login();
+		else {
+			// Repeated until the server sees it, it also keeps a subscriber's connection alive.
+			if(subscriber)
+				Server.sendSealed(subscriptionKey, subscriptionNonces, host, port, Packet.SUBSCRIBE, null, socket);
+			
+			PingMessage request = messages.message(Packet.PING);
+			request.time = 0;
+			request.counter = 0;
+			sendMessage(Packet.PING, request);
+			
+			System.out.println("Connected to " + host + ":" + port + " (" + congestion + ")");
 		}
+	}
+	
+	private void checkTimeout() {
 		
-		System.out.println(packetInfo.packet.getType());
-		System.out.println(new String(packetInfo.packet.getContent()));
+		// The timer isn't moved on every packet, so check whether the server was heard from since.
+		long idle = System.currentTimeMillis() - lastPacket;
+		if(connected && loggedIn && idle >= TIMEOUT) {
+			connected = false;
+			loggedIn = false;
+			System.out.println("Connection to " + host.toString() + " timed out.");
+		}
+		
+		timers.schedule(idle < TIMEOUT ? TIMEOUT - idle : TIMEOUT, this::checkTimeout);
+		
+	}
+	
+	public void processPacket(PacketInfo packetInfo) {
+		if(packetInfo == null) 
+			return;
+		messages.dispatch(packetInfo, this);
+	}
+	
+	/**
+	 * Sends a message unencrypted, serialized in place.
+	 * @param type The packet type.
+	 * @param message The message.
+	 * @return [<b>boolean</b>] Whether the packet was sent.
+	 */
+	private boolean sendMessage(int type, Object message) {
+		try {
+			socket.send(messages.toPacket(type, message), new InetSocketAddress(host, port));
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
 	}
 	
 	private boolean sendPacket(int type, byte[] data, boolean encrypted) {
@@ -137,10 +285,8 @@ public class Client extends Thread{
 		byte[] toSend = encrypted 	? RSA.encrypt(serverKey, new Packet(type, data).serialize()) 
 									: new Packet(type, data).serialize();
 		
-		DatagramPacket dp = new DatagramPacket(toSend, toSend.length, host, port);
-		
 		try {
-			socket.send(dp);
+			socket.send(toSend, host, port);
 			return true;
 		} catch (IOException e) {
 			return false;
@@ -154,6 +300,7 @@ public class Client extends Thread{
 			return;
 		
 		serverKey = RSA.toPublicKey(packetInfo.packet.getContent());
+		queuePosition = 0;
 		
 		if(serverKey != null)
 			connected = true;
@@ -171,43 +318,223 @@ public class Client extends Thread{
 		if(packetInfo.packet.getType() != Packet.INVALID)
 			return;
 		
-		if(!loggedIn)
+		if(!loggedIn) {
 			loggedIn = true;
+			
+			// The login confirmation carries our session key.
+			if(packetInfo.packet.getContentLength() > 0)
+				receiver.setSessionKey(Seal.toKey(packetInfo.packet.getContent()));
+		}
+		
+		resetTimer();
+		
+	}
+	
+	private void processPing(PingMessage ping, PacketInfo packetInfo) {
+		
+		updateLatency(ping.time);
+		congestion.sampleRtt(this.ping * 2);
+		congestion.sampleLoss(ping.loss / 100f);
+		
+		// Answer the server's ping with the time it was sent at.
+		if(ping.counter <= 2) {
+			PingMessage answer = messages.message(Packet.PING);
+			answer.time = packetInfo.packet.getTimestamp();
+			answer.counter = ping.counter;
+			sendMessage(Packet.PING, answer);
+		}
 		
 		resetTimer();
 		
 	}
 	
-	private void processPing(PacketInfo packetInfo) {
+	private void processState(PacketInfo packetInfo) {
 		
-		if(packetInfo.packet.getContentLength() < 9)
+		WorldSnapshot snapshot = WorldSnapshot.fromData(packetInfo.packet.getContent());
+		if(snapshot == null)
 			return;
+		
+		if(stateCallback != null)
+			stateCallback.accept(snapshot);
+		
+		resetTimer();
+		
+	}
 	
-		updateLatency(packetInfo);
+	private void processQueue(QueueMessage queue) {
+		
+		// We keep connecting once a second, each answer tells us how far we moved up.
+		if(connected || queue.position == queuePosition)
+			return;
+		queuePosition = queue.position;
+		
+		System.out.println("Server is full, waiting in queue at position " + queue.position + " of " + queue.waiting + ".");
 		
-		ByteBuffer content = ByteBuffer.wrap(packetInfo.packet.getContent());
-		content.rewind();
+	}
+	
+	/**
+	 * @return [<b>int</b>] Our position in the server's login queue, or 0 if we aren't waiting.
+	 */
+	public int getQueuePosition() {
+		return queuePosition;
+	}
+	
+	private void processRedirect(PortMessage redirect) {
+		this.port = redirect.port;
+	}
+	
+	private void processZoneRedirect(AddressMessage redirect, PacketInfo packetInfo) {
+		
+		// Only the server we're logged in to can move us to another zone.
+		if(!packetInfo.sealed)
+			return;
 		
-		byte counter = content.get(8);
-		if(counter <= 2)
-			sendPacket(Packet.PING, ByteBuffer.allocate(Long.BYTES).putLong(packetInfo.packet.getTimestamp()).array(), false);
+		InetAddress newHost = redirect.getAddress();
+		if(newHost == null)
+			return;
 		
+		// The new server took over our session and keys, keep talking without reconnecting.
+		this.host = newHost;
+		this.port = redirect.port;
 		resetTimer();
 		
+		System.out.println("Moved to zone server " + host + ":" + port + ".");
 		
 	}
 	
-	private void processRedirect(PacketInfo packetInfo) {
-		if(packetInfo.packet.getContentLength() < 4)
+	private void processLockstepStart(LockstepStartMessage start, PacketInfo packetInfo) {
+		
+		if(!packetInfo.sealed)
 			return;
+		
+		resetTimer();
+		
+		// The server didn't get that we left this match.
+		if(start.match == lockstepLeft) {
+			sendLockstepStop(start.match);
+			return;
+		}
+		
+		// The start is resent until our first input arrives, a new match replaces ours.
+		if(lockstep == null || start.match != lockstepMatch) {
+			lockstepMatch = start.match;
+			lockstepPeer = start.index;
+			lockstepDelay = start.delay;
+			lockstepInputTick = -1;
+			peerMasks = new byte[start.peers];
+			peerYaws = new int[start.peers];
+			lockstep = new LockstepSimulation(start.seed, start.peers, start.unitsPerPeer);
+			System.out.println("Lockstep match started as peer " + lockstepPeer + " of " + start.peers + ".");
+		}
+		
+		sendLockstepInput();
+		
+	}
 	
-		ByteBuffer content = ByteBuffer.wrap(packetInfo.packet.getContent());
-		content.rewind();
+	private void processLockstepTick(LockstepTickMessage tick, PacketInfo packetInfo) {
+		
+		LockstepSimulation simulation = lockstep;
+		if(!packetInfo.sealed)
+			return;
 		
-		int newPort = content.getInt();
+		if(tick.match == lockstepLeft) {
+			sendLockstepStop(tick.match);
+			return;
+		}
+		
+		if(simulation == null || tick.match != lockstepMatch || tick.peers != peerMasks.length)
+			return;
+		
+		// Run every tick we're missing, the packet repeats the last ones. Past
+		// them there's no catching up, the state of the match is only on the peers.
+		int oldest = tick.tick - tick.ticks() + 1;
+		if(simulation.getTick() < oldest) {
+			System.out.println("Lost lockstep at tick " + simulation.getTick() + ", leaving the match.");
+			leaveLockstep();
+			return;
+		}
+		
+		boolean ran = false;
+		while(simulation.getTick() <= tick.tick) {
+			int block = (tick.tick - simulation.getTick()) * peerMasks.length;
+			for(int peer = 0; peer < peerMasks.length; peer++) {
+				peerMasks[peer] = InputMessage.maskAt(tick.commands, block + peer);
+				peerYaws[peer] = InputMessage.yawAt(tick.commands, block + peer);
+			}
+			simulation.step(peerMasks, peerYaws);
+			ran = true;
+		}
+		
+		if(ran)
+			sendLockstepInput();
+		resetTimer();
+		
+	}
+	
+	private void sendLockstepInput() {
+		
+		LockstepSimulation simulation = lockstep;
+		
+		// Our current input is due a few ticks ahead, in time to reach the server.
+		int target = simulation.getTick() + lockstepDelay;
+		int quantized = InputMessage.quantize(inputYaw);
+		for(int t = Math.max(lockstepInputTick + 1, target - LockstepSession.REDUNDANCY + 1); t <= target; t++) {
+			lockstepMasks[t % LockstepSession.REDUNDANCY] = inputMask;
+			lockstepYaws[t % LockstepSession.REDUNDANCY] = quantized;
+		}
+		lockstepInputTick = Math.max(lockstepInputTick, target);
+		
+		LockstepInputMessage input = messages.message(Packet.LOCKSTEP_INPUT);
+		int count = Math.min(LockstepSession.REDUNDANCY, lockstepInputTick + 1);
+		if(input.commands == null || input.commands.length != count * InputMessage.COMMAND_LENGTH)
+			input.commands = new byte[count * InputMessage.COMMAND_LENGTH];
+		for(int i = 0; i < count; i++) {
+			int t = lockstepInputTick - i;
+			InputMessage.writeCommand(input.commands, i, lockstepMasks[t % LockstepSession.REDUNDANCY], 
+					lockstepYaws[t % LockstepSession.REDUNDANCY]);
+		}
+		input.tick = lockstepInputTick;
+		input.checksumTick = simulation.getTick();
+		input.checksum = simulation.checksum();
+		input.match = lockstepMatch;
+		
+		sendMessage(Packet.LOCKSTEP_INPUT, input);
 		
-		this.port = newPort;
-
+	}
+	
+	private void processLockstepStop(LockstepStopMessage stop, PacketInfo packetInfo) {
+		
+		if(!packetInfo.sealed || lockstep == null || stop.match != lockstepMatch)
+			return;
+		
+		System.out.println("Lockstep match ended at tick " + lockstep.getTick() + ".");
+		lockstep = null;
+		lockstepMatch = 0;
+		resetTimer();
+		
+	}
+	
+	/**
+	 * Leaves the lockstep match we're in, the server stops sending us its ticks.
+	 */
+	private void leaveLockstep() {
+		lockstepLeft = lockstepMatch;
+		lockstepMatch = 0;
+		lockstep = null;
+		sendLockstepStop(lockstepLeft);
+	}
+	
+	private void sendLockstepStop(int match) {
+		LockstepStopMessage stop = messages.message(Packet.LOCKSTEP_STOP);
+		stop.match = match;
+		sendMessage(Packet.LOCKSTEP_STOP, stop);
+	}
+	
+	/**
+	 * @return [{@link LockstepSimulation}] The simulation of the lockstep match we're in, or null.
+	 */
+	public LockstepSimulation getLockstep() {
+		return lockstep;
 	}
 	
 	private void connect() {
@@ -224,14 +551,8 @@ public class Client extends Thread{
 		
 	}
 	
-	private void updateLatency(PacketInfo packetInfo) {
-		if(packetInfo.packet.getType() != Packet.PING)
-			return;
-		try {
-			ping = (int)(System.currentTimeMillis() - 
-					((ByteBuffer)ByteBuffer.wrap(packetInfo.packet.getContent()).rewind()).getLong()) / 2;
-		}catch(Exception e) {}
-		
+	private void updateLatency(long sent) {
+		this.ping = (int)(System.currentTimeMillis() - sent) / 2;
 	}
 	
 	private void resetTimer() {
@@ -0,0 +1,348 @@
+package api.main.src;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Per packet type payload compression. The codec used for a packet is chosen
+ * using its type and is written in the packet header, so the receiving end
+ * never has to guess it. A payload is only compressed if the result is smaller
+ * than the original content.
+ */
+public class Compression {
+	
+	public static final byte NONE = 0;
+	public static final byte LZ = 1;
+	public static final byte DEFLATE = 2;
+	
+	/**
+	 * Size of the original length prefix written in front of compressed payloads.
+	 */
+	private static final int PREFIX_LENGTH = Integer.BYTES;
+	
+	/**
+	 * Codec and preset dictionary used for each packet type.
+	 */
+	private static final Map<Integer, Byte> codecs = new ConcurrentHashMap<Integer, Byte>();
+	private static final Map<Integer, byte[]> dictionaries = new ConcurrentHashMap<Integer, byte[]>();
+	
+	/**
+	 * Captured payloads used to train dictionaries.
+	 */
+	private static final Map<Integer, ArrayDeque<byte[]>> samples = new ConcurrentHashMap<Integer, ArrayDeque<byte[]>>();
+	private static final Map<Integer, Integer> maxSamples = new ConcurrentHashMap<Integer, Integer>();
+	
+	/**
+	 * Compression statistics for each packet type.
+	 */
+	private static final Map<Integer, Stats> stats = new ConcurrentHashMap<Integer, Stats>();
+	
+	private static final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED));
+	private static final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(Inflater::new);
+	private static final ThreadLocal<byte[]> scratch = ThreadLocal.withInitial(() -> new byte[Receiver.BUFFER_LENGTH * 2]);
+	
+	/**
+	 * Compression statistics for a single packet type.
+	 */
+	public static class Stats{
+		public final LongAdder packets = new LongAdder();
+		public final LongAdder compressed = new LongAdder();
+		public final LongAdder rawBytes = new LongAdder();
+		public final LongAdder wireBytes = new LongAdder();
+		public final LongAdder compressNanos = new LongAdder();
+		public final LongAdder decompressNanos = new LongAdder();
+		
+		public double ratio() {
+			long raw = rawBytes.sum();
+			return raw == 0 ? 1.0 : (double)wireBytes.sum() / raw;
+		}
+		
+		public String toString() {
+			long count = Math.max(1, packets.sum());
+			return String.format("%d packets (%d compressed), ratio %.3f, %d ns/compress, %d ns/decompress", 
+					packets.sum(), compressed.sum(), ratio(), 
+					compressNanos.sum() / count, decompressNanos.sum() / count);
+		}
+	}
+	
+	/**
+	 * Sets the codec used to compress the payloads of a packet type.
+	 * @param type The packet type.
+	 * @param codec The codec to use ({@link #NONE}, {@link #LZ} or {@link #DEFLATE}).
+	 * @return [<b>void</b>]
+	 */
+	public static void use(int type, byte codec) {
+		if(codec != NONE && codec != LZ && codec != DEFLATE)
+			throw new RuntimeException("Unknown codec " + codec + ".");
+		codecs.put(type, codec);
+	}
+	
+	/**
+	 * Compresses the payloads of a packet type using deflate with a preset dictionary.
+	 * Both ends must use the same dictionary for the type.
+	 * @param type The packet type.
+	 * @param dictionary The preset dictionary.
+	 * @return [<b>void</b>]
+	 */
+	public static void useDictionary(int type, byte[] dictionary) {
+		dictionaries.put(type, dictionary);
+		codecs.put(type, DEFLATE);
+	}
+	
+	/**
+	 * Returns the codec used for a packet type.
+	 * @param type The packet type.
+	 * @return [<b>byte</b>] The codec.
+	 */
+	public static byte codecFor(int type) {
+		Byte codec = codecs.get(type);
+		return codec == null ? NONE : codec;
+	}
+	
+	/**
+	 * Starts capturing the payloads of a packet type so a dictionary can be trained.
+	 * @param type The packet type.
+	 * @param max The maximum number of payloads to keep.
+	 * @return [<b>void</b>]
+	 */
+	public static void capture(int type, int max) {
+		maxSamples.put(type, max);
+		samples.putIfAbsent(type, new ArrayDeque<byte[]>());
+	}
+	
+	/**
+	 * Trains a preset dictionary from the payloads captured for a packet type.
+	 * @param type The packet type.
+	 * @param size The maximum size of the dictionary.
+	 * @return [<b>byte[]</b>] The trained dictionary.
+	 */
+	public static byte[] train(int type, int size) {
+		ArrayDeque<byte[]> captured = samples.get(type);
+		if(captured == null)
+			return new byte[0];
+		synchronized(captured) {
+			return train(new ArrayList<byte[]>(captured), size);
+		}
+	}
+	
+	/**
+	 * Trains a preset dictionary from sample payloads. The most frequent
+	 * substrings are kept, the most common ones at the end of the dictionary
+	 * since deflate reaches them with the shortest distances.
+	 * @param payloads The sample payloads.
+	 * @param size The maximum size of the dictionary.
+	 * @return [<b>byte[]</b>] The trained dictionary.
+	 */
+	public static byte[] train(List<byte[]> payloads, int size) {
+		
+		final int gram = 8;
+		
+		// Count the number of payloads each substring appears in.
+		HashMap<ByteBuffer, Integer> counts = new HashMap<ByteBuffer, Integer>();
+		for(byte[] payload : payloads) {
+			HashMap<ByteBuffer, Boolean> seen = new HashMap<ByteBuffer, Boolean>();
+			for(int i = 0; i + gram <= payload.length; i++) {
+				ByteBuffer key = ByteBuffer.wrap(payload, i, gram).slice();
+				if(seen.put(key, true) == null)
+					counts.merge(key, 1, Integer::sum);
+			}
+		}
+		
+		// Substrings seen only once are not worth keeping.
+		List<Map.Entry<ByteBuffer, Integer>> entries = new ArrayList<Map.Entry<ByteBuffer, Integer>>();
+		for(Map.Entry<ByteBuffer, Integer> entry : counts.entrySet())
+			if(entry.getValue() > 1)
+				entries.add(entry);
+		Collections.sort(entries, (a, b) -> Integer.compare(a.getValue(), b.getValue()));
+		
+		int count = Math.min(entries.size(), size / gram);
+		ByteBuffer dictionary = ByteBuffer.allocate(count * gram);
+		for(int i = entries.size() - count; i < entries.size(); i++)
+			dictionary.put(entries.get(i).getKey().duplicate());
+		
+		return dictionary.array();
+		
+	}
+	
+	/**
+	 * Compresses a payload using the codec of its packet type.
+	 * @param type The packet type.
+	 * @param codec The codec to use.
+	 * @param content The payload.
+	 * @return [<b>byte[]</b>] The compressed payload, or null if compression didn't make it smaller.
+	 */
+	public static byte[] compress(int type, byte codec, byte[] content) {
+		
+		record(type, content);
+		
+		Stats s = statsFor(type);
+		s.packets.increment();
+		s.rawBytes.add(content.length);
+		
+		long start = System.nanoTime();
+		byte[] packed = null;
+		
+		switch(codec) {
+			case LZ:
+				packed = withPrefix(content.length, api.main.src.LZ.compress(content));
+				break;
+			case DEFLATE:
+				packed = deflate(type, content);
+				break;
+		}
+		
+		s.compressNanos.add(System.nanoTime() - start);
+		
+		if(packed == null || packed.length >= content.length) {
+			s.wireBytes.add(content.length);
+			return null;
+		}
+		
+		s.compressed.increment();
+		s.wireBytes.add(packed.length);
+		return packed;
+		
+	}
+	
+	/**
+	 * Decompresses a payload.
+	 * @param type The packet type.
+	 * @param codec The codec the payload was compressed with.
+	 * @param payload The compressed payload.
+	 * @return [<b>byte[]</b>] The original payload.
+	 */
+	public static byte[] decompress(int type, byte codec, byte[] payload) {
+		
+		if(codec == NONE)
+			return payload;
+		
+		long start = System.nanoTime();
+		int length = ByteBuffer.wrap(payload).getInt();
+		if(length < 0 || length > Receiver.BUFFER_LENGTH * 64)
+			throw new IllegalArgumentException("Invalid compressed length.");
+		
+		byte[] content;
+		switch(codec) {
+			case LZ:
+				content = api.main.src.LZ.decompress(payload, PREFIX_LENGTH, length);
+				break;
+			case DEFLATE:
+				content = inflate(type, payload, length);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown codec " + codec + ".");
+		}
+		
+		statsFor(type).decompressNanos.add(System.nanoTime() - start);
+		return content;
+		
+	}
+	
+	/**
+	 * Returns the compression statistics of a packet type.
+	 * @param type The packet type.
+	 * @return [{@link Stats}] The statistics.
+	 */
+	public static Stats statsFor(int type) {
+		Stats s = stats.get(type);
+		if(s == null) {
+			stats.putIfAbsent(type, new Stats());
+			s = stats.get(type);
+		}
+		return s;
+	}
+	
+	/**
+	 * Returns a report of the compression ratio and CPU time of every packet type.
+	 * @return [<b>String</b>] The report.
+	 */
+	public static String report() {
+		if(stats.isEmpty())
+			return "";
+		String msg = "Compression :\n";
+		for(Map.Entry<Integer, Stats> entry : stats.entrySet())
+			msg += "\ttype " + entry.getKey() + " : " + entry.getValue() + "\n";
+		return msg;
+	}
+	
+	private static void record(int type, byte[] content) {
+		ArrayDeque<byte[]> captured = samples.get(type);
+		if(captured == null)
+			return;
+		synchronized(captured) {
+			captured.addLast(content.clone());
+			while(captured.size() > maxSamples.get(type))
+				captured.removeFirst();
+		}
+	}
+	
+	private static byte[] deflate(int type, byte[] content) {
+		Deflater deflater = deflaters.get();
+		deflater.reset();
+		
+		byte[] dictionary = dictionaries.get(type);
+		if(dictionary != null)
+			deflater.setDictionary(dictionary);
+		
+		deflater.setInput(content);
+		deflater.finish();
+		
+		byte[] buffer = scratch.get();
+		if(buffer.length < content.length + 64) {
+			buffer = new byte[content.length + 64];
+			scratch.set(buffer);
+		}
+		
+		int length = deflater.deflate(buffer);
+		if(!deflater.finished())
+			return null;
+		
+		return withPrefix(content.length, buffer, length);
+	}
+	
+	private static byte[] inflate(int type, byte[] payload, int length) {
+		Inflater inflater = inflaters.get();
+		inflater.reset();
+		inflater.setInput(payload, PREFIX_LENGTH, payload.length - PREFIX_LENGTH);
+		
+		byte[] content = new byte[length];
+		try {
+			int read = inflater.inflate(content);
+			if(inflater.needsDictionary()) {
+				byte[] dictionary = dictionaries.get(type);
+				if(dictionary == null)
+					throw new IllegalArgumentException("Missing dictionary for type " + type + ".");
+				inflater.setDictionary(dictionary);
+				read += inflater.inflate(content, read, length - read);
+			}
+			if(read != length)
+				throw new IllegalArgumentException("Corrupt deflate data.");
+		} catch (DataFormatException e) {
+			throw new IllegalArgumentException(e);
+		}
+		
+		return content;
+	}
+	
+	private static byte[] withPrefix(int length, byte[] data) {
+		return withPrefix(length, data, data.length);
+	}
+	
+	private static byte[] withPrefix(int length, byte[] data, int dataLength) {
+		byte[] out = new byte[PREFIX_LENGTH + dataLength];
+		ByteBuffer.wrap(out).putInt(length);
+		System.arraycopy(data, 0, out, PREFIX_LENGTH, dataLength);
+		return out;
+	}
+	
+}
@@ -0,0 +1,167 @@
+package api.main.src;
+
+/**
+ * Detects congestion on a connection from its round trip time and packet
+ * loss, and picks how often to send on it. A congested connection backs off
+ * by doubling its send interval, then recovers one step at a time once it
+ * stayed good long enough. Connections that keep going bad right after
+ * recovering wait longer before recovering again, so they don't flap.
+ */
+public class CongestionControl {
+	
+	/**
+	 * Round trip time above which the connection is considered congested, in milliseconds.
+	 */
+	public static final int RTT_THRESHOLD = 250;
+	
+	/**
+	 * Packet loss above which the connection is considered congested.
+	 */
+	public static final float LOSS_THRESHOLD = 0.05f;
+	
+	/**
+	 * Longest send interval, in ticks. Must stay below the input redundancy so
+	 * every command is still repeated in at least one packet.
+	 */
+	public static final int MAX_INTERVAL = 4;
+	
+	private static final long WINDOW = 1000;
+	private static final long MIN_RECOVERY = 2000, MAX_RECOVERY = 30000;
+	private static final float SMOOTHING = 0.25f;
+	
+	private int interval = 1;
+	private boolean congested = false;
+	
+	private float rtt = 0;
+	private float loss = 0;
+	
+	private boolean started = false;
+	private short lastSequence;
+	private int received = 0, lost = 0;
+	
+	private long windowStart = 0;
+	private long goodSince = 0;
+	private long lastChange = 0;
+	private long recovery = MIN_RECOVERY;
+	
+	/**
+	 * Adds a round trip time measurement.
+	 * @param rtt The round trip time in milliseconds.
+	 * @return [<b>void</b>]
+	 */
+	public synchronized void sampleRtt(int rtt) {
+		if(rtt < 0)
+			return;
+		this.rtt = this.rtt == 0 ? rtt : this.rtt + (rtt - this.rtt) * SMOOTHING;
+	}
+	
+	/**
+	 * Adds a packet loss measurement made by the other side of the connection.
+	 * @param loss The fraction of packets lost.
+	 * @return [<b>void</b>]
+	 */
+	public synchronized void sampleLoss(float loss) {
+		this.loss += (Math.max(0, Math.min(1, loss)) - this.loss) * SMOOTHING;
+	}
+	
+	/**
+	 * Counts a received packet by its sequence number. Gaps in the sequence
+	 * count as lost packets, late and duplicate packets are ignored.
+	 * @param sequence The packet's sequence number.
+	 * @return [<b>void</b>]
+	 */
+	public synchronized void onPacket(short sequence) {
+		if(!started) {
+			started = true;
+			lastSequence = sequence;
+			received++;
+			return;
+		}
+		
+		int gap = (short)(sequence - lastSequence);
+		if(gap <= 0)
+			return;
+		
+		lost += gap - 1;
+		received++;
+		lastSequence = sequence;
+	}
+	
+	/**
+	 * Re-evaluates the state of the connection.
+	 * @param now The current time in milliseconds.
+	 * @return [<b>int</b>] The send interval, in ticks.
+	 */
+	public synchronized int update(long now) {
+		
+		if(windowStart == 0)
+			windowStart = goodSince = lastChange = now;
+		
+		// Turn the packets counted over the last window into a loss measurement.
+		if(now - windowStart >= WINDOW) {
+			if(received + lost > 0)
+				loss += (lost / (float)(received + lost) - loss) * SMOOTHING;
+			received = lost = 0;
+			windowStart = now;
+		}
+		
+		boolean bad = rtt > RTT_THRESHOLD || loss > LOSS_THRESHOLD;
+		if(bad) {
+			
+			// Going bad again soon after recovering, wait longer next time.
+			if(!congested && now - lastChange < recovery * 2)
+				recovery = Math.min(recovery * 2, MAX_RECOVERY);
+			
+			if(!congested || now - lastChange >= WINDOW) {
+				interval = Math.min(interval * 2, MAX_INTERVAL);
+				lastChange = now;
+			}
+			congested = true;
+			goodSince = now;
+			
+		}else {
+			
+			if(congested) {
+				congested = false;
+				goodSince = now;
+			}
+			
+			if(interval > 1 && now - goodSince >= recovery && now - lastChange >= recovery) {
+				interval--;
+				lastChange = now;
+			}
+			
+			// Staying good for a while earns a faster recovery.
+			if(now - goodSince >= MAX_RECOVERY && recovery > MIN_RECOVERY) {
+				recovery = Math.max(recovery / 2, MIN_RECOVERY);
+				goodSince = now;
+			}
+			
+		}
+		
+		return interval;
+		
+	}
+	
+	public synchronized int getInterval() {
+		return interval;
+	}
+	
+	public synchronized boolean isCongested() {
+		return congested;
+	}
+	
+	public synchronized int getRtt() {
+		return (int) rtt;
+	}
+	
+	public synchronized float getLoss() {
+		return loss;
+	}
+	
+	@Override
+	public synchronized String toString() {
+		return String.format("%d ms, %.1f%% loss, every %d ticks", (int) rtt, loss * 100, interval);
+	}
+	
+}
@@ -0,0 +1,65 @@
+package api.main.src;
+
+/**
+ * 16.16 fixed-point arithmetic. Floating-point results can differ between
+ * machines, integer ones never do, so simulations that must stay identical on
+ * every peer only use these.
+ */
+public final class FixedPoint {
+	
+	public static final int SHIFT = 16;
+	public static final int ONE = 1 << SHIFT;
+	
+	/**
+	 * Angles are quantized so a full turn is 65536, like the yaw of input commands.
+	 */
+	public static final int FULL_TURN = 1 << 16;
+	
+	private static final int SINE_BITS = 12;
+	private static final int[] SINE = new int[1 << SINE_BITS];
+	
+	static {
+		// StrictMath gives the same results on every platform.
+		for(int i = 0; i < SINE.length; i++)
+			SINE[i] = (int) StrictMath.round(StrictMath.sin(i * 2 * StrictMath.PI / SINE.length) * ONE);
+	}
+	
+	private FixedPoint() {}
+	
+	public static int fromInt(int value) {
+		return value << SHIFT;
+	}
+	
+	public static int fromFloat(float value) {
+		return Math.round(value * ONE);
+	}
+	
+	public static float toFloat(int value) {
+		return value / (float) ONE;
+	}
+	
+	public static int mul(int a, int b) {
+		return (int)(((long) a * b) >> SHIFT);
+	}
+	
+	public static int div(int a, int b) {
+		return (int)(((long) a << SHIFT) / b);
+	}
+	
+	/**
+	 * @param angle The angle, a full turn being {@link #FULL_TURN}.
+	 * @return [<b>int</b>] The sine of the angle.
+	 */
+	public static int sin(int angle) {
+		return SINE[(angle & (FULL_TURN - 1)) >> (16 - SINE_BITS)];
+	}
+	
+	/**
+	 * @param angle The angle, a full turn being {@link #FULL_TURN}.
+	 * @return [<b>int</b>] The cosine of the angle.
+	 */
+	public static int cos(int angle) {
+		return sin(angle + FULL_TURN / 4);
+	}
+	
+}
@@ -0,0 +1,119 @@
+package api.main.src;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+
+import api.main.src.Server.SClient;
+
+/**
+ * Session state moved between the servers of a cluster when a player crosses
+ * into a zone owned by another server. It carries everything the receiving
+ * server needs to keep serving the client without a new handshake.
+ */
+public class Handoff {
+	
+	public final int fromZone;
+	
+	/**
+	 * Time the handoff was sent at on the sending server's clock, later handoffs
+	 * of the same client from the same zone are always sent later.
+	 */
+	public final long sent;
+	
+	public final SClient client;
+	public final float[] state;
+	public final int health;
+	
+	private Handoff(int fromZone, long sent, SClient client, float[] state, int health) {
+		this.fromZone = fromZone;
+		this.sent = sent;
+		this.client = client;
+		this.state = state;
+		this.health = health;
+	}
+	
+	/**
+	 * Serializes the session of a client.
+	 * @param fromZone The index of the zone the client is leaving.
+	 * @param sent The current time in milliseconds.
+	 * @param client The client.
+	 * @return [<b>byte[]</b>] The content of the handoff packet.
+	 */
+	public static byte[] write(int fromZone, long sent, SClient client) {
+		
+		byte[] ip = client.ip.getAddress();
+		byte[] key = client.key.getEncoded();
+		byte[] sessionKey = client.sessionKey.getEncoded();
+		byte[] username = client.username.getBytes();
+		WorldEntity e = client.entity;
+		
+		return ByteBuffer.allocate(Integer.BYTES * 3 + Long.BYTES + ip.length + key.length + sessionKey.length + username.length 
+				+ Short.BYTES * 3 + Float.BYTES * 9 + Integer.BYTES)
+				.putInt(fromZone)
+				.putLong(sent)
+				.putShort((short) ip.length).put(ip)
+				.putInt(client.port)
+				.putShort((short) key.length).put(key)
+				.put(sessionKey)
+				.putShort((short) username.length).put(username)
+				.putFloat(e.x).putFloat(e.y).putFloat(e.z)
+				.putFloat(e.rotX).putFloat(e.rotY).putFloat(e.rotZ)
+				.putFloat(e.velX).putFloat(e.velY).putFloat(e.velZ)
+				.putInt(e.health)
+				.putInt(client.ping)
+				.array();
+		
+	}
+	
+	/**
+	 * Reads the content of a handoff packet.
+	 * @param content The packet's content.
+	 * @return [{@link Handoff}] The handoff, or null if the content is invalid.
+	 */
+	public static Handoff fromData(byte[] content) {
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(content);
+			
+			int fromZone = buffer.getInt();
+			long sent = buffer.getLong();
+			InetAddress ip = InetAddress.getByAddress(read(buffer, buffer.getShort()));
+			int port = buffer.getInt();
+			byte[] key = read(buffer, buffer.getShort());
+			byte[] sessionKey = read(buffer, Seal.KEY_SIZE / 8);
+			String username = new String(read(buffer, buffer.getShort()));
+			
+			float[] state = new float[9];
+			for(int i = 0; i < state.length; i++)
+				state[i] = buffer.getFloat();
+			int health = buffer.getInt();
+			
+			SClient client = new SClient(ip, port, RSA.toPublicKey(key), System.currentTimeMillis());
+			client.sessionKey = Seal.toKey(sessionKey);
+			client.username = username;
+			client.ping = buffer.getInt();
+			if(client.key == null || client.sessionKey == null)
+				return null;
+			
+			return new Handoff(fromZone, sent, client, state, health);
+		}catch(Exception e) {return null;}
+	}
+	
+	/**
+	 * Restores the player state carried by the handoff on an entity.
+	 * @param entity The entity.
+	 * @return [<b>void</b>]
+	 */
+	public void restore(WorldEntity entity) {
+		entity.setPosition(state[0], state[1], state[2]);
+		entity.setRotation(state[3], state[4], state[5]);
+		entity.setVelocity(state[6], state[7], state[8]);
+		entity.setHealth(health);
+	}
+	
+	private static byte[] read(ByteBuffer buffer, int length) {
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return bytes;
+	}
+	
+}
@@ -0,0 +1,116 @@
+package api.main.src;
+
+/**
+ * Input commands received from a client, waiting to be applied to its player
+ * one per world tick. Commands repeated by later packets or arriving after
+ * newer ones are dropped, so the buffer only ever moves forward.
+ */
+public class InputBuffer {
+	
+	/**
+	 * Most commands kept waiting. A client sending faster than the world ticks
+	 * would otherwise build up input latency.
+	 */
+	public static final int MAX_PENDING = 4;
+	
+	private final byte[] masks = new byte[MAX_PENDING];
+	private final float[] yaws = new float[MAX_PENDING];
+	private int head = 0;
+	private int size = 0;
+	
+	private int lastTick = 0;
+	
+	private long received = 0;
+	private long recovered = 0;
+	private long dropped = 0;
+	
+	/**
+	 * Adds the commands of an input packet.
+	 * @param input The input packet's content.
+	 * @return [<b>void</b>]
+	 */
+	public synchronized void offer(InputMessage input) {
+		
+		// Older senders don't number their commands, apply them right away.
+		if(input.tick == 0) {
+			size = 0;
+			push(input.mask, input.yaw);
+			return;
+		}
+		
+		if(input.tick <= lastTick)
+			return;
+		
+		// Commands are repeated newest first, add the ones we're missing oldest first.
+		int missing = Math.min(input.tick - lastTick - 1, input.historySize());
+		for(int i = missing - 1; i >= 0; i--) {
+			push(input.getMask(i), input.getYaw(i));
+			recovered++;
+		}
+		
+		push(input.mask, input.yaw);
+		lastTick = input.tick;
+		received++;
+		
+	}
+	
+	/**
+	 * Applies the oldest waiting command to an entity. Without any waiting
+	 * command the entity keeps its last input.
+	 * @param entity The entity.
+	 * @return [<b>boolean</b>] Whether a command was applied.
+	 */
+	public synchronized boolean apply(WorldEntity entity) {
+		if(size == 0)
+			return false;
+		entity.setInput(masks[head], yaws[head]);
+		head = (head + 1) % MAX_PENDING;
+		size--;
+		return true;
+	}
+	
+	/**
+	 * Applies several waiting commands in turn, for a tick standing for several
+	 * world ticks. The entity ends up with the newest of them.
+	 * @param entity The entity.
+	 * @param commands The most commands to apply.
+	 * @return [<b>boolean</b>] Whether a command was applied.
+	 */
+	public synchronized boolean apply(WorldEntity entity, int commands) {
+		boolean applied = false;
+		for(int i = 0; i < commands; i++)
+			applied |= apply(entity);
+		return applied;
+	}
+	
+	/**
+	 * @return [<b>long</b>] The number of commands only received through the repeated history.
+	 */
+	public synchronized long getRecovered() {
+		return recovered;
+	}
+	
+	/**
+	 * @return [<b>long</b>] The number of commands dropped because too many were waiting.
+	 */
+	public synchronized long getDropped() {
+		return dropped;
+	}
+	
+	public synchronized long getReceived() {
+		return received;
+	}
+	
+	private void push(byte mask, float yaw) {
+		if(size == MAX_PENDING) {
+			head = (head + 1) % MAX_PENDING;
+			size--;
+			dropped++;
+		}
+		int tail = (head + size) % MAX_PENDING;
+		masks[tail] = mask;
+		yaws[tail] = yaw;
+		size++;
+	}
+	
+}
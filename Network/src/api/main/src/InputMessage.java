@@ -0,0 +1,109 @@
+package api.main.src;
+
+/**
+ * Content of an input packet, see {@link WorldEntity#setInput(int, float)}.
+ * 
+ * Since version 1 the client sends one command per tick, numbered with the
+ * tick, and repeats its previous commands in every packet so a lost packet
+ * doesn't lose any input. Each repeated command takes {@link #COMMAND_LENGTH}
+ * bytes: the movement bits followed by the yaw quantized to 16 bits.
+ * 
+ * Since version 2 packets are numbered so the server can measure their loss.
+ */
+public class InputMessage {
+	
+	public static final int COMMAND_LENGTH = 3;
+	
+	/**
+	 * Movement bits of the newest command.
+	 */
+	@MessageField(id = 0)
+	public byte mask;
+	
+	/**
+	 * Yaw of the newest command.
+	 */
+	@MessageField(id = 1)
+	public float yaw;
+	
+	/**
+	 * Tick of the newest command, 0 for senders that don't number their commands.
+	 */
+	@MessageField(id = 2, since = 1)
+	public int tick;
+	
+	/**
+	 * Commands preceding the newest one, newest first.
+	 */
+	@MessageField(id = 3, since = 1)
+	public byte[] history;
+	
+	/**
+	 * Sequence number of the packet.
+	 */
+	@MessageField(id = 4, since = 2)
+	public short sequence;
+	
+	/**
+	 * @return [<b>int</b>] The number of repeated commands.
+	 */
+	public int historySize() {
+		return history == null ? 0 : history.length / COMMAND_LENGTH;
+	}
+	
+	public byte getMask(int index) {
+		return maskAt(history, index);
+	}
+	
+	public float getYaw(int index) {
+		return yawAt(history, index) * 360f / 65536f;
+	}
+	
+	/**
+	 * Writes a repeated command.
+	 * @param index The index of the command, 0 being the one preceding the newest.
+	 * @param mask The movement bits.
+	 * @param yaw The yaw in degrees.
+	 * @return [<b>void</b>]
+	 */
+	public void setCommand(int index, byte mask, float yaw) {
+		writeCommand(history, index, mask, quantize(yaw));
+	}
+	
+	/**
+	 * Quantizes a yaw to 16 bits, a full turn being 65536.
+	 * @param yaw The yaw in degrees.
+	 * @return [<b>int</b>] The quantized yaw.
+	 */
+	public static int quantize(float yaw) {
+		return Math.round(yaw / 360f * 65536f) & 0xffff;
+	}
+	
+	/**
+	 * Writes a command in an array of compact commands.
+	 * @param commands The commands.
+	 * @param index The index of the command.
+	 * @param mask The movement bits.
+	 * @param yaw The quantized yaw.
+	 * @return [<b>void</b>]
+	 */
+	public static void writeCommand(byte[] commands, int index, byte mask, int yaw) {
+		int offset = index * COMMAND_LENGTH;
+		commands[offset] = mask;
+		commands[offset + 1] = (byte)(yaw >> 8);
+		commands[offset + 2] = (byte) yaw;
+	}
+	
+	public static byte maskAt(byte[] commands, int index) {
+		return commands[index * COMMAND_LENGTH];
+	}
+	
+	/**
+	 * @return [<b>int</b>] The quantized yaw of a command in an array of compact commands.
+	 */
+	public static int yawAt(byte[] commands, int index) {
+		int offset = index * COMMAND_LENGTH;
+		return ((commands[offset + 1] & 0xff) << 8) | (commands[offset + 2] & 0xff);
+	}
+	
+}
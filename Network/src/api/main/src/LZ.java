@@ -0,0 +1,159 @@
+package api.main.src;
+
+import java.util.Arrays;
+
+/**
+ * Fast LZF-style byte codec. Trades compression ratio for speed, which makes
+ * it a good fit for small and frequent payloads.
+ */
+public class LZ {
+	
+	private static final int HASH_LOG = 14;
+	private static final int MAX_LITERAL = 32;
+	private static final int MAX_OFFSET = 1 << 13;
+	private static final int MAX_REFERENCE = (1 << 8) + (1 << 3);
+	
+	/**
+	 * Hash table reused across calls. Entries left over from a previous
+	 * payload are harmless : a reference is only taken if it points behind
+	 * the current position and its bytes actually match.
+	 */
+	private static final ThreadLocal<int[]> tables = ThreadLocal.withInitial(() -> new int[1 << HASH_LOG]);
+	
+	/**
+	 * Compresses a byte array.
+	 * @param in The data to compress.
+	 * @return [<b>byte[]</b>] The compressed data.
+	 */
+	public static byte[] compress(byte[] in) {
+		
+		int inLen = in.length;
+		byte[] out = new byte[inLen + (inLen >> 5) + 16];
+		int[] table = tables.get();
+		
+		int ip = 0, op = 1, lit = 0;
+		
+		while(ip < inLen - 2) {
+			
+			int hval = ((in[ip] & 0xff) << 16) | ((in[ip + 1] & 0xff) << 8) | (in[ip + 2] & 0xff);
+			int slot = (hval * 0x9E3779B1) >>> (32 - HASH_LOG);
+			int ref = table[slot] - 1;
+			table[slot] = ip + 1;
+			
+			int off = ip - ref - 1;
+			if(ref >= 0 && ref < ip && off < MAX_OFFSET 
+					&& in[ref] == in[ip] && in[ref + 1] == in[ip + 1] && in[ref + 2] == in[ip + 2]) {
+				
+				// Find the length of the match.
+				int maxLen = Math.min(inLen - ip, MAX_REFERENCE);
+				int len = 3;
+				while(len < maxLen && in[ref + len] == in[ip + len])
+					len++;
+				
+				// Close the current literal run.
+				if(lit > 0)
+					out[op - lit - 1] = (byte)(lit - 1);
+				else
+					op--;
+				
+				// Write the back reference.
+				int stored = len - 2;
+				if(stored < 7)
+					out[op++] = (byte)((stored << 5) | (off >> 8));
+				else {
+					out[op++] = (byte)((7 << 5) | (off >> 8));
+					out[op++] = (byte)(stored - 7);
+				}
+				out[op++] = (byte)off;
+				
+				ip += len;
+				lit = 0;
+				op++;
+				
+			}else {
+				
+				out[op++] = in[ip++];
+				if(++lit == MAX_LITERAL) {
+					out[op - lit - 1] = (byte)(lit - 1);
+					lit = 0;
+					op++;
+				}
+				
+			}
+			
+		}
+		
+		// Copy the remaining bytes as literals.
+		while(ip < inLen) {
+			out[op++] = in[ip++];
+			if(++lit == MAX_LITERAL) {
+				out[op - lit - 1] = (byte)(lit - 1);
+				lit = 0;
+				op++;
+			}
+		}
+		
+		if(lit > 0)
+			out[op - lit - 1] = (byte)(lit - 1);
+		else
+			op--;
+		
+		return Arrays.copyOf(out, op);
+		
+	}
+	
+	/**
+	 * Decompresses a byte array.
+	 * @param in The compressed data.
+	 * @param offset The index at which the compressed data starts.
+	 * @param outLen The length of the decompressed data.
+	 * @return [<b>byte[]</b>] The decompressed data.
+	 */
+	public static byte[] decompress(byte[] in, int offset, int outLen) {
+		
+		byte[] out = new byte[outLen];
+		int ip = offset, op = 0;
+		
+		while(ip < in.length) {
+			
+			int ctrl = in[ip++] & 0xff;
+			
+			if(ctrl < MAX_LITERAL) {
+				
+				// Literal run.
+				int len = ctrl + 1;
+				if(op + len > outLen || ip + len > in.length)
+					throw new IllegalArgumentException("Corrupt LZ data.");
+				System.arraycopy(in, ip, out, op, len);
+				ip += len;
+				op += len;
+				
+			}else {
+				
+				// Back reference.
+				int len = ctrl >> 5;
+				int ref = op - ((ctrl & 0x1f) << 8) - 1;
+				if(len == 7)
+					len += in[ip++] & 0xff;
+				ref -= in[ip++] & 0xff;
+				len += 2;
+				
+				if(ref < 0 || op + len > outLen)
+					throw new IllegalArgumentException("Corrupt LZ data.");
+				
+				// Byte by byte since the reference may overlap the output.
+				for(int i = 0; i < len; i++)
+					out[op++] = out[ref++];
+				
+			}
+			
+		}
+		
+		if(op != outLen)
+			throw new IllegalArgumentException("Corrupt LZ data.");
+		
+		return out;
+		
+	}
+	
+}
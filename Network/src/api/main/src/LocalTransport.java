@@ -0,0 +1,130 @@
+package api.main.src;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Transport exchanging datagrams with other local transports of the same JVM
+ * through in-process queues, for a server and clients running together (single
+ * player, bots). Behaves like UDP on loopback: transports are bound to ports,
+ * datagrams are copied, datagrams sent to a port nobody is bound to or to a
+ * full queue are dropped and a datagram larger than the receive buffer is
+ * truncated.
+ */
+public class LocalTransport implements Transport {
+	
+	/**
+	 * Datagrams a transport can hold before dropping new ones.
+	 */
+	public static final int QUEUE_LENGTH = 4096;
+	
+	private static final int FIRST_EPHEMERAL_PORT = 49152;
+	private static final Map<Integer, LocalTransport> bound = new ConcurrentHashMap<Integer, LocalTransport>();
+	private static final AtomicInteger nextPort = new AtomicInteger();
+	
+	/**
+	 * Datagram sent to a closed transport to wake up its receiver.
+	 */
+	private static final Datagram CLOSED = new Datagram(null, null);
+	
+	private static class Datagram{
+		private final InetSocketAddress source;
+		private final byte[] data;
+		
+		private Datagram(InetSocketAddress source, byte[] data) {
+			this.source = source;
+			this.data = data;
+		}
+	}
+	
+	private final int port;
+	private final InetSocketAddress address;
+	private final BlockingQueue<Datagram> queue = new ArrayBlockingQueue<Datagram>(QUEUE_LENGTH);
+	private volatile boolean closed = false;
+	
+	public LocalTransport(int port) throws IOException {
+		if(port < 0 || port > 0xffff)
+			throw new BindException("Invalid port " + port + ".");
+		
+		if(port == 0)
+			port = bind();
+		else if(bound.putIfAbsent(port, this) != null)
+			throw new BindException("Port " + port + " is already in use.");
+		
+		this.port = port;
+		this.address = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+	}
+	
+	/**
+	 * Binds to the next free ephemeral port.
+	 */
+	private int bind() throws BindException {
+		int range = 0x10000 - FIRST_EPHEMERAL_PORT;
+		for(int i = 0; i < range; i++) {
+			int port = FIRST_EPHEMERAL_PORT + Math.floorMod(nextPort.getAndIncrement(), range);
+			if(bound.putIfAbsent(port, this) == null)
+				return port;
+		}
+		throw new BindException("No free local port.");
+	}
+	
+	public void send(ByteBuffer data, InetSocketAddress target) throws IOException {
+		
+		if(closed)
+			throw new ClosedChannelException();
+		
+		// Only this host can be reached.
+		InetAddress ip = target.getAddress();
+		if(ip == null || !(ip.isLoopbackAddress() || ip.isAnyLocalAddress()))
+			return;
+		
+		LocalTransport receiver = bound.get(target.getPort());
+		byte[] copy = new byte[data.remaining()];
+		data.get(copy);
+		if(receiver != null && !receiver.closed)
+			receiver.queue.offer(new Datagram(address, copy));
+		
+	}
+	
+	public InetSocketAddress receive(ByteBuffer buffer) throws IOException {
+		
+		Datagram datagram;
+		try {
+			datagram = queue.take();
+		} catch (InterruptedException e) {
+			throw new ClosedChannelException();
+		}
+		
+		if(datagram == CLOSED || closed) {
+			queue.offer(CLOSED);
+			throw new ClosedChannelException();
+		}
+		
+		buffer.put(datagram.data, 0, Math.min(datagram.data.length, buffer.remaining()));
+		return datagram.source;
+		
+	}
+	
+	public int getLocalPort() {
+		return port;
+	}
+	
+	public void close() {
+		if(closed)
+			return;
+		closed = true;
+		bound.remove(port, this);
+		queue.clear();
+		queue.offer(CLOSED);
+	}
+	
+}
@@ -0,0 +1,36 @@
+package api.main.src;
+
+/**
+ * Content of a lockstep input packet, sent by a peer to the server. Carries the
+ * peer's commands for its newest ticks and the checksum of its simulation.
+ */
+public class LockstepInputMessage {
+	
+	/**
+	 * Tick of the newest command.
+	 */
+	@MessageField(id = 0)
+	public int tick;
+	
+	/**
+	 * Commands of the peer, newest first, in the compact format of {@link InputMessage}.
+	 */
+	@MessageField(id = 1)
+	public byte[] commands;
+	
+	/**
+	 * Number of ticks the peer had run when it computed the checksum.
+	 */
+	@MessageField(id = 2)
+	public int checksumTick;
+	
+	@MessageField(id = 3)
+	public int checksum;
+	
+	/**
+	 * Id of the match.
+	 */
+	@MessageField(id = 4)
+	public int match;
+	
+}
@@ -0,0 +1,295 @@
+package api.main.src;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+import api.main.src.Server.SClient;
+
+/**
+ * Server side of a lockstep match. The server doesn't simulate anything: it
+ * collects the commands of every peer, fixes the commands of each tick at a
+ * steady rate and relays them to every peer, which all run the same
+ * {@link LockstepSimulation}. A peer whose command for a tick didn't arrive in
+ * time keeps its previous one, so a slow peer never stalls the others. The
+ * checksums reported by the peers are compared to detect desyncs. A peer that
+ * lost the match leaves it, its units stop and the others play on.
+ * 
+ * The first tick is only fixed once every peer got its start, so no peer
+ * starts too late to catch up. Peers that don't answer in time are left out.
+ * 
+ * The bandwidth only depends on the number of peers, never on the number of units.
+ */
+public class LockstepSession {
+	
+	/**
+	 * Length of a lockstep tick in milliseconds.
+	 */
+	public static final int TICK_LENGTH = 50;
+	
+	/**
+	 * Number of ticks repeated in every tick packet and every input packet.
+	 */
+	public static final int REDUNDANCY = 8;
+	
+	/**
+	 * Number of ticks between a peer sampling a command and it being due.
+	 */
+	public static final int INPUT_DELAY = 3;
+	
+	private static final int PENDING = 32;
+	private static final int CHECKSUMS = 64;
+	private static final int START_RESEND = 10;
+	private static final int START_TIMEOUT = 100;
+	
+	private final SClient[] peers;
+	private final int match, seed, unitsPerPeer;
+	private final boolean[] started, left;
+	
+	/**
+	 * Peers still in the match.
+	 */
+	private final SClient[] active;
+	private int activeCount;
+	
+	/**
+	 * Commands received from each peer for the ticks not fixed yet, by tick.
+	 */
+	private final int[][] pendingTicks;
+	private final byte[][] pendingMasks;
+	private final int[][] pendingYaws;
+	
+	/**
+	 * Commands of the last ticks fixed, newest first.
+	 */
+	private final byte[] fixed;
+	private final byte[] lastMasks;
+	private final int[] lastYaws;
+	private int tick = 0;
+	private int waited = 0;
+	
+	private final int[] checksumTicks = new int[CHECKSUMS];
+	private final int[] checksums = new int[CHECKSUMS];
+	private long desyncs = 0;
+	private int lastDesync = -1;
+	
+	public LockstepSession(SClient[] peers, int seed, int unitsPerPeer) {
+		if(peers.length == 0 || peers.length > Byte.MAX_VALUE)
+			throw new RuntimeException("Invalid number of lockstep peers.");
+		
+		this.peers = peers;
+		this.match = ThreadLocalRandom.current().nextInt(1, Integer.MAX_VALUE);
+		this.seed = seed;
+		this.unitsPerPeer = unitsPerPeer;
+		this.started = new boolean[peers.length];
+		this.left = new boolean[peers.length];
+		this.active = peers.clone();
+		this.activeCount = peers.length;
+		
+		this.pendingTicks = new int[peers.length][PENDING];
+		this.pendingMasks = new byte[peers.length][PENDING];
+		this.pendingYaws = new int[peers.length][PENDING];
+		for(int[] ticks : pendingTicks)
+			Arrays.fill(ticks, -1);
+		
+		this.fixed = new byte[REDUNDANCY * peers.length * InputMessage.COMMAND_LENGTH];
+		this.lastMasks = new byte[peers.length];
+		this.lastYaws = new int[peers.length];
+		Arrays.fill(checksumTicks, -1);
+	}
+	
+	/**
+	 * Fills the start message of a peer.
+	 * @param peer The index of the peer.
+	 * @param start The message to fill.
+	 * @return [{@link LockstepStartMessage}] The message.
+	 */
+	public LockstepStartMessage start(int peer, LockstepStartMessage start) {
+		start.index = (byte) peer;
+		start.peers = (byte) peers.length;
+		start.seed = seed;
+		start.unitsPerPeer = unitsPerPeer;
+		start.delay = INPUT_DELAY;
+		start.match = match;
+		return start;
+	}
+	
+	/**
+	 * Returns whether a peer needs its start message (again). It is resent
+	 * periodically until the peer's first input arrives.
+	 * @param peer The index of the peer.
+	 * @return [<b>boolean</b>] Whether to send the start message.
+	 */
+	public synchronized boolean needsStart(int peer) {
+		return !started[peer] && !left[peer] && waited % START_RESEND == 0;
+	}
+	
+	/**
+	 * Returns whether the match can go on, called on every tick before fixing it.
+	 * Until every peer is started it waits, then leaves out those that aren't.
+	 * @return [<b>boolean</b>] Whether to fix the next tick.
+	 */
+	public synchronized boolean ready() {
+		if(tick > 0)
+			return true;
+		
+		boolean ready = true;
+		for(int i = 0; i < peers.length; i++)
+			ready &= started[i] || left[i];
+		if(ready || ++waited < START_TIMEOUT)
+			return ready;
+		
+		for(int i = 0; i < peers.length; i++)
+			if(!started[i] && leave(i))
+				System.out.println(peers[i].username + " didn't start the lockstep match in time.");
+		return activeCount > 0;
+	}
+	
+	/**
+	 * Removes a peer from the match. Its units stop and it isn't sent the ticks anymore.
+	 * @param peer The index of the peer.
+	 * @return [<b>boolean</b>] Whether the peer was still in the match.
+	 */
+	public synchronized boolean leave(int peer) {
+		if(left[peer])
+			return false;
+		left[peer] = true;
+		lastMasks[peer] = 0;
+		Arrays.fill(pendingTicks[peer], -1);
+		
+		activeCount = 0;
+		for(int i = 0; i < peers.length; i++)
+			if(!left[i])
+				active[activeCount++] = peers[i];
+		return true;
+	}
+	
+	/**
+	 * @param peer The index of a peer.
+	 * @return [<b>boolean</b>] Whether the peer left the match.
+	 */
+	public synchronized boolean hasLeft(int peer) {
+		return left[peer];
+	}
+	
+	/**
+	 * @param client A client.
+	 * @return [<b>int</b>] The index of the client in the match, or -1 if it isn't a peer.
+	 */
+	public int indexOf(SClient client) {
+		for(int i = 0; i < peers.length; i++)
+			if(peers[i] == client)
+				return i;
+		return -1;
+	}
+	
+	/**
+	 * Receives the commands and checksum of a peer.
+	 * @param peer The index of the peer.
+	 * @param input The peer's input packet.
+	 * @return [<b>void</b>]
+	 */
+	public synchronized void onInput(int peer, LockstepInputMessage input) {
+		
+		if(left[peer])
+			return;
+		started[peer] = true;
+		
+		// Keep the commands for the ticks not fixed yet.
+		int count = input.commands == null ? 0 : input.commands.length / InputMessage.COMMAND_LENGTH;
+		for(int i = 0; i < count; i++) {
+			int commandTick = input.tick - i;
+			if(commandTick < tick)
+				break;
+			if(commandTick >= tick + PENDING)
+				continue;
+			int slot = commandTick % PENDING;
+			pendingTicks[peer][slot] = commandTick;
+			pendingMasks[peer][slot] = InputMessage.maskAt(input.commands, i);
+			pendingYaws[peer][slot] = InputMessage.yawAt(input.commands, i);
+		}
+		
+		// The first checksum reported for a tick is the reference for the others.
+		if(input.checksumTick > 0) {
+			int slot = input.checksumTick % CHECKSUMS;
+			if(checksumTicks[slot] != input.checksumTick) {
+				checksumTicks[slot] = input.checksumTick;
+				checksums[slot] = input.checksum;
+			}else if(checksums[slot] != input.checksum) {
+				desyncs++;
+				if(input.checksumTick > lastDesync) {
+					lastDesync = input.checksumTick;
+					System.out.println("Lockstep desync at tick " + input.checksumTick + " (" + peers[peer].username + ").");
+				}
+			}
+		}
+		
+	}
+	
+	/**
+	 * Fixes the commands of the next tick and fills the tick message relaying them.
+	 * @param message The message to fill.
+	 * @return [{@link LockstepTickMessage}] The message.
+	 */
+	public synchronized LockstepTickMessage advance(LockstepTickMessage message) {
+		
+		// Shift the older ticks down and put the new one first.
+		int size = peers.length * InputMessage.COMMAND_LENGTH;
+		System.arraycopy(fixed, 0, fixed, size, fixed.length - size);
+		
+		for(int peer = 0; peer < peers.length; peer++) {
+			int slot = tick % PENDING;
+			if(pendingTicks[peer][slot] == tick) {
+				lastMasks[peer] = pendingMasks[peer][slot];
+				lastYaws[peer] = pendingYaws[peer][slot];
+			}
+			InputMessage.writeCommand(fixed, peer, lastMasks[peer], lastYaws[peer]);
+		}
+		
+		message.tick = tick++;
+		message.peers = (byte) peers.length;
+		message.match = match;
+		
+		// Only send the ticks that exist.
+		int ticks = Math.min(tick, REDUNDANCY);
+		if(message.commands == null || message.commands.length != ticks * size)
+			message.commands = new byte[ticks * size];
+		System.arraycopy(fixed, 0, message.commands, 0, ticks * size);
+		return message;
+		
+	}
+	
+	public SClient[] getPeers() {
+		return peers;
+	}
+	
+	/**
+	 * Returns the peers still in the match, the first {@link #getActiveCount()} of the array.
+	 * @return [{@link SClient}[]] The peers.
+	 */
+	public SClient[] getActivePeers() {
+		return active;
+	}
+	
+	public synchronized int getActiveCount() {
+		return activeCount;
+	}
+	
+	/**
+	 * @return [<b>int</b>] The id of the match, never 0.
+	 */
+	public int getMatch() {
+		return match;
+	}
+	
+	public synchronized int getTick() {
+		return tick;
+	}
+	
+	/**
+	 * @return [<b>long</b>] The number of checksums that didn't match the first one reported for their tick.
+	 */
+	public synchronized long getDesyncs() {
+		return desyncs;
+	}
+	
+}
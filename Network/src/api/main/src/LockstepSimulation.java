@@ -0,0 +1,152 @@
+package api.main.src;
+
+/**
+ * Entity logic run identically by every peer of a lockstep match. Each peer
+ * owns a group of units steered by its input commands, the same way players
+ * move in the {@link World}. The simulation only uses integer and
+ * {@link FixedPoint} arithmetic and always visits the units in the same order,
+ * so the same inputs always give the same state on every machine.
+ */
+public class LockstepSimulation {
+	
+	/**
+	 * Distance a unit moves per tick.
+	 */
+	public static final int UNIT_SPEED = FixedPoint.ONE / 2;
+	
+	/**
+	 * Half the size of the square the units move in. Units leaving it come back on the other side.
+	 */
+	public static final int HALF_SIZE = FixedPoint.fromInt(1024);
+	
+	/**
+	 * Largest deviation of a unit's heading from its group's, a full turn being 65536.
+	 */
+	private static final int SPREAD = 2048;
+	
+	private final int peers;
+	private final int[] x, z, owner, heading;
+	private int tick = 0;
+	
+	/**
+	 * Creates the simulation's initial state.
+	 * @param seed The seed of the match, placing the units.
+	 * @param peers The number of peers.
+	 * @param unitsPerPeer The number of units each peer owns.
+	 */
+	public LockstepSimulation(int seed, int peers, int unitsPerPeer) {
+		
+		this.peers = peers;
+		int count = peers * unitsPerPeer;
+		this.x = new int[count];
+		this.z = new int[count];
+		this.owner = new int[count];
+		this.heading = new int[count];
+		
+		int random = seed;
+		for(int i = 0; i < count; i++) {
+			owner[i] = i / unitsPerPeer;
+			random = next(random);
+			x[i] = (random % HALF_SIZE);
+			random = next(random);
+			z[i] = (random % HALF_SIZE);
+			random = next(random);
+			heading[i] = (random >>> 8) % (SPREAD * 2) - SPREAD;
+		}
+		
+	}
+	
+	/**
+	 * Runs one tick with the commands of every peer.
+	 * @param masks The movement bits of each peer.
+	 * @param yaws The quantized yaw of each peer.
+	 * @return [<b>void</b>]
+	 */
+	public void step(byte[] masks, int[] yaws) {
+		
+		for(int i = 0; i < x.length; i++) {
+			int mask = masks[owner[i]];
+			
+			int dx = 0, dz = 0;
+			if((mask & WorldEntity.FORWARD) != 0)
+				dz -= UNIT_SPEED;
+			if((mask & WorldEntity.BACKWARD) != 0)
+				dz += UNIT_SPEED;
+			if((mask & WorldEntity.LEFT) != 0)
+				dx -= UNIT_SPEED;
+			if((mask & WorldEntity.RIGHT) != 0)
+				dx += UNIT_SPEED;
+			if(dx == 0 && dz == 0)
+				continue;
+			
+			// Same transposed yaw rotation as the world's players, spread a little per unit.
+			int yaw = yaws[owner[i]] + heading[i];
+			int cos = FixedPoint.cos(yaw), sin = FixedPoint.sin(yaw);
+			x[i] = wrap(x[i] + FixedPoint.mul(cos, dx) - FixedPoint.mul(sin, dz));
+			z[i] = wrap(z[i] + FixedPoint.mul(sin, dx) + FixedPoint.mul(cos, dz));
+		}
+		
+		tick++;
+		
+	}
+	
+	/**
+	 * Hashes the whole state. Peers whose checksums differ for the same tick have desynchronized.
+	 * @return [<b>int</b>] The checksum.
+	 */
+	public int checksum() {
+		int hash = 0x811c9dc5;
+		hash = (hash ^ tick) * 0x01000193;
+		for(int i = 0; i < x.length; i++) {
+			hash = (hash ^ x[i]) * 0x01000193;
+			hash = (hash ^ z[i]) * 0x01000193;
+		}
+		return hash;
+	}
+	
+	/**
+	 * @return [<b>int</b>] The number of ticks run.
+	 */
+	public int getTick() {
+		return tick;
+	}
+	
+	public int getPeers() {
+		return peers;
+	}
+	
+	public int getUnits() {
+		return x.length;
+	}
+	
+	public int getOwner(int unit) {
+		return owner[unit];
+	}
+	
+	public float getX(int unit) {
+		return FixedPoint.toFloat(x[unit]);
+	}
+	
+	public float getZ(int unit) {
+		return FixedPoint.toFloat(z[unit]);
+	}
+	
+	private static int wrap(int value) {
+		if(value >= HALF_SIZE)
+			return value - HALF_SIZE * 2;
+		if(value < -HALF_SIZE)
+			return value + HALF_SIZE * 2;
+		return value;
+	}
+	
+	/**
+	 * Xorshift step, the same on every machine unlike {@link java.util.Random}'s seeding.
+	 */
+	private static int next(int value) {
+		value ^= value << 13;
+		value ^= value >>> 17;
+		value ^= value << 5;
+		return value;
+	}
+	
+}
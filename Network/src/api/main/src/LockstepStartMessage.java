@@ -0,0 +1,35 @@
+package api.main.src;
+
+/**
+ * Content of a lockstep start packet, sent to each peer of a new match.
+ */
+public class LockstepStartMessage {
+	
+	/**
+	 * Index of the receiving peer.
+	 */
+	@MessageField(id = 0)
+	public byte index;
+	
+	@MessageField(id = 1)
+	public byte peers;
+	
+	@MessageField(id = 2)
+	public int seed;
+	
+	@MessageField(id = 3)
+	public int unitsPerPeer;
+	
+	/**
+	 * Number of ticks between sampling an input and running it.
+	 */
+	@MessageField(id = 4)
+	public byte delay;
+	
+	/**
+	 * Id of the match, a start with another id replaces the current match.
+	 */
+	@MessageField(id = 5)
+	public int match;
+	
+}
@@ -0,0 +1,15 @@
+package api.main.src;
+
+/**
+ * Content of a lockstep stop packet. Sent by the server to the peers when the
+ * match ends, and by a peer to the server when it leaves the match.
+ */
+public class LockstepStopMessage {
+	
+	/**
+	 * Id of the match.
+	 */
+	@MessageField(id = 0)
+	public int match;
+	
+}
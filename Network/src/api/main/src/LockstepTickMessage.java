@@ -0,0 +1,39 @@
+package api.main.src;
+
+/**
+ * Content of a lockstep tick packet, sent by the server to every peer. Carries
+ * the commands of every peer for the newest ticks, so a peer missing a packet
+ * catches up with the next one.
+ */
+public class LockstepTickMessage {
+	
+	/**
+	 * Newest tick.
+	 */
+	@MessageField(id = 0)
+	public int tick;
+	
+	@MessageField(id = 1)
+	public byte peers;
+	
+	/**
+	 * Commands of every peer for each tick, newest tick first, in the compact
+	 * format of {@link InputMessage}.
+	 */
+	@MessageField(id = 2)
+	public byte[] commands;
+	
+	/**
+	 * Id of the match.
+	 */
+	@MessageField(id = 3)
+	public int match;
+	
+	/**
+	 * @return [<b>int</b>] The number of ticks in the packet.
+	 */
+	public int ticks() {
+		return commands == null || peers == 0 ? 0 : commands.length / (peers * InputMessage.COMMAND_LENGTH);
+	}
+	
+}
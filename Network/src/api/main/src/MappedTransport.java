@@ -0,0 +1,406 @@
+package api.main.src;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.BindException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Transport exchanging datagrams with the other mapped transports of the same
+ * host through memory-mapped ring files, one per bound port, for a server and
+ * clients running in different processes on one machine. Behaves like UDP on
+ * loopback: datagrams sent to a port nobody is bound to or to a full ring are
+ * dropped and a datagram larger than the receive buffer is truncated.
+ * <p>
+ * A ring file starts with a header holding the write and read positions,
+ * followed by records of [<b>int</b> length][<b>short</b> source port][data]
+ * padded to 8 bytes. Writers and the reader lock the header for each record;
+ * the owner of a port additionally holds a lock on the owner byte for as long
+ * as it is bound, which lets a new transport take over the files left behind
+ * by a process that died.
+ * <p>
+ * File locks belong to the whole JVM and closing any channel of a file drops
+ * all of them, so the transports of a JVM share a single mapping per ring file
+ * and only close it once none of them uses it anymore.
+ */
+public class MappedTransport implements Transport {
+	
+	/**
+	 * Bytes of datagrams a ring file can hold.
+	 */
+	public static final int RING_CAPACITY = 1 << 20;
+	
+	/**
+	 * Directory of the ring files when none is given.
+	 */
+	public static final File DEFAULT_DIRECTORY = new File(System.getProperty("java.io.tmpdir"), "3dgame-transport");
+	
+	private static final int MAGIC = 0x33444754;
+	private static final int MAGIC_POSITION = 0;
+	private static final int CLOSED_POSITION = 4;
+	private static final int HEAD_POSITION = 8;
+	private static final int TAIL_POSITION = 16;
+	private static final int CAPACITY_POSITION = 24;
+	private static final int HEADER_LOCK_LENGTH = 32;
+	private static final int OWNER_POSITION = 32;
+	private static final int HEADER_LENGTH = 64;
+	private static final int RECORD_HEADER = 6;
+	private static final int PADDING = -1;
+	
+	private static final int FIRST_EPHEMERAL_PORT = 49152;
+	private static final long MIN_PARK = TimeUnit.MICROSECONDS.toNanos(20);
+	private static final long MAX_PARK = TimeUnit.MILLISECONDS.toNanos(1);
+	
+	/**
+	 * Mappings of the ring files used by the transports of this JVM, by path.
+	 */
+	private static final Map<String, Ring> rings = new HashMap<String, Ring>();
+	
+	/**
+	 * Paths of the ring files of the ports bound in this JVM.
+	 */
+	private static final Set<String> bound = ConcurrentHashMap.newKeySet();
+	
+	/**
+	 * Mapping of a ring file, shared by the transports of the JVM using it.
+	 * Transports of the same JVM also synchronize on it, the file lock doesn't
+	 * keep them apart.
+	 */
+	private static class Ring {
+		private final String key;
+		private final Object fileKey;
+		private final RandomAccessFile file;
+		private final FileChannel channel;
+		private final MappedByteBuffer buffer;
+		private final int capacity;
+		private int references = 0;
+		
+		private Ring(File path, int capacity) throws IOException {
+			this.key = path.getAbsolutePath();
+			this.file = new RandomAccessFile(path, "rw");
+			this.fileKey = fileKeyOf(path);
+			try {
+				if(capacity > 0)
+					file.setLength(HEADER_LENGTH + capacity);
+				else if(file.length() <= HEADER_LENGTH)
+					throw new IOException("Invalid ring file " + path + ".");
+				this.channel = file.getChannel();
+				this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, file.length());
+				this.capacity = (int) file.length() - HEADER_LENGTH;
+			} catch (IOException e) {
+				file.close();
+				throw e;
+			}
+		}
+		
+		/**
+		 * Gets the mapping of a ring file, mapping it if no transport of the JVM uses it yet.
+		 * @param path The ring file.
+		 * @param capacity The capacity to create the ring with, 0 to open an existing one.
+		 * @return [{@link Ring}] The mapping, to be released once done with it.
+		 */
+		private static Ring acquire(File path, int capacity) throws IOException {
+			synchronized(rings) {
+				// A file deleted or replaced since it was mapped gets a new mapping, the old one is
+				// closed once its last user releases it, which doesn't touch the locks on the new file.
+				Ring ring = rings.get(path.getAbsolutePath());
+				if(ring == null || !ring.maps(path)) {
+					ring = new Ring(path, capacity);
+					rings.put(ring.key, ring);
+				}
+				ring.references++;
+				return ring;
+			}
+		}
+		
+		private boolean maps(File path) {
+			Object current = fileKeyOf(path);
+			if(current == null || fileKey == null)
+				return fileKey == null && path.exists() && !isClosed();
+			return current.equals(fileKey);
+		}
+		
+		private static Object fileKeyOf(File path) {
+			try {
+				return Files.readAttributes(path.toPath(), BasicFileAttributes.class).fileKey();
+			} catch (IOException e) {
+				return null;
+			}
+		}
+		
+		/**
+		 * Closes the mapping once the last transport using it released it.
+		 */
+		private void release() {
+			synchronized(rings) {
+				if(--references > 0)
+					return;
+				rings.remove(key, this);
+				try {
+					file.close();
+				} catch (IOException e) {}
+			}
+		}
+		
+		private boolean isClosed() {
+			return buffer.getInt(MAGIC_POSITION) != MAGIC || buffer.getInt(CLOSED_POSITION) != 0;
+		}
+		
+		private FileLock lock() throws IOException {
+			return channel.lock(0, HEADER_LOCK_LENGTH, false);
+		}
+		
+		/**
+		 * Appends a record, or drops it if the ring is full.
+		 */
+		private void write(int source, ByteBuffer data) throws IOException {
+			int length = data.remaining();
+			int size = align(RECORD_HEADER + length);
+			if(size > capacity)
+				return;
+			
+			synchronized(this) {
+				FileLock lock = lock();
+				try {
+					if(isClosed())
+						return;
+					
+					long head = buffer.getLong(HEAD_POSITION);
+					long tail = buffer.getLong(TAIL_POSITION);
+					int position = (int) (head % capacity);
+					int padding = capacity - position < size ? capacity - position : 0;
+					if(capacity - (head - tail) < padding + size)
+						return;
+					
+					if(padding > 0) {
+						buffer.putInt(HEADER_LENGTH + position, PADDING);
+						position = 0;
+					}
+					buffer.putInt(HEADER_LENGTH + position, length);
+					buffer.putShort(HEADER_LENGTH + position + 4, (short) source);
+					for(int i = 0; i < length; i++)
+						buffer.put(HEADER_LENGTH + position + RECORD_HEADER + i, data.get());
+					buffer.putLong(HEAD_POSITION, head + padding + size);
+				} finally {
+					lock.release();
+				}
+			}
+		}
+		
+		/**
+		 * Removes the oldest record.
+		 * @return [<b>int</b>] The source port of the record, -1 if the ring is empty.
+		 */
+		private int read(ByteBuffer target) throws IOException {
+			synchronized(this) {
+				FileLock lock = lock();
+				try {
+					long head = buffer.getLong(HEAD_POSITION);
+					long tail = buffer.getLong(TAIL_POSITION);
+					if(head == tail)
+						return -1;
+					
+					int position = (int) (tail % capacity);
+					int length = buffer.getInt(HEADER_LENGTH + position);
+					if(length == PADDING) {
+						tail += capacity - position;
+						position = 0;
+						length = buffer.getInt(HEADER_LENGTH);
+					}
+					int source = buffer.getShort(HEADER_LENGTH + position + 4) & 0xffff;
+					int copied = Math.min(length, target.remaining());
+					for(int i = 0; i < copied; i++)
+						target.put(buffer.get(HEADER_LENGTH + position + RECORD_HEADER + i));
+					buffer.putLong(TAIL_POSITION, tail + align(RECORD_HEADER + length));
+					return source;
+				} finally {
+					lock.release();
+				}
+			}
+		}
+	}
+	
+	private final File directory;
+	private final int port;
+	private final InetSocketAddress address;
+	private final Ring ring;
+	private final File path;
+	private final FileLock owner;
+	private final Map<Integer, Ring> targets = new HashMap<Integer, Ring>();
+	private volatile boolean closed = false;
+	
+	public MappedTransport(int port) throws IOException {
+		this(DEFAULT_DIRECTORY, port);
+	}
+	
+	public MappedTransport(File directory, int port) throws IOException {
+		if(port < 0 || port > 0xffff)
+			throw new BindException("Invalid port " + port + ".");
+		
+		directory.mkdirs();
+		if(!directory.isDirectory())
+			throw new IOException("Couldn't create " + directory + ".");
+		this.directory = directory;
+		
+		Ring ring = null;
+		FileLock owner = null;
+		int first = port == 0 ? FIRST_EPHEMERAL_PORT : port;
+		int last = port == 0 ? 0xffff : port;
+		for(int candidate = first; candidate <= last && owner == null; candidate++) {
+			
+			// Ports bound in this JVM can't be told apart by their lock, don't even open them.
+			File file = fileOf(candidate);
+			if(!bound.add(file.getAbsolutePath()))
+				continue;
+			
+			try {
+				ring = Ring.acquire(file, RING_CAPACITY);
+			} catch (IOException e) {
+				bound.remove(file.getAbsolutePath());
+				throw e;
+			}
+			owner = tryLock(ring);
+			if(owner == null) {
+				ring.release();
+				bound.remove(file.getAbsolutePath());
+			}else
+				port = candidate;
+		}
+		if(owner == null)
+			throw new BindException(port == 0 ? "No free mapped port." : "Port " + port + " is already in use.");
+		
+		this.ring = ring;
+		this.owner = owner;
+		this.port = port;
+		this.path = fileOf(port);
+		this.address = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+		
+		// Resets the ring left behind by a previous owner.
+		synchronized(ring) {
+			FileLock lock = ring.lock();
+			try {
+				ring.buffer.putLong(HEAD_POSITION, 0);
+				ring.buffer.putLong(TAIL_POSITION, 0);
+				ring.buffer.putInt(CAPACITY_POSITION, ring.capacity);
+				ring.buffer.putInt(CLOSED_POSITION, 0);
+				ring.buffer.putInt(MAGIC_POSITION, MAGIC);
+			} finally {
+				lock.release();
+			}
+		}
+	}
+	
+	private static FileLock tryLock(Ring ring) throws IOException {
+		try {
+			return ring.channel.tryLock(OWNER_POSITION, 1, false);
+		} catch (OverlappingFileLockException e) {
+			return null;
+		}
+	}
+	
+	private File fileOf(int port) {
+		return new File(directory, port + ".ring");
+	}
+	
+	private static int align(int size) {
+		return (size + 7) & ~7;
+	}
+	
+	public void send(ByteBuffer data, InetSocketAddress target) throws IOException {
+		
+		if(closed)
+			throw new ClosedChannelException();
+		
+		// Only this host can be reached.
+		InetAddress ip = target.getAddress();
+		if(ip == null || !(ip.isLoopbackAddress() || ip.isAnyLocalAddress()))
+			return;
+		
+		Ring receiver;
+		synchronized(targets) {
+			receiver = targets.get(target.getPort());
+			if(receiver == null || receiver.isClosed()) {
+				if(receiver != null)
+					receiver.release();
+				targets.remove(target.getPort());
+				receiver = null;
+				
+				File file = fileOf(target.getPort());
+				if(file.exists()) {
+					try {
+						receiver = Ring.acquire(file, 0);
+						targets.put(target.getPort(), receiver);
+					} catch (IOException e) {}
+				}
+			}
+		}
+		
+		if(receiver != null)
+			receiver.write(port, data);
+		
+	}
+	
+	public InetSocketAddress receive(ByteBuffer buffer) throws IOException {
+		
+		long park = MIN_PARK;
+		while(!closed) {
+			int source = ring.read(buffer);
+			if(source >= 0)
+				return new InetSocketAddress(address.getAddress(), source);
+			
+			LockSupport.parkNanos(park);
+			park = Math.min(park * 2, MAX_PARK);
+		}
+		throw new ClosedChannelException();
+		
+	}
+	
+	public int getLocalPort() {
+		return port;
+	}
+	
+	public void close() {
+		if(closed)
+			return;
+		closed = true;
+		
+		synchronized(ring) {
+			try {
+				FileLock lock = ring.lock();
+				ring.buffer.putInt(CLOSED_POSITION, 1);
+				lock.release();
+			} catch (IOException e) {}
+		}
+		
+		// The port can be bound again once the file is gone, the next owner maps a new one.
+		path.delete();
+		try {
+			owner.release();
+		} catch (IOException e) {}
+		bound.remove(path.getAbsolutePath());
+		ring.release();
+		
+		synchronized(targets) {
+			for(Ring target : targets.values())
+				target.release();
+			targets.clear();
+		}
+	}
+	
+}
@@ -0,0 +1,248 @@
+package api.main.src;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Encoder and decoder of a message class, built once from the class'
+ * {@link MessageField} annotations. Every field gets an accessor specialized
+ * for its type, so encoding and decoding primitive fields doesn't allocate.
+ * 
+ * A message is written as its version followed by its fields. Decoding a
+ * message from an older version leaves the newer fields at their default
+ * value and fields from a newer version are simply ignored.
+ */
+public class MessageCodec<T> {
+	
+	private static final Map<Class<?>, MessageCodec<?>> codecs = new ConcurrentHashMap<Class<?>, MessageCodec<?>>();
+	
+	private final Constructor<T> constructor;
+	private final Accessor[] accessors;
+	private final byte version;
+	
+	/**
+	 * Reads and writes a single field.
+	 */
+	private static abstract class Accessor{
+		protected final Field field;
+		protected final int since;
+		
+		private Accessor(Field field, int since) {
+			this.field = field;
+			this.since = since;
+		}
+		
+		abstract void write(Object message, ByteBuffer out) throws IllegalAccessException;
+		abstract void read(Object message, ByteBuffer in) throws IllegalAccessException;
+		abstract void reset(Object message) throws IllegalAccessException;
+	}
+	
+	private MessageCodec(Class<T> type) {
+		
+		try {
+			this.constructor = type.getDeclaredConstructor();
+			this.constructor.setAccessible(true);
+		} catch (NoSuchMethodException e) {
+			throw new RuntimeException(type.getName() + " needs a no-argument constructor.");
+		}
+		
+		ArrayList<Field> fields = new ArrayList<Field>();
+		HashSet<Integer> ids = new HashSet<Integer>();
+		for(Field field : type.getDeclaredFields()) {
+			MessageField annotation = field.getAnnotation(MessageField.class);
+			if(annotation == null)
+				continue;
+			if(Modifier.isStatic(field.getModifiers()) || Modifier.isFinal(field.getModifiers()))
+				throw new RuntimeException(field + " can't be static or final.");
+			if(!ids.add(annotation.id()))
+				throw new RuntimeException("Duplicate field id " + annotation.id() + " in " + type.getName() + ".");
+			field.setAccessible(true);
+			fields.add(field);
+		}
+		
+		Collections.sort(fields, Comparator
+				.comparingInt((Field f) -> f.getAnnotation(MessageField.class).since())
+				.thenComparingInt(f -> f.getAnnotation(MessageField.class).id()));
+		
+		int latest = 0;
+		this.accessors = new Accessor[fields.size()];
+		for(int i = 0; i < accessors.length; i++) {
+			Field field = fields.get(i);
+			int since = field.getAnnotation(MessageField.class).since();
+			accessors[i] = accessorFor(field, since);
+			latest = Math.max(latest, since);
+		}
+		
+		if(latest > Byte.MAX_VALUE)
+			throw new RuntimeException("Too many versions of " + type.getName() + ".");
+		this.version = (byte) latest;
+		
+	}
+	
+	/**
+	 * Returns the codec of a message class, building it the first time.
+	 * @param type The message class.
+	 * @return [{@link MessageCodec}] The codec.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> MessageCodec<T> of(Class<T> type) {
+		MessageCodec<?> codec = codecs.get(type);
+		if(codec == null) {
+			codecs.putIfAbsent(type, new MessageCodec<T>(type));
+			codec = codecs.get(type);
+		}
+		return (MessageCodec<T>) codec;
+	}
+	
+	public T newInstance() {
+		try {
+			return constructor.newInstance();
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	public int getVersion() {
+		return version;
+	}
+	
+	/**
+	 * Writes a message into a buffer.
+	 * @param message The message.
+	 * @param out The buffer to write into.
+	 * @return [<b>void</b>]
+	 */
+	public void encode(T message, ByteBuffer out) {
+		try {
+			out.put(version);
+			for(Accessor accessor : accessors)
+				accessor.write(message, out);
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/**
+	 * Reads a message from a buffer into an existing instance.
+	 * @param in The buffer to read from.
+	 * @param message The instance to read into.
+	 * @return [<b>void</b>]
+	 */
+	public void decode(ByteBuffer in, T message) {
+		try {
+			int sent = in.get();
+			for(Accessor accessor : accessors) {
+				if(accessor.since <= sent)
+					accessor.read(message, in);
+				else
+					accessor.reset(message);
+			}
+		} catch (IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	private static Accessor accessorFor(Field field, int since) {
+		
+		Class<?> type = field.getType();
+		
+		if(type == byte.class)
+			return new Accessor(field, since) {
+				void write(Object m, ByteBuffer out) throws IllegalAccessException {out.put(field.getByte(m));}
+				void read(Object m, ByteBuffer in) throws IllegalAccessException {field.setByte(m, in.get());}
+				void reset(Object m) throws IllegalAccessException {field.setByte(m, (byte) 0);}
+			};
+		
+		if(type == boolean.class)
+			return new Accessor(field, since) {
+				void write(Object m, ByteBuffer out) throws IllegalAccessException {out.put((byte)(field.getBoolean(m) ? 1 : 0));}
+				void read(Object m, ByteBuffer in) throws IllegalAccessException {field.setBoolean(m, in.get() != 0);}
+				void reset(Object m) throws IllegalAccessException {field.setBoolean(m, false);}
+			};
+		
+		if(type == short.class)
+			return new Accessor(field, since) {
+				void write(Object m, ByteBuffer out) throws IllegalAccessException {out.putShort(field.getShort(m));}
+				void read(Object m, ByteBuffer in) throws IllegalAccessException {field.setShort(m, in.getShort());}
+				void reset(Object m) throws IllegalAccessException {field.setShort(m, (short) 0);}
+			};
+		
+		if(type == int.class)
+			return new Accessor(field, since) {
+				void write(Object m, ByteBuffer out) throws IllegalAccessException {out.putInt(field.getInt(m));}
+				void read(Object m, ByteBuffer in) throws IllegalAccessException {field.setInt(m, in.getInt());}
+				void reset(Object m) throws IllegalAccessException {field.setInt(m, 0);}
+			};
+		
+		if(type == long.class)
+			return new Accessor(field, since) {
+				void write(Object m, ByteBuffer out) throws IllegalAccessException {out.putLong(field.getLong(m));}
+				void read(Object m, ByteBuffer in) throws IllegalAccessException {field.setLong(m, in.getLong());}
+				void reset(Object m) throws IllegalAccessException {field.setLong(m, 0);}
+			};
+		
+		if(type == float.class)
+			return new Accessor(field, since) {
+				void write(Object m, ByteBuffer out) throws IllegalAccessException {out.putFloat(field.getFloat(m));}
+				void read(Object m, ByteBuffer in) throws IllegalAccessException {field.setFloat(m, in.getFloat());}
+				void reset(Object m) throws IllegalAccessException {field.setFloat(m, 0);}
+			};
+		
+		if(type == double.class)
+			return new Accessor(field, since) {
+				void write(Object m, ByteBuffer out) throws IllegalAccessException {out.putDouble(field.getDouble(m));}
+				void read(Object m, ByteBuffer in) throws IllegalAccessException {field.setDouble(m, in.getDouble());}
+				void reset(Object m) throws IllegalAccessException {field.setDouble(m, 0);}
+			};
+		
+		if(type == byte[].class)
+			return new Accessor(field, since) {
+				void write(Object m, ByteBuffer out) throws IllegalAccessException {
+					byte[] bytes = (byte[]) field.get(m);
+					int length = bytes == null ? 0 : bytes.length;
+					out.putShort((short) length);
+					if(length > 0)
+						out.put(bytes);
+				}
+				void read(Object m, ByteBuffer in) throws IllegalAccessException {
+					int length = in.getShort() & 0xffff;
+					byte[] bytes = (byte[]) field.get(m);
+					
+					// Reuse the previous array when it has the right size.
+					if(bytes == null || bytes.length != length)
+						bytes = new byte[length];
+					in.get(bytes);
+					field.set(m, bytes);
+				}
+				void reset(Object m) throws IllegalAccessException {field.set(m, null);}
+			};
+		
+		if(type == String.class)
+			return new Accessor(field, since) {
+				void write(Object m, ByteBuffer out) throws IllegalAccessException {
+					String value = (String) field.get(m);
+					byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+					out.putShort((short) bytes.length).put(bytes);
+				}
+				void read(Object m, ByteBuffer in) throws IllegalAccessException {
+					byte[] bytes = new byte[in.getShort() & 0xffff];
+					in.get(bytes);
+					field.set(m, new String(bytes, StandardCharsets.UTF_8));
+				}
+				void reset(Object m) throws IllegalAccessException {field.set(m, null);}
+			};
+		
+		throw new RuntimeException("Unsupported message field type " + type.getName() + " for " + field + ".");
+		
+	}
+	
+}
@@ -0,0 +1,27 @@
+package api.main.src;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a field of a message class as part of its wire format.
+ * Fields are written ordered by the version they were added in, then by id,
+ * so fields added in later versions always come last.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface MessageField {
+	
+	/**
+	 * @return The id of the field, unique within its message.
+	 */
+	int id();
+	
+	/**
+	 * @return The message version the field was added in.
+	 */
+	int since() default 0;
+	
+}
@@ -0,0 +1,192 @@
+package api.main.src;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Dispatches received packets to their handlers through a table indexed by
+ * packet type. Typed handlers get their message decoded into an instance
+ * reused by the receiving thread, so they must not keep a reference to it.
+ * 
+ * @param <C> The context handed to the handlers along with the packet.
+ */
+public class MessageRegistry<C> {
+	
+	/**
+	 * Highest packet type the registry can hold, plus one.
+	 */
+	public static final int MAX_TYPES = 64;
+	
+	public interface Handler<C, T>{
+		void handle(T message, PacketInfo packetInfo, C context);
+	}
+	
+	public interface RawHandler<C>{
+		void handle(PacketInfo packetInfo, C context);
+	}
+	
+	private final MessageCodec<?>[] codecs = new MessageCodec<?>[MAX_TYPES];
+	private final Handler<C, ?>[] handlers;
+	private final RawHandler<C>[] rawHandlers;
+	private RawHandler<C> fallback;
+	
+	/**
+	 * Message instances reused by each thread, for decoding and for sending.
+	 */
+	private final ThreadLocal<Object[]> incoming = ThreadLocal.withInitial(() -> new Object[MAX_TYPES]);
+	private final ThreadLocal<Object[]> outgoing = ThreadLocal.withInitial(() -> new Object[MAX_TYPES]);
+	private final ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(Receiver.BUFFER_LENGTH));
+	
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public MessageRegistry() {
+		this.handlers = new Handler[MAX_TYPES];
+		this.rawHandlers = new RawHandler[MAX_TYPES];
+	}
+	
+	/**
+	 * Registers the message class and handler of a packet type.
+	 * @param type The packet type.
+	 * @param message The message class of the packet's content.
+	 * @param handler The handler, or null to only register the message class.
+	 * @return [{@link MessageRegistry}] This registry.
+	 */
+	public <T> MessageRegistry<C> on(int type, Class<T> message, Handler<C, T> handler) {
+		checkType(type);
+		codecs[type] = MessageCodec.of(message);
+		handlers[type] = handler;
+		rawHandlers[type] = null;
+		return this;
+	}
+	
+	/**
+	 * Registers the handler of a packet type whose content isn't a message.
+	 * @param type The packet type.
+	 * @param handler The handler.
+	 * @return [{@link MessageRegistry}] This registry.
+	 */
+	public MessageRegistry<C> onRaw(int type, RawHandler<C> handler) {
+		checkType(type);
+		rawHandlers[type] = handler;
+		handlers[type] = null;
+		return this;
+	}
+	
+	/**
+	 * Registers the handler of packets with no registered handler.
+	 * @param handler The handler.
+	 * @return [{@link MessageRegistry}] This registry.
+	 */
+	public MessageRegistry<C> otherwise(RawHandler<C> handler) {
+		this.fallback = handler;
+		return this;
+	}
+	
+	/**
+	 * Dispatches a packet to its handler.
+	 * @param packetInfo The packet.
+	 * @param context The context handed to the handler.
+	 * @return [<b>void</b>]
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void dispatch(PacketInfo packetInfo, C context) {
+		
+		int type = packetInfo.packet.getType();
+		if(type < 0 || type >= MAX_TYPES) {
+			if(fallback != null)
+				fallback.handle(packetInfo, context);
+			return;
+		}
+		
+		Handler handler = handlers[type];
+		if(handler != null) {
+			
+			Object message = instance(incoming.get(), type);
+			try {
+				((MessageCodec) codecs[type]).decode(packetInfo.packet.readContent(), message);
+			}catch(Exception e) {
+				
+				// Truncated or corrupted message.
+				return;
+				
+			}
+			handler.handle(message, packetInfo, context);
+			
+		}else if(rawHandlers[type] != null)
+			rawHandlers[type].handle(packetInfo, context);
+		else if(fallback != null)
+			fallback.handle(packetInfo, context);
+		
+	}
+	
+	/**
+	 * Returns the message instance the current thread reuses to send a packet type.
+	 * @param type The packet type.
+	 * @return [<b>T</b>] The message instance.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T message(int type) {
+		return (T) instance(outgoing.get(), type);
+	}
+	
+	/**
+	 * Encodes a message into the current thread's reusable buffer.
+	 * @param type The packet type.
+	 * @param message The message.
+	 * @return [{@link ByteBuffer}] The buffer, ready to be read.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public ByteBuffer encode(int type, Object message) {
+		ByteBuffer buffer = buffers.get();
+		buffer.clear();
+		((MessageCodec) codecFor(type)).encode(message, buffer);
+		buffer.flip();
+		return buffer;
+	}
+	
+	/**
+	 * Encodes a message as a whole serialized packet, header included, into the
+	 * current thread's reusable buffer so it can be sent or sealed as it is.
+	 * @param type The packet type.
+	 * @param message The message.
+	 * @return [{@link ByteBuffer}] The buffer, ready to be read.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public ByteBuffer toPacket(int type, Object message) {
+		
+		// Types compressed on the wire need their content on its own first.
+		if(Compression.codecFor(type) != Compression.NONE) {
+			ByteBuffer content = encode(type, message);
+			byte[] data = new byte[content.remaining()];
+			content.get(data);
+			return ByteBuffer.wrap(new Packet(type, data).serialize());
+		}
+		
+		ByteBuffer buffer = buffers.get();
+		buffer.clear();
+		buffer.position(Packet.HEADER_LENGTH);
+		((MessageCodec) codecFor(type)).encode(message, buffer);
+		Packet.writeHeader(buffer, type, System.currentTimeMillis(), buffer.position() - Packet.HEADER_LENGTH, Compression.NONE);
+		buffer.flip();
+		return buffer;
+		
+	}
+	
+	private Object instance(Object[] instances, int type) {
+		Object message = instances[type];
+		if(message == null)
+			instances[type] = message = codecFor(type).newInstance();
+		return message;
+	}
+	
+	private MessageCodec<?> codecFor(int type) {
+		checkType(type);
+		if(codecs[type] == null)
+			throw new RuntimeException("No message registered for packet type " + type + ".");
+		return codecs[type];
+	}
+	
+	private static void checkType(int type) {
+		if(type < 0 || type >= MAX_TYPES)
+			throw new RuntimeException("Invalid packet type " + type + ".");
+	}
+	
+}
@@ -0,0 +1,66 @@
+package api.main.src;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Transport counting the datagrams and bytes going through another one into
+ * a {@link Metrics} registry.
+ */
+public class MeteredTransport implements Transport {
+	
+	private final Transport inner;
+	private final Metrics.Counter packetsSent, bytesSent, packetsReceived, bytesReceived;
+	
+	/**
+	 * Wraps a transport.
+	 * @param inner The transport to count the traffic of.
+	 * @param metrics The registry of the counters.
+	 * @param labels The label names and values, in turn, telling the traffic of servers and clients apart.
+	 */
+	public MeteredTransport(Transport inner, Metrics metrics, String... labels) {
+		this.inner = inner;
+		this.packetsSent = metrics.counter("network_sent_packets_total", "Datagrams sent.", labels);
+		this.bytesSent = metrics.counter("network_sent_bytes_total", "Bytes of datagrams sent.", labels);
+		this.packetsReceived = metrics.counter("network_received_packets_total", "Datagrams received.", labels);
+		this.bytesReceived = metrics.counter("network_received_bytes_total", "Bytes of datagrams received.", labels);
+	}
+	
+	/**
+	 * Creates a factory wrapping every transport opened by another factory.
+	 * @param inner The factory opening the real transports.
+	 * @param metrics The registry of the counters.
+	 * @param labels The label names and values, in turn, telling the traffic of servers and clients apart.
+	 * @return [{@link TransportFactory}] The factory.
+	 */
+	public static TransportFactory factory(TransportFactory inner, Metrics metrics, String... labels) {
+		return port -> new MeteredTransport(inner.open(port), metrics, labels);
+	}
+	
+	public void send(ByteBuffer data, InetSocketAddress target) throws IOException {
+		int length = data.remaining();
+		inner.send(data, target);
+		packetsSent.inc();
+		bytesSent.add(length);
+	}
+	
+	public InetSocketAddress receive(ByteBuffer buffer) throws IOException {
+		int start = buffer.position();
+		InetSocketAddress source = inner.receive(buffer);
+		if(source != null) {
+			packetsReceived.inc();
+			bytesReceived.add(buffer.position() - start);
+		}
+		return source;
+	}
+	
+	public int getLocalPort() {
+		return inner.getLocalPort();
+	}
+	
+	public void close() {
+		inner.close();
+	}
+	
+}
@@ -0,0 +1,309 @@
+package api.main.src;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.math.BigDecimal;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Registry of counters, gauges and histograms, rendered in the Prometheus text
+ * format by {@link #render()} and served by a {@link MetricsServer}. Updating a
+ * metric never locks, so they can be updated from the tick and I/O threads.
+ * <p>
+ * Metrics are named and optionally labelled with name and value pairs.
+ * Registering a metric twice returns the first one, and registering a callback
+ * twice replaces the first one.
+ */
+public class Metrics {
+	
+	/**
+	 * Registry shared by everything running in the process.
+	 */
+	public static final Metrics DEFAULT = new Metrics();
+	
+	/**
+	 * Default buckets of a histogram of durations, in seconds.
+	 */
+	public static final double[] DURATION_BUCKETS = 
+		{0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.0167, 0.025, 0.05, 0.1, 0.25};
+	
+	private static final String COUNTER = "counter", GAUGE = "gauge", HISTOGRAM = "histogram";
+	
+	/**
+	 * Metrics sharing a name, one per set of labels.
+	 */
+	private static class Family{
+		private final String name;
+		private final String help;
+		private final String type;
+		private final Map<String, Object> children = new LinkedHashMap<String, Object>();
+		
+		private Family(String name, String help, String type) {
+			this.name = name;
+			this.help = help;
+			this.type = type;
+		}
+	}
+	
+	public static class Counter{
+		private final LongAdder value = new LongAdder();
+		
+		public void inc() {
+			value.increment();
+		}
+		
+		public void add(long amount) {
+			value.add(amount);
+		}
+		
+		public long get() {
+			return value.sum();
+		}
+	}
+	
+	public static class Gauge{
+		private final AtomicLong bits = new AtomicLong(Double.doubleToLongBits(0));
+		
+		public void set(double value) {
+			bits.set(Double.doubleToLongBits(value));
+		}
+		
+		public double get() {
+			return Double.longBitsToDouble(bits.get());
+		}
+	}
+	
+	public static class Histogram{
+		private final double[] bounds;
+		private final LongAdder[] buckets;
+		private final LongAdder count = new LongAdder();
+		private final DoubleAdder sum = new DoubleAdder();
+		
+		private Histogram(double[] bounds) {
+			this.bounds = bounds.clone();
+			this.buckets = new LongAdder[bounds.length];
+			for(int i = 0; i < buckets.length; i++)
+				buckets[i] = new LongAdder();
+		}
+		
+		/**
+		 * Records a value.
+		 * @param value The value.
+		 * @return [<b>void</b>]
+		 */
+		public void observe(double value) {
+			for(int i = 0; i < bounds.length; i++)
+				if(value <= bounds[i]) {
+					buckets[i].increment();
+					break;
+				}
+			count.increment();
+			sum.add(value);
+		}
+		
+		/**
+		 * Records a duration.
+		 * @param nanos The duration in nanoseconds, recorded in seconds.
+		 * @return [<b>void</b>]
+		 */
+		public void observeNanos(long nanos) {
+			observe(nanos / 1e9);
+		}
+		
+		public long getCount() {
+			return count.sum();
+		}
+		
+		public double getSum() {
+			return sum.sum();
+		}
+	}
+	
+	private final Map<String, Family> families = new TreeMap<String, Family>();
+	
+	public Counter counter(String name, String help, String... labels) {
+		return register(name, help, COUNTER, labels, new Counter(), false);
+	}
+	
+	/**
+	 * Registers a counter read from elsewhere when rendered.
+	 * @param name The counter's name.
+	 * @param help The counter's description.
+	 * @param value Returns the counter's value.
+	 * @param labels The label names and values, in turn.
+	 * @return [<b>void</b>]
+	 */
+	public void counter(String name, String help, DoubleSupplier value, String... labels) {
+		register(name, help, COUNTER, labels, value, true);
+	}
+	
+	public Gauge gauge(String name, String help, String... labels) {
+		return register(name, help, GAUGE, labels, new Gauge(), false);
+	}
+	
+	/**
+	 * Registers a gauge read from elsewhere when rendered.
+	 * @param name The gauge's name.
+	 * @param help The gauge's description.
+	 * @param value Returns the gauge's value.
+	 * @param labels The label names and values, in turn.
+	 * @return [<b>void</b>]
+	 */
+	public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+		register(name, help, GAUGE, labels, value, true);
+	}
+	
+	/**
+	 * Registers a histogram.
+	 * @param name The histogram's name.
+	 * @param help The histogram's description.
+	 * @param buckets The upper bounds of the buckets, in increasing order.
+	 * @param labels The label names and values, in turn.
+	 * @return [{@link Histogram}] The histogram.
+	 */
+	public Histogram histogram(String name, String help, double[] buckets, String... labels) {
+		return register(name, help, HISTOGRAM, labels, new Histogram(buckets), false);
+	}
+	
+	@SuppressWarnings("unchecked")
+	private synchronized <T> T register(String name, String help, String type, String[] labels, T metric, boolean replace) {
+		
+		if(!name.matches("[a-zA-Z_:][a-zA-Z0-9_:]*"))
+			throw new RuntimeException("Invalid metric name " + name + ".");
+		if(labels.length % 2 != 0)
+			throw new RuntimeException("Labels must be name and value pairs.");
+		
+		Family family = families.get(name);
+		if(family == null)
+			families.put(name, family = new Family(name, help, type));
+		else if(!family.type.equals(type))
+			throw new RuntimeException("Metric " + name + " is already a " + family.type + ".");
+		
+		String key = labels(labels);
+		Object existing = family.children.get(key);
+		if(existing != null && !replace && existing.getClass() == metric.getClass())
+			return (T) existing;
+		family.children.put(key, metric);
+		return metric;
+		
+	}
+	
+	/**
+	 * Renders every metric in the Prometheus text format.
+	 * @return [<b>String</b>] The metrics.
+	 */
+	public synchronized String render() {
+		
+		StringBuilder out = new StringBuilder();
+		for(Family family : families.values()) {
+			out.append("# HELP ").append(family.name).append(' ').append(family.help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+			out.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+			
+			for(Map.Entry<String, Object> child : family.children.entrySet()) {
+				String labels = child.getKey();
+				Object metric = child.getValue();
+				
+				if(metric instanceof Histogram) {
+					Histogram histogram = (Histogram) metric;
+					long cumulative = 0;
+					for(int i = 0; i < histogram.bounds.length; i++) {
+						cumulative += histogram.buckets[i].sum();
+						sample(out, family.name + "_bucket", withLe(labels, format(histogram.bounds[i])), cumulative);
+					}
+					long count = histogram.count.sum();
+					sample(out, family.name + "_bucket", withLe(labels, "+Inf"), count);
+					sample(out, family.name + "_sum", labels, histogram.sum.sum());
+					sample(out, family.name + "_count", labels, count);
+				}else if(metric instanceof Counter)
+					sample(out, family.name, labels, ((Counter) metric).get());
+				else if(metric instanceof Gauge)
+					sample(out, family.name, labels, ((Gauge) metric).get());
+				else {
+					double value;
+					try {
+						value = ((DoubleSupplier) metric).getAsDouble();
+					}catch(RuntimeException e) {
+						value = Double.NaN;
+					}
+					sample(out, family.name, labels, value);
+				}
+			}
+		}
+		return out.toString();
+		
+	}
+	
+	/**
+	 * Registers the metrics of the JVM: garbage collections, memory, threads and CPU time.
+	 * @return [{@link Metrics}] This registry.
+	 */
+	public Metrics withJvmMetrics() {
+		
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			counter("jvm_gc_collections_total", "Garbage collections.", gc::getCollectionCount, "gc", gc.getName());
+			counter("jvm_gc_seconds_total", "Time spent collecting garbage.", () -> gc.getCollectionTime() / 1000.0, "gc", gc.getName());
+		}
+		
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		gauge("jvm_memory_bytes", "Memory used by the JVM.", () -> memory.getHeapMemoryUsage().getUsed(), "area", "heap", "kind", "used");
+		gauge("jvm_memory_bytes", "Memory used by the JVM.", () -> memory.getHeapMemoryUsage().getCommitted(), "area", "heap", "kind", "committed");
+		gauge("jvm_memory_bytes", "Memory used by the JVM.", () -> memory.getNonHeapMemoryUsage().getUsed(), "area", "nonheap", "kind", "used");
+		
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		gauge("jvm_threads", "Threads of the JVM.", threads::getThreadCount, "kind", "live");
+		gauge("jvm_threads", "Threads of the JVM.", threads::getDaemonThreadCount, "kind", "daemon");
+		gauge("jvm_threads", "Threads of the JVM.", threads::getPeakThreadCount, "kind", "peak");
+		
+		gauge("process_uptime_seconds", "Time since the JVM started.", () -> ManagementFactory.getRuntimeMXBean().getUptime() / 1000.0);
+		OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		if(os instanceof com.sun.management.OperatingSystemMXBean) {
+			com.sun.management.OperatingSystemMXBean cpu = (com.sun.management.OperatingSystemMXBean) os;
+			counter("process_cpu_seconds_total", "CPU time used by the process.", () -> cpu.getProcessCpuTime() / 1e9);
+		}
+		return this;
+		
+	}
+	
+	private static void sample(StringBuilder out, String name, String labels, double value) {
+		out.append(name).append(labels).append(' ').append(format(value)).append('\n');
+	}
+	
+	private static String format(double value) {
+		if(Double.isNaN(value))
+			return "NaN";
+		if(Double.isInfinite(value))
+			return value > 0 ? "+Inf" : "-Inf";
+		if(value == Math.rint(value) && Math.abs(value) < 1e15)
+			return Long.toString((long) value);
+		return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+	}
+	
+	private static String labels(String[] pairs) {
+		if(pairs.length == 0)
+			return "";
+		StringBuilder out = new StringBuilder("{");
+		for(int i = 0; i < pairs.length; i += 2) {
+			if(i > 0)
+				out.append(',');
+			out.append(pairs[i]).append("=\"")
+				.append(pairs[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n")).append('"');
+		}
+		return out.append('}').toString();
+	}
+	
+	private static String withLe(String labels, String le) {
+		if(labels.isEmpty())
+			return "{le=\"" + le + "\"}";
+		return labels.substring(0, labels.length() - 1) + ",le=\"" + le + "\"}";
+	}
+	
+}
@@ -0,0 +1,72 @@
+package api.main.src;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local HTTP endpoint serving a {@link Metrics} registry at /metrics in the
+ * Prometheus text format. It only listens on loopback.
+ */
+public class MetricsServer {
+	
+	public static final int DEFAULT_PORT = 9464;
+	
+	private final Metrics metrics;
+	private final HttpServer http;
+	
+	/**
+	 * Starts serving metrics.
+	 * @param metrics The registry to serve.
+	 * @param port The port to listen on, 0 for any free port.
+	 * @throws IOException If the port couldn't be bound.
+	 */
+	public MetricsServer(Metrics metrics, int port) throws IOException {
+		this.metrics = metrics;
+		this.http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		this.http.createContext("/metrics", this::handle);
+		this.http.setExecutor(Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "MetricsServer");
+			thread.setDaemon(true);
+			return thread;
+		}));
+		this.http.start();
+	}
+	
+	private void handle(HttpExchange exchange) throws IOException {
+		
+		if(!exchange.getRequestMethod().equals("GET") && !exchange.getRequestMethod().equals("HEAD")) {
+			exchange.sendResponseHeaders(405, -1);
+			exchange.close();
+			return;
+		}
+		
+		byte[] body = metrics.render().getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+		if(exchange.getRequestMethod().equals("HEAD")) {
+			exchange.sendResponseHeaders(200, -1);
+		}else {
+			exchange.sendResponseHeaders(200, body.length);
+			try(OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		}
+		exchange.close();
+		
+	}
+	
+	public int getPort() {
+		return http.getAddress().getPort();
+	}
+	
+	public void close() {
+		http.stop(0);
+	}
+	
+}
@@ -0,0 +1,92 @@
+package api.main.src;
+
+/**
+ * Network impairments applied by a {@link SimulatedTransport}.
+ */
+public class NetworkConditions {
+	
+	private int latency = 0, jitter = 0;
+	private double loss = 0, duplication = 0, reordering = 0;
+	
+	public static NetworkConditions create() {
+		return new NetworkConditions();
+	}
+	
+	/**
+	 * Sets the one-way delay added to every datagram.
+	 * @param latency The delay in milliseconds.
+	 * @return [{@link NetworkConditions}] These conditions.
+	 */
+	public NetworkConditions latency(int latency) {
+		this.latency = checkPositive(latency);
+		return this;
+	}
+	
+	/**
+	 * Sets the maximum random delay added on top of the latency.
+	 * @param jitter The maximum jitter in milliseconds.
+	 * @return [{@link NetworkConditions}] These conditions.
+	 */
+	public NetworkConditions jitter(int jitter) {
+		this.jitter = checkPositive(jitter);
+		return this;
+	}
+	
+	public NetworkConditions loss(double probability) {
+		this.loss = checkProbability(probability);
+		return this;
+	}
+	
+	public NetworkConditions duplication(double probability) {
+		this.duplication = checkProbability(probability);
+		return this;
+	}
+	
+	/**
+	 * Sets the probability of a datagram being held back long enough to arrive after the next ones.
+	 * @param probability The probability, between 0 and 1.
+	 * @return [{@link NetworkConditions}] These conditions.
+	 */
+	public NetworkConditions reordering(double probability) {
+		this.reordering = checkProbability(probability);
+		return this;
+	}
+	
+	public int getLatency() {
+		return latency;
+	}
+	
+	public int getJitter() {
+		return jitter;
+	}
+	
+	public double getLoss() {
+		return loss;
+	}
+	
+	public double getDuplication() {
+		return duplication;
+	}
+	
+	public double getReordering() {
+		return reordering;
+	}
+	
+	public String toString() {
+		return latency + " ms +/- " + jitter + " ms, " + (loss * 100) + "% loss, " 
+				+ (duplication * 100) + "% duplication, " + (reordering * 100) + "% reordering";
+	}
+	
+	private static int checkPositive(int value) {
+		if(value < 0)
+			throw new RuntimeException("Negative delay specified.");
+		return value;
+	}
+	
+	private static double checkProbability(double probability) {
+		if(probability < 0 || probability > 1)
+			throw new RuntimeException("Invalid probability specified.");
+		return probability;
+	}
+	
+}
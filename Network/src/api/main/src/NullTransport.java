@@ -0,0 +1,43 @@
+package api.main.src;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Transport that never receives anything and drops everything it sends, for
+ * a server fed its packets directly, such as one replaying a capture.
+ */
+public class NullTransport implements Transport {
+	
+	private final int port;
+	private final CountDownLatch closed = new CountDownLatch(1);
+	
+	public NullTransport(int port) {
+		this.port = port;
+	}
+	
+	public void send(ByteBuffer data, InetSocketAddress target) throws IOException {
+		if(closed.getCount() == 0)
+			throw new ClosedChannelException();
+		data.position(data.limit());
+	}
+	
+	public InetSocketAddress receive(ByteBuffer buffer) throws IOException {
+		try {
+			closed.await();
+		} catch (InterruptedException e) {}
+		throw new ClosedChannelException();
+	}
+	
+	public int getLocalPort() {
+		return port;
+	}
+	
+	public void close() {
+		closed.countDown();
+	}
+	
+}
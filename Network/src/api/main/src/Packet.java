@@ -1,6 +1,8 @@
 package api.main.src;
 
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 public class Packet {
 	
@@ -12,16 +14,34 @@ public class Packet {
 	public static final int DISCONNECT = 5;
 	public static final int PORT_REDIRECT = 6;
 	public static final int ACCEPT_CONNECTION = 7;
+	public static final int INPUT = 8;
+	public static final int STATE = 9;
+	public static final int HANDOFF = 10;
+	public static final int HANDOFF_ACK = 11;
+	public static final int ZONE_REDIRECT = 12;
+	public static final int LOCKSTEP_START = 13;
+	public static final int LOCKSTEP_INPUT = 14;
+	public static final int LOCKSTEP_TICK = 15;
+	public static final int SUBSCRIBE = 16;
+	public static final int QUEUE = 17;
+	public static final int LOCKSTEP_STOP = 18;
+	public static final int HANDOFF_DONE = 19;
 	
 	public static final int BUFFER = 525;
 	
-	private static final int HEADER_LENGTH = 16;
+	static final int HEADER_LENGTH = 17;
 	
 	private int type;
 	private long timestamp;
 	private int length;
+	private byte codec = Compression.NONE;
 	
+	/**
+	 * Content of the packet, which for a received packet is read in place from
+	 * the receiver's buffer, starting at the offset, until it is copied out.
+	 */
 	private byte[] content;
+	private int offset = 0;
 	
 	public Packet(int type, long timestamp, byte[] content) {
 		this.type = type;
@@ -40,50 +60,118 @@ public class Packet {
 	public int getType() {
 		return type;
 	}
-
+	
 	public long getTimestamp() {
 		return timestamp;
 	}
-
+	
 	public int getContentLength() {
 		return length;
 	}
 	
+	/**
+	 * Returns the content of the packet. The content of a received packet is
+	 * copied out of the receiver's buffer the first time, which must happen
+	 * before the packet's handler returns.
+	 * @return [<b>byte[]</b>] The content.
+	 */
 	public byte[] getContent() {
+		if(content != null && (offset != 0 || content.length != length)) {
+			content = Arrays.copyOfRange(content, offset, offset + length);
+			offset = 0;
+		}
 		return content;
 	}
 	
+	/**
+	 * Wraps the content of the packet without copying it, to decode it in place.
+	 * @return [{@link ByteBuffer}] The content, from its first byte to its last.
+	 */
+	ByteBuffer readContent() {
+		return content != null ? ByteBuffer.wrap(content, offset, length) : ByteBuffer.allocate(0);
+	}
+	
+	/**
+	 * Returns the codec the packet's content was compressed with on the wire.
+	 * @return [<b>byte</b>] The codec.
+	 */
+	public byte getCodec() {
+		return codec;
+	}
+	
 	public byte[] serialize() {
 		
-		byte[] packet = new byte[length + HEADER_LENGTH];
+		// Compress the content if its type asks for it and it gets smaller.
+		byte[] content = getContent();
+		byte[] payload = content;
+		codec = Compression.NONE;
+		byte wanted = Compression.codecFor(type);
+		if(wanted != Compression.NONE && length > 0) {
+			byte[] packed = Compression.compress(type, wanted, content);
+			if(packed != null) {
+				payload = packed;
+				codec = wanted;
+			}
+		}
+		int payloadLength = payload != null ? payload.length : 0;
 		
-		byte[] header = (byte[]) ByteBuffer.allocate(HEADER_LENGTH)
-				.putInt(type)
-				.putLong(timestamp)
-				.putInt(length)
-				.array();
+		byte[] packet = new byte[payloadLength + HEADER_LENGTH];
 		
-		Util.copy(header, packet, 0);
-		Util.copy(content, packet, HEADER_LENGTH);
+		writeHeader(ByteBuffer.wrap(packet), type, timestamp, payloadLength, codec);
+		Util.copy(payload, packet, HEADER_LENGTH);
 		
 		return packet;
 		
 	}
-
+	
+	/**
+	 * Writes the header of a packet at the start of a buffer, leaving its position alone.
+	 * @param buffer The buffer the packet is serialized into.
+	 * @param type The packet type.
+	 * @param timestamp The time the packet is sent at.
+	 * @param length The length of the content on the wire.
+	 * @param codec The codec the content was compressed with.
+	 * @return [<b>void</b>]
+	 */
+	static void writeHeader(ByteBuffer buffer, int type, long timestamp, int length, byte codec) {
+		buffer.putInt(0, type)
+			.putLong(4, timestamp)
+			.putInt(12, length)
+			.put(16, codec);
+	}
+	
 	public static Packet fromData(byte[] data) {
-		ByteBuffer buffer = ByteBuffer.wrap(data);
-		buffer.rewind();
-		
-		int type = buffer.getInt();
-		long timestamp = buffer.getLong();
-		int length = buffer.getInt();
-		byte[] content = new byte[length];
+		return fromData(ByteBuffer.wrap(data));
+	}
+	
+	/**
+	 * Reads a serialized packet from a buffer backed by an array. Content that
+	 * isn't compressed isn't copied, the packet reads it from the buffer's array.
+	 * @param data The serialized packet, from its position to its limit.
+	 * @return [{@link Packet}] The packet.
+	 */
+	public static Packet fromData(ByteBuffer data) {
 		
+		int type = data.getInt();
+		long timestamp = data.getLong();
+		int length = data.getInt();
+		byte codec = data.get();
+		if(length < 0 || length > data.remaining())
+			throw new BufferUnderflowException();
 		
-		for(int i = 0; i < content.length; i++)
-			content[i] = buffer.get();
+		Packet packet;
+		if(codec == Compression.NONE) {
+			packet = new Packet(type, timestamp, data.array());
+			packet.offset = data.arrayOffset() + data.position();
+			packet.length = length;
+		}else {
+			byte[] content = new byte[length];
+			data.get(content);
+			packet = new Packet(type, timestamp, Compression.decompress(type, codec, content));
+		}
+		packet.codec = codec;
+		return packet;
 		
-		return new Packet(type, timestamp, content);
 	}
 	
 	
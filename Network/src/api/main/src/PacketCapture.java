@@ -0,0 +1,118 @@
+package api.main.src;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Append-only, memory-mapped log of the raw datagrams received by a server,
+ * along with the time they were received at. Recording a datagram is a copy
+ * into mapped memory, the OS writes it back to disk on its own.
+ * 
+ * Every record is laid out as :
+ * [int length][long time][byte receiver][byte ip length][ip][int port][data]
+ * The file grows by chunks, a zero length marks the end of a chunk's records.
+ * Closing the capture writes a negative length followed by the time it was
+ * closed at.
+ */
+public class PacketCapture {
+	
+	public static final int CHUNK_SIZE = 16 * 1024 * 1024;
+	
+	/**
+	 * Size of a record without its ip address and data.
+	 */
+	static final int RECORD_HEADER = Integer.BYTES + Long.BYTES + Byte.BYTES + Byte.BYTES + Integer.BYTES;
+	
+	/**
+	 * Size of the record ending the capture.
+	 */
+	static final int END_RECORD = Integer.BYTES + Long.BYTES;
+	
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	
+	private MappedByteBuffer chunk;
+	private long chunkStart = 0;
+	
+	private final long startTime;
+	private long records = 0;
+	private boolean closed = false;
+	
+	/**
+	 * Creates a new capture, overwriting any existing file.
+	 * @param path The path of the capture file.
+	 * @throws IOException If the file couldn't be created.
+	 */
+	public PacketCapture(String path) throws IOException {
+		this.file = new RandomAccessFile(path, "rw");
+		this.file.setLength(0);
+		this.channel = file.getChannel();
+		this.chunk = channel.map(MapMode.READ_WRITE, chunkStart, CHUNK_SIZE);
+		this.startTime = System.nanoTime();
+	}
+	
+	/**
+	 * Records a datagram.
+	 * @param time The time the datagram was received at, from {@link System#nanoTime()}.
+	 * @param receiver The id of the receiver the datagram came in through.
+	 * @param source The address of the sender.
+	 * @param port The port of the sender.
+	 * @param data The datagram's data, from its position to its limit, which are left alone.
+	 * @return [<b>void</b>]
+	 */
+	public synchronized void record(long time, int receiver, InetAddress source, int port, ByteBuffer data) {
+		
+		if(closed)
+			return;
+		
+		byte[] ip = source.getAddress();
+		int length = RECORD_HEADER + ip.length + data.remaining();
+		
+		// Move on to the next chunk, leaving a zero length behind and room for the end record.
+		if(chunk.remaining() < length + END_RECORD) {
+			try {
+				chunkStart += CHUNK_SIZE;
+				chunk = channel.map(MapMode.READ_WRITE, chunkStart, CHUNK_SIZE);
+			} catch (IOException e) {
+				return;
+			}
+		}
+		
+		chunk.putInt(length - Integer.BYTES)
+			.putLong(time - startTime)
+			.put((byte) receiver)
+			.put((byte) ip.length)
+			.put(ip)
+			.putInt(port)
+			.put(data.duplicate());
+		
+		records++;
+		
+	}
+	
+	public synchronized long getRecords() {
+		return records;
+	}
+	
+	/**
+	 * Flushes the capture to disk and closes it.
+	 * @return [<b>void</b>]
+	 */
+	public synchronized void close() {
+		if(closed)
+			return;
+		closed = true;
+		chunk.putInt(-1).putLong(System.nanoTime() - startTime);
+		try {
+			chunk.force();
+			channel.close();
+			file.close();
+		} catch (IOException e) {}
+	}
+	
+}
@@ -8,6 +8,11 @@ public class PacketInfo{
 	public int port;
 	public Packet packet;
 	
+	/**
+	 * Whether the packet was sealed with the receiver's session key.
+	 */
+	public boolean sealed = false;
+	
 	public PacketInfo(InetAddress source, int port, Packet packet) {
 		this.source = source;
 		this.port = port;
@@ -0,0 +1,21 @@
+package api.main.src;
+
+/**
+ * Content of a ping packet. A ping with no time starts a new round trip,
+ * otherwise the time is the timestamp of the packet being answered.
+ */
+public class PingMessage {
+	
+	@MessageField(id = 0)
+	public long time;
+	
+	@MessageField(id = 1)
+	public byte counter;
+	
+	/**
+	 * Percentage of the receiver's packets the sender lost.
+	 */
+	@MessageField(id = 2, since = 1)
+	public byte loss;
+	
+}
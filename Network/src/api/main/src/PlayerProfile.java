@@ -0,0 +1,54 @@
+package api.main.src;
+
+/**
+ * Saved state of a player, kept by a {@link PlayerStore} between sessions.
+ * Profiles are immutable so they can be handed to the store's writer while
+ * the game goes on.
+ */
+public class PlayerProfile {
+	
+	public final String username;
+	public final float x, y, z;
+	public final float rotX, rotY, rotZ;
+	public final int health;
+	public final int logins;
+	public final long lastSeen;
+	
+	public PlayerProfile(String username, float x, float y, float z, float rotX, float rotY, float rotZ, 
+			int health, int logins, long lastSeen) {
+		this.username = username;
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		this.rotX = rotX;
+		this.rotY = rotY;
+		this.rotZ = rotZ;
+		this.health = health;
+		this.logins = logins;
+		this.lastSeen = lastSeen;
+	}
+	
+	/**
+	 * Creates the profile of a player from its entity.
+	 * @param username The player's username.
+	 * @param entity The player's entity.
+	 * @param logins The number of times the player logged in.
+	 * @return [{@link PlayerProfile}] The profile.
+	 */
+	public static PlayerProfile of(String username, WorldEntity entity, int logins) {
+		return new PlayerProfile(username, entity.x, entity.y, entity.z, entity.rotX, entity.rotY, entity.rotZ, 
+				entity.health, logins, System.currentTimeMillis());
+	}
+	
+	/**
+	 * Restores the saved state on a player's entity.
+	 * @param entity The entity.
+	 * @return [<b>void</b>]
+	 */
+	public void restore(WorldEntity entity) {
+		entity.setPosition(x, y, z);
+		entity.setRotation(rotX, rotY, rotZ);
+		entity.setHealth(health);
+	}
+	
+}
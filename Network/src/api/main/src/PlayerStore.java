@@ -0,0 +1,284 @@
+package api.main.src;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+/**
+ * Write-behind store of player profiles. Profiles live in memory, so lookups
+ * and saves never wait on the disk; saved profiles are collected and appended
+ * to a local log by a writer thread, several saves of the same player between
+ * two writes costing a single record. The log is replayed when the store is
+ * opened and compacted to one record per player once it grew too much.
+ */
+public class PlayerStore {
+	
+	/**
+	 * Milliseconds between two writes of the saved profiles.
+	 */
+	public static final int WRITE_INTERVAL = 200;
+	
+	/**
+	 * Milliseconds between two saves of the players of a server.
+	 */
+	public static final int SAVE_INTERVAL = 5000;
+	
+	/**
+	 * Compacts the log once it holds this many records per player.
+	 */
+	public static final int COMPACTION_RATIO = 4;
+	
+	private static final int MIN_COMPACTION = 1024;
+	
+	private final File file;
+	private final Map<String, PlayerProfile> profiles = new ConcurrentHashMap<String, PlayerProfile>();
+	private final Map<String, PlayerProfile> dirty = new ConcurrentHashMap<String, PlayerProfile>();
+	
+	private final Thread writer;
+	private DataOutputStream log;
+	private long records = 0;
+	private boolean damaged = false;
+	private volatile boolean running = true;
+	
+	private volatile long written = 0;
+	private volatile long compactions = 0;
+	private volatile long failures = 0;
+	
+	/**
+	 * Opens a store, replaying its log.
+	 * @param file The log, created if it doesn't exist.
+	 * @throws IOException If the log couldn't be opened.
+	 */
+	public PlayerStore(File file) throws IOException {
+		this.file = file;
+		replay();
+		this.log = open(file, true);
+		
+		this.writer = new Thread(this::write, "PlayerStore");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+	
+	/**
+	 * Returns the profile of a player, without touching the disk.
+	 * @param username The player's username.
+	 * @return [{@link PlayerProfile}] The profile, or null for a new player.
+	 */
+	public PlayerProfile get(String username) {
+		return profiles.get(username);
+	}
+	
+	/**
+	 * Saves the profile of a player. It's visible at once and written to the log shortly after.
+	 * @param profile The profile.
+	 * @return [<b>void</b>]
+	 */
+	public void save(PlayerProfile profile) {
+		profiles.put(profile.username, profile);
+		dirty.put(profile.username, profile);
+	}
+	
+	public Collection<PlayerProfile> getProfiles() {
+		return profiles.values();
+	}
+	
+	/**
+	 * @return [<b>int</b>] The number of saved profiles not written yet.
+	 */
+	public int getPending() {
+		return dirty.size();
+	}
+	
+	/**
+	 * @return [<b>long</b>] The number of profiles written to the log.
+	 */
+	public long getWritten() {
+		return written;
+	}
+	
+	public long getCompactions() {
+		return compactions;
+	}
+	
+	/**
+	 * @return [<b>long</b>] The number of writes that failed and were retried.
+	 */
+	public long getFailures() {
+		return failures;
+	}
+	
+	/**
+	 * Writes the remaining profiles and closes the log.
+	 * @return [<b>void</b>]
+	 */
+	public void close() {
+		running = false;
+		LockSupport.unpark(writer);
+		try {
+			writer.join();
+		} catch (InterruptedException e) {}
+	}
+	
+	private void write() {
+		
+		while(running) {
+			LockSupport.parkNanos(WRITE_INTERVAL * 1000000L);
+			flush();
+		}
+		flush();
+		
+		try {
+			log.close();
+		} catch (IOException e) {}
+		
+	}
+	
+	/**
+	 * Appends the saved profiles to the log, compacting it first if needed. A
+	 * failed write can leave part of a record at the end of the log, which would
+	 * hide every record appended after it, so the log is rewritten from memory
+	 * before anything else is appended to it.
+	 */
+	private void flush() {
+		
+		if(dirty.isEmpty() && !damaged)
+			return;
+		
+		try {
+			if(damaged || records > MIN_COMPACTION && records > (long) profiles.size() * COMPACTION_RATIO)
+				compact();
+			damaged = false;
+			
+			for(String username : dirty.keySet()) {
+				
+				// A newer save of the player stays dirty for the next flush.
+				PlayerProfile profile = dirty.get(username);
+				writeRecord(log, profile);
+				dirty.remove(username, profile);
+				records++;
+				written++;
+			}
+			log.flush();
+		} catch (IOException e) {
+			
+			// The profiles taken off the dirty list are still in memory, compacting writes them too.
+			failures++;
+			damaged = true;
+			
+		}
+		
+	}
+	
+	/**
+	 * Rewrites the log with the latest profile of every player and moves it over the old one.
+	 */
+	private void compact() throws IOException {
+		
+		File compacted = new File(file.getPath() + ".tmp");
+		try(FileOutputStream stream = new FileOutputStream(compacted)) {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+			for(PlayerProfile profile : profiles.values())
+				writeRecord(out, profile);
+			out.flush();
+			stream.getFD().sync();
+		}
+		
+		// The old log is replaced whatever was left in its buffer.
+		try {
+			log.close();
+		} catch (IOException e) {}
+		Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		log = open(file, true);
+		records = profiles.size();
+		compactions++;
+		
+	}
+	
+	/**
+	 * Reads the log back, the last record of a player being its profile. A
+	 * record cut short by a crash ends the log and is cut off.
+	 */
+	private void replay() throws IOException {
+		
+		if(!file.exists())
+			return;
+		
+		long valid = 0;
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			while(true) {
+				int length = in.readInt();
+				int checksum = in.readInt();
+				if(length <= 0 || length > 1 << 16)
+					break;
+				
+				byte[] payload = new byte[length];
+				in.readFully(payload);
+				CRC32 crc = new CRC32();
+				crc.update(payload);
+				if((int) crc.getValue() != checksum)
+					break;
+				
+				DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+				PlayerProfile profile = new PlayerProfile(record.readUTF(), 
+						record.readFloat(), record.readFloat(), record.readFloat(), 
+						record.readFloat(), record.readFloat(), record.readFloat(), 
+						record.readInt(), record.readInt(), record.readLong());
+				profiles.put(profile.username, profile);
+				records++;
+				valid += Integer.BYTES * 2 + length;
+			}
+		} catch (EOFException e) {}
+		
+		// Appending after a partial record would hide every later one.
+		if(file.length() > valid)
+			try(RandomAccessFile truncated = new RandomAccessFile(file, "rw")) {
+				truncated.setLength(valid);
+			}
+		
+	}
+	
+	private static DataOutputStream open(File file, boolean append) throws IOException {
+		return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, append)));
+	}
+	
+	private static void writeRecord(DataOutputStream out, PlayerProfile profile) throws IOException {
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream record = new DataOutputStream(bytes);
+		record.writeUTF(profile.username);
+		record.writeFloat(profile.x);
+		record.writeFloat(profile.y);
+		record.writeFloat(profile.z);
+		record.writeFloat(profile.rotX);
+		record.writeFloat(profile.rotY);
+		record.writeFloat(profile.rotZ);
+		record.writeInt(profile.health);
+		record.writeInt(profile.logins);
+		record.writeLong(profile.lastSeen);
+		
+		byte[] payload = bytes.toByteArray();
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		out.writeInt(payload.length);
+		out.writeInt((int) crc.getValue());
+		out.write(payload);
+		
+	}
+	
+}
@@ -0,0 +1,11 @@
+package api.main.src;
+
+/**
+ * Content of a port redirect packet.
+ */
+public class PortMessage {
+	
+	@MessageField(id = 0)
+	public int port;
+	
+}
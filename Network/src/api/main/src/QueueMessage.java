@@ -0,0 +1,17 @@
+package api.main.src;
+
+/**
+ * Content of a queue packet, telling a client waiting to be let in where it stands.
+ */
+public class QueueMessage {
+	
+	/**
+	 * Position of the client in the login queue, 1 being the next one let in.
+	 */
+	@MessageField(id = 0)
+	public int position;
+	
+	@MessageField(id = 1)
+	public int waiting;
+	
+}
@@ -1,11 +1,13 @@
 package api.main.src;
 
+import java.security.Key;
 import java.security.KeyFactory;
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.security.interfaces.RSAKey;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
 
@@ -91,6 +93,18 @@ public class RSA {
 		
 	}
 	
+	/**
+	 * Returns the length of the data encrypted with a key. RSA always encrypts
+	 * to the size of the key's modulus.
+	 * @param key The key.
+	 * @return [<b>int</b>] The length of encrypted data in bytes, or -1 if the key isn't an RSA key.
+	 */
+	public static int blockLength(Key key) {
+		if(!(key instanceof RSAKey))
+			return -1;
+		return (((RSAKey) key).getModulus().bitLength() + 7) / 8;
+	}
+	
 	/**
 	 * Creates an RSA public key from its encoded byte array format.
 	 * @return {@link PublicKey} The public key.
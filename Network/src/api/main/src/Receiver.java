@@ -1,39 +1,53 @@
 package api.main.src;
 
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.net.SocketException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.security.PrivateKey;
-import java.util.Arrays;
 import java.util.function.Consumer;
 
+import javax.crypto.SecretKey;
+
 public class Receiver extends Thread{
 	
-	private static final int BUFFER_LENGTH = 1024;
-	private static final int TIMEOUT = 0;
+	static final int BUFFER_LENGTH = 1024;
 	
 	private int port;
 	private PrivateKey key;
+	private int encryptedLength;
+	private volatile SecretKey sessionKey;
+	
+	private volatile PacketCapture capture;
+	private byte captureId;
 	
-	private DatagramSocket socket;
+	private Transport socket;
 	private Consumer<PacketInfo> callback;
 	
+	/**
+	 * Buffers datagrams are received into and opened into, reused for every
+	 * datagram. Packets are read from them in place, so a packet's content is
+	 * only valid until its callback returns unless it's copied out.
+	 */
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_LENGTH);
+	private final ByteBuffer opened = ByteBuffer.allocate(BUFFER_LENGTH);
+	
 	private volatile boolean running = false;
 	
 	public Receiver(PrivateKey key) {
-		this.key = key;
-		try {this.socket = new DatagramSocket();
-			 this.port = socket.getLocalPort();
-			 this.socket.setSoTimeout(TIMEOUT);} 
-		catch (SocketException e) {this.socket = null;e.printStackTrace();}
+		this(TransportFactory.UDP, 0, key);
 	}
 	
 	public Receiver(int port, PrivateKey key) {
-		this.port = port;
+		this(TransportFactory.UDP, port, key);
+	}
+	
+	public Receiver(TransportFactory transport, int port, PrivateKey key) {
 		this.key = key;
-		try {this.socket = new DatagramSocket(this.port);
-			 this.socket.setSoTimeout(TIMEOUT);} 
-		catch (SocketException e) {this.socket = null;}
+		this.encryptedLength = RSA.blockLength(key);
+		try {this.socket = transport.open(port);
+			 this.port = socket.getLocalPort();} 
+		catch (IOException e) {this.socket = null;e.printStackTrace();}
 	}
 	
 	public Receiver withCallback(Consumer<PacketInfo> callback) {
@@ -41,6 +55,26 @@ public class Receiver extends Thread{
 		return this;
 	}
 	
+	/**
+	 * Sets the session key used to open sealed packets.
+	 * @param sessionKey The session key.
+	 * @return [<b>void</b>]
+	 */
+	public void setSessionKey(SecretKey sessionKey) {
+		this.sessionKey = sessionKey;
+	}
+	
+	/**
+	 * Records every datagram received into a capture.
+	 * @param capture The capture to record into.
+	 * @param id The id recorded along with the datagrams to identify this receiver.
+	 * @return [<b>void</b>]
+	 */
+	public void setCapture(PacketCapture capture, int id) {
+		this.captureId = (byte) id;
+		this.capture = capture;
+	}
+	
 	@Override
 	public void start() {
 		if(running) 
@@ -52,6 +86,8 @@ public class Receiver extends Thread{
 	
 	public void halt() {
 		this.running = false;
+		if(socket != null)
+			socket.close();
 	}
 	
 	public void run() {
@@ -61,31 +97,20 @@ public class Receiver extends Thread{
 			try {
 				
 				// Receive the next packet.
-				DatagramPacket dp = new DatagramPacket(new byte[BUFFER_LENGTH], BUFFER_LENGTH);
-				socket.receive(dp);
-				
-				// Extract the packet data.
-				byte[] data = extractData(dp);
-				
-				// Packet object.
-				Packet packet = null;
+				buffer.clear();
+				InetSocketAddress source = socket.receive(buffer);
+				buffer.flip();
 				
-				try {
-					
-					// Decrypt the packet.
-					byte[] decrypted = RSA.decrypt(key, data);
-					packet = Packet.fromData(decrypted);
+				// Record the raw datagram before anything else.
+				if(capture != null)
+					capture.record(System.nanoTime(), captureId, source.getAddress(), source.getPort(), buffer);
 				
-				}catch(Exception e) {
-					
-					// Simply read the packet if it isn't encrypted.
-					packet = Packet.fromData(data);
-					
-				}
+				PacketInfo info = decode(source.getAddress(), source.getPort(), buffer);
+				Packet packet = info.packet;
 				
 				// Add the packet to the queue.
 				if(packet != null && callback != null);
-					callback.accept(new PacketInfo(dp.getAddress(), dp.getPort(), packet));
+					callback.accept(info);
 					//queue.append(dp.getAddress(), dp.getPort(), packet);
 				
 			} catch (Exception e) {
@@ -99,11 +124,69 @@ public class Receiver extends Thread{
 		
 	}
 	
-	private byte[] extractData(DatagramPacket packet) {
-		return Arrays.copyOf(packet.getData(), packet.getLength());
+	/**
+	 * Reads a raw datagram, opening or decrypting it if needed.
+	 * @param source The address of the sender.
+	 * @param port The port of the sender.
+	 * @param data The datagram's data.
+	 * @return [{@link PacketInfo}] The packet and where it came from.
+	 */
+	public PacketInfo decode(InetAddress source, int port, byte[] data) {
+		return decode(source, port, ByteBuffer.wrap(data));
+	}
+	
+	/**
+	 * Reads a raw datagram, opening or decrypting it if needed. Sealed packets are
+	 * opened into this receiver's buffer, so only the receiving thread may call it.
+	 * @param source The address of the sender.
+	 * @param port The port of the sender.
+	 * @param data The datagram, from its position to its limit, backed by an array.
+	 * @return [{@link PacketInfo}] The packet and where it came from.
+	 */
+	public PacketInfo decode(InetAddress source, int port, ByteBuffer data) {
+		
+		// Packet object.
+		Packet packet = null;
+		
+		// Open the packet if it was sealed with our session key.
+		opened.clear();
+		boolean sealed = Seal.open(sessionKey, data, opened);
+		if(sealed) {
+			
+			opened.flip();
+			packet = Packet.fromData(opened);
+			
+		}else if(data.remaining() == encryptedLength) {
+			
+			try {
+				
+				// Decrypt the packet.
+				byte[] encrypted = new byte[data.remaining()];
+				data.duplicate().get(encrypted);
+				byte[] decrypted = RSA.decrypt(key, encrypted);
+				packet = Packet.fromData(decrypted);
+			
+			}catch(Exception e) {
+				
+				// Simply read the packet if it isn't encrypted.
+				packet = Packet.fromData(data);
+				
+			}
+			
+		}else {
+			
+			// Only data of the key's size can be encrypted with it, don't waste a decryption on the rest.
+			packet = Packet.fromData(data);
+			
+		}
+		
+		PacketInfo info = new PacketInfo(source, port, packet);
+		info.sealed = sealed;
+		return info;
+		
 	}
 	
-	public DatagramSocket getSocket() {
+	public Transport getSocket() {
 		return socket;
 	}
 	
@@ -0,0 +1,167 @@
+package api.main.src;
+
+import java.net.InetAddress;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Republishes the world of a server to spectators. The relay subscribes once
+ * to the server, which sends it the whole state every tick, and serves
+ * spectators from its own server with a broadcast delay and an area of
+ * interest around each spectator's camera. However many spectators watch,
+ * the authoritative server only ever sends to the relay.
+ */
+public class Relay {
+	
+	/**
+	 * Default broadcast delay, in milliseconds.
+	 */
+	public static final int DEFAULT_DELAY = 2000;
+	
+	/**
+	 * Default radius of the spectators' area of interest.
+	 */
+	public static final float DEFAULT_RADIUS = 150;
+	
+	/**
+	 * State received from the server, held until its broadcast time.
+	 */
+	private static class Delayed{
+		private final long time;
+		private final WorldSnapshot snapshot;
+		
+		private Delayed(long time, WorldSnapshot snapshot) {
+			this.time = time;
+			this.snapshot = snapshot;
+		}
+	}
+	
+	private final Client upstream;
+	private final Server spectators;
+	private final World world = new World();
+	private final BandwidthScheduler interest = new BandwidthScheduler().withRadius(DEFAULT_RADIUS);
+	private final ConcurrentLinkedQueue<Delayed> pending = new ConcurrentLinkedQueue<Delayed>();
+	
+	private volatile int delay = DEFAULT_DELAY;
+	
+	/**
+	 * Creates a relay.
+	 * @param upstream The client subscribing to the server.
+	 * @param spectators The server the spectators connect to. Its world, feed and bandwidth are set by the relay.
+	 * @param clusterKey The relayed server's cluster key.
+	 */
+	public Relay(Client upstream, Server spectators, SecretKey clusterKey) {
+		this.upstream = upstream.withSubscription(clusterKey).withStateCallback(this::receive);
+		this.spectators = spectators.withWorld(world).withFeed(this::feed).withBandwidth(interest);
+	}
+	
+	/**
+	 * Sets how long the state is held before the spectators get it.
+	 * @param delay The delay in milliseconds.
+	 * @return [{@link Relay}] This relay.
+	 */
+	public Relay withDelay(int delay) {
+		if(delay < 0)
+			throw new RuntimeException("Negative delay specified.");
+		this.delay = delay;
+		return this;
+	}
+	
+	/**
+	 * Sets the radius of the spectators' area of interest.
+	 * @param radius The radius in world units, or 0 to send every entity.
+	 * @return [{@link Relay}] This relay.
+	 */
+	public Relay withRadius(float radius) {
+		interest.withRadius(radius);
+		return this;
+	}
+	
+	/**
+	 * Sets the bandwidth budget of each spectator.
+	 * @param budget The budget in bytes per tick.
+	 * @return [{@link Relay}] This relay.
+	 */
+	public Relay withBudget(int budget) {
+		interest.withBudget(budget);
+		return this;
+	}
+	
+	/**
+	 * Opens the spectators' server and subscribes to the relayed one.
+	 * @return [<b>void</b>]
+	 */
+	public void start() {
+		spectators.init().start();
+		upstream.start();
+	}
+	
+	public void stop() {
+		upstream.stopServer();
+		spectators.stopServer();
+	}
+	
+	/**
+	 * @return [{@link World}] The delayed copy of the relayed world.
+	 */
+	public World getWorld() {
+		return world;
+	}
+	
+	/**
+	 * @return [<b>int</b>] The number of received states waiting for their broadcast time.
+	 */
+	public int getPending() {
+		return pending.size();
+	}
+	
+	private void receive(WorldSnapshot snapshot) {
+		pending.add(new Delayed(System.currentTimeMillis() + delay, snapshot));
+	}
+	
+	/**
+	 * Copies the states that are due into the spectators' world, called on every tick of their server.
+	 */
+	private void feed(World world) {
+		long now = System.currentTimeMillis();
+		Delayed next;
+		while((next = pending.peek()) != null && next.time <= now) {
+			pending.poll();
+			world.mirror(next.snapshot);
+		}
+	}
+	
+	/**
+	 * Runs a relay. The cluster key is read in base 64 from the <i>cluster.key</i> property.
+	 * @param args The relayed server's host and port, then optionally the spectators' port and the delay.
+	 */
+	public static void main(String[] args) throws Exception {
+		
+		String key = System.getProperty("cluster.key");
+		if(args.length < 2 || key == null) {
+			System.out.println("Usage: java -Dcluster.key=<base 64 key> Relay <host> <port> [spectator port] [delay]");
+			return;
+		}
+		
+		SecretKey clusterKey = Seal.toKey(Base64.getDecoder().decode(key));
+		if(clusterKey == null) {
+			System.out.println("Invalid cluster key.");
+			return;
+		}
+		
+		int port = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+		Client upstream = new Client(InetAddress.getByName(args[0]), Integer.parseInt(args[1]), "relay");
+		Server spectators = new Server().withThreads(1).withPortRange(PortRange.create().from(port).to(port));
+		
+		Relay relay = new Relay(upstream, spectators, clusterKey);
+		if(args.length > 3)
+			relay.withDelay(Integer.parseInt(args[3]));
+		relay.start();
+		
+		System.out.println("Spectators can connect on port " + spectators.getPort() + ".");
+		
+	}
+	
+}
@@ -0,0 +1,207 @@
+package api.main.src;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+
+/**
+ * Feeds a {@link PacketCapture} back through a server, at the original speed
+ * or faster, and measures how long the server takes to process packets and
+ * run its ticks. The replaying server isn't started, the replayer runs its
+ * ticks itself so packets and ticks are interleaved the same way every time.
+ * The server's clock follows the capture's timestamps instead of the system's,
+ * and its replies go to a {@link NullTransport}, so a replay plays out the
+ * same whatever the speed.
+ * 
+ * The server must use the same key pair (and cluster key, if any) as the
+ * server the capture was recorded on, otherwise encrypted packets can't be read.
+ */
+public class Replayer {
+	
+	private final Server server;
+	private final String path;
+	private double speed = 1.0;
+	
+	/**
+	 * Time of the capture being replayed, in milliseconds.
+	 */
+	private volatile long clock = 0;
+	
+	/**
+	 * Results of a replay.
+	 */
+	public static class Report{
+		public long packets = 0;
+		public long[] packetNanos = new long[1024];
+		public int ticks = 0;
+		public long[] tickNanos = new long[1024];
+		public long duration = 0;
+		
+		private void addPacket(long nanos) {
+			if(packets == packetNanos.length)
+				packetNanos = Arrays.copyOf(packetNanos, packetNanos.length * 2);
+			packetNanos[(int) packets++] = nanos;
+		}
+		
+		private void addTick(long nanos) {
+			if(ticks == tickNanos.length)
+				tickNanos = Arrays.copyOf(tickNanos, tickNanos.length * 2);
+			tickNanos[ticks++] = nanos;
+		}
+		
+		public String toString() {
+			return "Replayed " + packets + " packets and " + ticks + " ticks in " + duration / 1000000 + " ms\n"
+					+ "\tpacket : " + describe(packetNanos, (int) packets) + "\n"
+					+ "\ttick   : " + describe(tickNanos, ticks) + "\n";
+		}
+		
+		private static String describe(long[] values, int count) {
+			if(count == 0)
+				return "-";
+			long[] sorted = Arrays.copyOf(values, count);
+			Arrays.sort(sorted);
+			long total = 0;
+			for(long value : sorted)
+				total += value;
+			return String.format("mean %d ns, p50 %d ns, p99 %d ns, max %d ns", 
+					total / count, sorted[count / 2], sorted[(int)(count * 0.99)], sorted[count - 1]);
+		}
+	}
+	
+	/**
+	 * Creates a replayer.
+	 * @param server The server to replay the capture through. It mustn't be initialized
+	 * yet, the replayer sets its clock and transport and initializes it.
+	 * @param path The path of the capture file.
+	 */
+	public Replayer(Server server, String path) {
+		this.server = server.withTransport(TransportFactory.NULL).withClock(() -> clock).init();
+		this.path = path;
+	}
+	
+	/**
+	 * Sets the replay speed.
+	 * @param speed How many times faster than recorded to replay, 0 to replay as fast as possible.
+	 * @return [{@link Replayer}] This replayer.
+	 */
+	public Replayer atSpeed(double speed) {
+		if(speed < 0)
+			throw new RuntimeException("Negative replay speed specified.");
+		this.speed = speed;
+		return this;
+	}
+	
+	/**
+	 * Replays the capture, then stops the server's workers.
+	 * @return [{@link Report}] The processing times measured during the replay.
+	 * @throws IOException If the capture couldn't be read.
+	 */
+	public Report replay() throws IOException {
+		
+		Report report = new Report();
+		WorkerThread[] workers = server.getWorkers();
+		
+		long start = System.nanoTime();
+		long nextTick = Server.TICK_LENGTH;
+		long end = 0;
+		boolean ended = false;
+		
+		try(RandomAccessFile file = new RandomAccessFile(path, "r"); FileChannel channel = file.getChannel()) {
+			
+			for(long chunkStart = 0; chunkStart < channel.size() && !ended; chunkStart += PacketCapture.CHUNK_SIZE) {
+				
+				MappedByteBuffer chunk = channel.map(MapMode.READ_ONLY, chunkStart, 
+						Math.min(PacketCapture.CHUNK_SIZE, channel.size() - chunkStart));
+				
+				while(chunk.remaining() >= Integer.BYTES) {
+					
+					int length = chunk.getInt();
+					if(length == 0)
+						break;
+					
+					// The capture was closed, its end time follows.
+					if(length < 0) {
+						end = Math.max(end, chunk.getLong());
+						ended = true;
+						break;
+					}
+					
+					long time = chunk.getLong();
+					int receiver = chunk.get();
+					byte[] ip = new byte[chunk.get()];
+					chunk.get(ip);
+					int port = chunk.getInt();
+					byte[] data = new byte[length - PacketCapture.RECORD_HEADER + Integer.BYTES - ip.length];
+					chunk.get(data);
+					
+					// Run the ticks that happened before the packet was received.
+					nextTick = tickUntil(time, nextTick, start, report);
+					end = time;
+					
+					waitUntil(start, time);
+					clock = time / 1000000;
+					
+					WorkerThread worker = workers[receiver >= 0 && receiver < workers.length ? receiver : 0];
+					long begin = System.nanoTime();
+					try {
+						server.processPacket(worker.decode(InetAddress.getByAddress(ip), port, data), worker);
+					}catch(Exception e) {}
+					report.addPacket(System.nanoTime() - begin);
+					
+				}
+				
+			}
+			
+		}
+		
+		// Keep ticking until the capture ended, a capture that wasn't closed ends with its last packet.
+		tickUntil(end, nextTick, start, report);
+		
+		report.duration = System.nanoTime() - start;
+		for(WorkerThread worker : workers)
+			worker.halt();
+		return report;
+		
+	}
+	
+	/**
+	 * Runs the ticks due up to a time of the capture.
+	 * @return [<b>long</b>] The time of the next tick.
+	 */
+	private long tickUntil(long time, long nextTick, long start, Report report) {
+		while(nextTick <= time) {
+			waitUntil(start, nextTick);
+			clock = nextTick / 1000000;
+			tick(report);
+			nextTick += Server.TICK_LENGTH;
+		}
+		return nextTick;
+	}
+	
+	private void tick(Report report) {
+		long begin = System.nanoTime();
+		server.tickClients();
+		server.tickWorld();
+		report.addTick(System.nanoTime() - begin);
+	}
+	
+	private void waitUntil(long start, long time) {
+		if(speed == 0)
+			return;
+		
+		long target = start + (long)(time / speed);
+		long remaining;
+		while((remaining = target - System.nanoTime()) > 0) {
+			if(remaining > 2000000) {
+				try {
+					Thread.sleep(1);
+				} catch (InterruptedException e) {}
+			}
+		}
+	}
+	
+}
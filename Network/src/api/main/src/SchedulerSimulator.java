@@ -0,0 +1,102 @@
+package api.main.src;
+
+import java.util.Random;
+
+/**
+ * Runs the {@link BandwidthScheduler} offline on a simulated world and reports
+ * how stale the entity updates of a client get for several budgets, by
+ * distance to its player. Used to tune the scheduler's weights.
+ * 
+ * Arguments: [entities] [ticks] [distance scale] [velocity weight]
+ */
+public class SchedulerSimulator {
+	
+	private static final int[] BUDGETS = {250, 500, 1000, 2000, 4000};
+	private static final float[] BANDS = {25, 100, 250, Float.MAX_VALUE};
+	private static final float WORLD_SIZE = 500;
+	
+	public static void main(String[] args) {
+		
+		int numEntities = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+		int ticks = args.length > 1 ? Integer.parseInt(args[1]) : World.TICKS_PER_SECOND * 30;
+		float distanceScale = args.length > 2 ? Float.parseFloat(args[2]) : 50;
+		float velocityWeight = args.length > 3 ? Float.parseFloat(args[3]) : 4;
+		
+		System.out.printf("%d entities, %d ticks, distance scale %.1f, velocity weight %.1f%n", 
+				numEntities, ticks, distanceScale, velocityWeight);
+		System.out.printf("%8s %10s %10s", "budget", "bytes/t", "updates/t");
+		for(float band : BANDS)
+			System.out.printf(" %17s", band == Float.MAX_VALUE ? "rest" : "< " + (int) band);
+		System.out.println();
+		
+		for(int budget : BUDGETS)
+			simulate(numEntities, ticks, new BandwidthScheduler()
+					.withBudget(budget)
+					.withDistanceScale(distanceScale)
+					.withVelocityWeight(velocityWeight));
+		
+	}
+	
+	private static void simulate(int numEntities, int ticks, BandwidthScheduler scheduler) {
+		
+		// Same world for every budget.
+		Random random = new Random(42);
+		World world = new World();
+		WorldEntity player = world.spawn(WorldEntity.PLAYER);
+		for(int i = 0; i < numEntities; i++) {
+			WorldEntity monster = world.spawn(WorldEntity.MONSTER);
+			monster.setPosition((random.nextFloat() - 0.5f) * WORLD_SIZE, 0, (random.nextFloat() - 0.5f) * WORLD_SIZE);
+		}
+		
+		long[] lastSent = new long[numEntities + 2];
+		double[] ageSum = new double[BANDS.length];
+		long[] ageMax = new long[BANDS.length];
+		long[] samples = new long[BANDS.length];
+		
+		BandwidthScheduler.Schedule schedule = new BandwidthScheduler.Schedule();
+		
+		for(int t = 0; t < ticks; t++) {
+			
+			// A third of the monsters wander around, the player walks in circles.
+			for(WorldEntity entity : world.getEntities())
+				if(entity.getKind() == WorldEntity.MONSTER && entity.getId() % 3 == 0 && random.nextInt(30) == 0)
+					entity.setVelocity((random.nextFloat() - 0.5f) * 0.4f, 0, (random.nextFloat() - 0.5f) * 0.4f);
+			player.setInput(WorldEntity.FORWARD, (t / 4) % 360);
+			
+			world.tick();
+			
+			long tick = world.getTick();
+			scheduler.begin(world);
+			scheduler.schedule(tick, schedule, player, state -> {
+				for(WorldEntity sent : WorldSnapshot.fromData(state).entities)
+					lastSent[sent.getId()] = tick;
+			});
+			
+			// Only measure once every entity had a chance to be sent.
+			if(t < World.TICKS_PER_SECOND)
+				continue;
+			
+			for(WorldEntity entity : world.getEntities()) {
+				if(entity == player)
+					continue;
+				float dx = entity.getX() - player.getX(), dz = entity.getZ() - player.getZ();
+				float distance = (float) Math.sqrt(dx * dx + dz * dz);
+				int band = 0;
+				while(distance >= BANDS[band])
+					band++;
+				long age = tick - lastSent[entity.getId()];
+				ageSum[band] += age;
+				ageMax[band] = Math.max(ageMax[band], age);
+				samples[band]++;
+			}
+			
+		}
+		
+		System.out.printf("%8d %10.1f %10.1f", scheduler.getBudget(), schedule.getBytesPerTick(), schedule.getUpdatesPerTick());
+		for(int band = 0; band < BANDS.length; band++)
+			System.out.printf(" %8.1f avg %4d max", samples[band] == 0 ? 0 : ageSum[band] / samples[band], ageMax[band]);
+		System.out.println();
+		
+	}
+	
+}
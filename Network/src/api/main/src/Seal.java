@@ -0,0 +1,177 @@
+package api.main.src;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Symmetric sealing of serialized packets using AES-GCM with a per-session key.
+ * Much cheaper than RSA, which makes it usable for per-recipient encryption of
+ * packets that are serialized once and sent to many clients.
+ */
+public class Seal {
+	
+	/**
+	 * First byte of a sealed datagram. Plain packets always start with a zero byte.
+	 */
+	public static final byte MAGIC = (byte) 0xAE;
+	
+	public static final int KEY_SIZE = 128;
+	public static final int NONCE_LENGTH = 12;
+	public static final int TAG_LENGTH = 16;
+	public static final int OVERHEAD = 1 + NONCE_LENGTH + TAG_LENGTH;
+	
+	private static final String AES = "AES";
+	private static final String AES_GCM = "AES/GCM/NoPadding";
+	
+	private static final SecureRandom random = new SecureRandom();
+	
+	private static final ThreadLocal<Cipher> ciphers = ThreadLocal.withInitial(() -> {
+		try {
+			return Cipher.getInstance(AES_GCM);
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	});
+	
+	/**
+	 * Nonce source for a single key and sender. A nonce is never reused for a key
+	 * since the counter only goes up, each sender uses its own prefix and the
+	 * counter starts at a random point so a restarted sender doesn't repeat itself.
+	 */
+	public static class Nonces{
+		private final byte[] prefix = new byte[NONCE_LENGTH - Long.BYTES];
+		private final AtomicLong counter = new AtomicLong(random.nextLong() >>> 1);
+		
+		public Nonces(byte sender) {
+			random.nextBytes(prefix);
+			prefix[0] = sender;
+		}
+		
+		private void next(byte[] nonce) {
+			System.arraycopy(prefix, 0, nonce, 0, prefix.length);
+			long count = counter.incrementAndGet();
+			for(int i = NONCE_LENGTH - 1; i >= prefix.length; i--, count >>>= 8)
+				nonce[i] = (byte) count;
+		}
+	}
+	
+	/**
+	 * Generates a new session key.
+	 * @return [{@link SecretKey}] The generated key.
+	 */
+	public static SecretKey generateKey() {
+		try {
+			KeyGenerator keygen = KeyGenerator.getInstance(AES);
+			keygen.init(KEY_SIZE, random);
+			return keygen.generateKey();
+		} catch (Exception e) {return null;}
+	}
+	
+	/**
+	 * Creates a session key from its encoded byte array format.
+	 * @return [{@link SecretKey}] The session key.
+	 */
+	public static SecretKey toKey(byte[] bytes) {
+		if(bytes == null || bytes.length != KEY_SIZE / 8)
+			return null;
+		return new SecretKeySpec(bytes, AES);
+	}
+	
+	/**
+	 * Returns whether or not a datagram was sealed.
+	 * @param data The datagram's data.
+	 * @return [<b>boolean</b>] True if the datagram looks sealed, false otherwise.
+	 */
+	public static boolean isSealed(byte[] data) {
+		return data != null && data.length > OVERHEAD && data[0] == MAGIC;
+	}
+	
+	/**
+	 * Returns whether or not a datagram was sealed.
+	 * @param data The datagram, from its position to its limit.
+	 * @return [<b>boolean</b>] True if the datagram looks sealed, false otherwise.
+	 */
+	public static boolean isSealed(ByteBuffer data) {
+		return data.remaining() > OVERHEAD && data.get(data.position()) == MAGIC;
+	}
+	
+	/**
+	 * Seals a serialized packet into a buffer.
+	 * @param key The session key.
+	 * @param nonces The nonce source of the key.
+	 * @param packet The serialized packet.
+	 * @param out The buffer to write the sealed datagram into.
+	 * @return [<b>boolean</b>] True if the packet was sealed, false otherwise.
+	 */
+	public static boolean seal(SecretKey key, Nonces nonces, ByteBuffer packet, ByteBuffer out) {
+		try {
+			Cipher cipher = ciphers.get();
+			byte[] nonce = new byte[NONCE_LENGTH];
+			nonces.next(nonce);
+			
+			out.put(MAGIC).put(nonce);
+			cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+			cipher.doFinal(packet, out);
+			return true;
+		}catch(Exception e) {return false;}
+	}
+	
+	/**
+	 * Seals a serialized packet.
+	 * @param key The session key.
+	 * @param nonces The nonce source of the key.
+	 * @param packet The serialized packet.
+	 * @return [<b>byte[]</b>] The sealed datagram, or null if sealing failed.
+	 */
+	public static byte[] seal(SecretKey key, Nonces nonces, byte[] packet) {
+		ByteBuffer out = ByteBuffer.allocate(packet.length + OVERHEAD);
+		return seal(key, nonces, ByteBuffer.wrap(packet), out) ? out.array() : null;
+	}
+	
+	/**
+	 * Opens a sealed datagram.
+	 * @param key The session key.
+	 * @param data The sealed datagram.
+	 * @return [<b>byte[]</b>] The serialized packet, or null if the datagram couldn't be authenticated.
+	 */
+	public static byte[] open(SecretKey key, byte[] data) {
+		if(key == null || !isSealed(data))
+			return null;
+		try {
+			Cipher cipher = ciphers.get();
+			cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, data, 1, NONCE_LENGTH));
+			return cipher.doFinal(data, 1 + NONCE_LENGTH, data.length - 1 - NONCE_LENGTH);
+		}catch(Exception e) {return null;}
+	}
+	
+	/**
+	 * Opens a sealed datagram into a buffer.
+	 * @param key The session key.
+	 * @param data The sealed datagram, backed by an array. Left where it was if it can't be opened.
+	 * @param out The buffer to write the serialized packet into.
+	 * @return [<b>boolean</b>] True if the datagram was authenticated and opened, false otherwise.
+	 */
+	public static boolean open(SecretKey key, ByteBuffer data, ByteBuffer out) {
+		if(key == null || !isSealed(data))
+			return false;
+		int start = data.position();
+		try {
+			Cipher cipher = ciphers.get();
+			cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, data.array(), data.arrayOffset() + start + 1, NONCE_LENGTH));
+			data.position(start + 1 + NONCE_LENGTH);
+			cipher.doFinal(data, out);
+			return true;
+		}catch(Exception e) {
+			data.position(start);
+			return false;
+		}
+	}
+	
+}
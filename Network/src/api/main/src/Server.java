@@ -1,23 +1,45 @@
 package api.main.src;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.SocketException;
 import java.nio.ByteBuffer;
 import java.security.KeyPair;
 import java.security.PublicKey;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+import javax.crypto.SecretKey;
 
 public class Server extends Thread{
 	
 	public static final int KEY_SIZE = 4200;
-	private static final int MAX_CLIENTS = 20;
+	private static final int INITIAL_CLIENTS = 20;
 	
 	private static final int TIMEOUT = 5000;
 	
+	static final long TICK_LENGTH = 1000000000 / World.TICKS_PER_SECOND;
+	private static final int MAX_CATCH_UP = 5;
+	
+	private static final int HANDOFF_RETRY = 500;
+	
+	/**
+	 * Time in milliseconds a handoff is trusted for after being sent, older ones are replays.
+	 * The servers of a cluster are expected to agree on the time well within it.
+	 */
+	private static final int HANDOFF_MAX_AGE = TIMEOUT;
+	private static final int LOCKSTEP_STOP_REPEATS = 3;
+	
+	private static final int TIMER_SLOTS = 512;
+	private static final int TIMER_RESOLUTION = 10;
+	
 	
 	/**
 	 * Client struct for the server to keep track of.
@@ -26,8 +48,19 @@ public class Server extends Thread{
 		protected String username = null;
 		protected InetAddress ip;
 		protected int port, ping = 0;
-		protected long lastPacket;
+		protected volatile long lastPacket;
+		protected volatile boolean connected = true;
 		protected PublicKey key;
+		protected SecretKey sessionKey;
+		protected Seal.Nonces nonces = new Seal.Nonces((byte) 0);
+		protected WorldEntity entity;
+		protected final InputBuffer inputs = new InputBuffer();
+		protected final BandwidthScheduler.Schedule schedule = new BandwidthScheduler.Schedule();
+		protected final CongestionControl congestion = new CongestionControl();
+		protected volatile Zone handoff;
+		protected volatile Zone handedFrom;
+		protected volatile boolean subscriber = false;
+		private InetSocketAddress address;
 		
 		protected SClient(InetAddress ip, int port, PublicKey key, long lastPacket) {
 			this.ip = ip;
@@ -36,26 +69,56 @@ public class Server extends Thread{
 			this.lastPacket = lastPacket;
 		}
 		
-		public void updateLatency(Packet p) {
-			if(p.getType() != Packet.PING)
-				return;
-			try {
-				this.ping = (int)(System.currentTimeMillis() - ((ByteBuffer)ByteBuffer.wrap(p.getContent()).rewind()).getLong()) / 2;
-			}catch(Exception e) {}
+		public InetSocketAddress getAddress() {
+			if(address == null)
+				address = new InetSocketAddress(ip, port);
+			return address;
+		}
+		
+		public void updateLatency(long sent, long now) {
+			this.ping = (int)(now - sent) / 2;
 		}
 		
-		public void resetTimer() {
-			this.lastPacket = System.currentTimeMillis();
+		public void resetTimer(long now) {
+			this.lastPacket = now;
 		}
 		
 		public String toString() {
-			return "[" + ip.toString().substring(1) + ":" + port + "] " + username + " (" + ping + "ms)";
+			return "[" + ip.toString().substring(1) + ":" + port + "] " + username + " (" + congestion + ")";
 		}
 	}
 	
 	
 	public Server() throws SocketException{
-		this.keys = RSA.generateKeyPair(KEY_SIZE);
+		this(RSA.generateKeyPair(KEY_SIZE));
+	}
+	
+	/**
+	 * Creates a server using an existing key pair. Every server of a cluster must
+	 * use the same key pair so clients can be handed off between them.
+	 * @param keys The server's key pair, or null to generate one.
+	 */
+	public Server(KeyPair keys) {
+		this.keys = keys != null ? keys : RSA.generateKeyPair(KEY_SIZE);
+		
+		this.messages = new MessageRegistry<WorkerThread>()
+				.onRaw(Packet.CONNECT, this::processConnectRequest)
+				.onRaw(Packet.LOGIN, (info, worker) -> processLoginPacket(info, worker.socket))
+				.onRaw(Packet.INVALID, (info, worker) -> processInvalidPacket(info, worker.socket))
+				.onRaw(Packet.HANDOFF, this::processHandoffPacket)
+				.on(Packet.PING, PingMessage.class, this::processPingPacket)
+				.on(Packet.INPUT, InputMessage.class, this::processInputPacket)
+				.on(Packet.HANDOFF_ACK, AddressMessage.class, this::processHandoffAckPacket)
+				.on(Packet.HANDOFF_DONE, AddressMessage.class, this::processHandoffDonePacket)
+				.on(Packet.PORT_REDIRECT, PortMessage.class, null)
+				.on(Packet.ZONE_REDIRECT, AddressMessage.class, null)
+				.on(Packet.LOCKSTEP_INPUT, LockstepInputMessage.class, this::processLockstepInputPacket)
+				.on(Packet.LOCKSTEP_START, LockstepStartMessage.class, null)
+				.on(Packet.LOCKSTEP_TICK, LockstepTickMessage.class, null)
+				.on(Packet.LOCKSTEP_STOP, LockstepStopMessage.class, this::processLockstepStopPacket)
+				.onRaw(Packet.SUBSCRIBE, this::processSubscribePacket)
+				.on(Packet.QUEUE, QueueMessage.class, null)
+				.otherwise(this::processUnknownPacket);
 	}
 	
 	public Server withThreads(int numThreads) {
@@ -65,32 +128,345 @@ public class Server extends Thread{
 		return this;
 	}
 	
+	public Server withWorld(World world) {
+		this.world = world;
+		return this;
+	}
+	
+	/**
+	 * Sets the scheduler picking the entity updates sent to each client.
+	 * @param bandwidth The scheduler, or null to send every entity to every client.
+	 * @return [{@link Server}] This server.
+	 */
+	public Server withBandwidth(BandwidthScheduler bandwidth) {
+		this.bandwidth = bandwidth;
+		return this;
+	}
+	
+	/**
+	 * Feeds the hosted world from elsewhere instead of simulating it, to
+	 * republish the state of another server. Logged in clients get an
+	 * invisible spectator camera moved by their input instead of a player.
+	 * @param feed Updates the world on every tick.
+	 * @return [{@link Server}] This server.
+	 */
+	public Server withFeed(Consumer<World> feed) {
+		this.feed = feed;
+		return this;
+	}
+	
+	/**
+	 * Sets the governor adapting the tick rate to the server's load.
+	 * @param governor The governor, or null to always tick at {@link World#TICKS_PER_SECOND}.
+	 * @return [{@link Server}] This server.
+	 */
+	public Server withGovernor(TickGovernor governor) {
+		this.governor = governor;
+		return this;
+	}
+	
+	/**
+	 * @return [{@link TickGovernor}] The governor adapting the tick rate, or null.
+	 */
+	public TickGovernor getGovernor() {
+		return governor;
+	}
+	
+	/**
+	 * Checkpoints the sessions every {@link SessionCheckpoint#INTERVAL} milliseconds
+	 * and resumes the ones of the last checkpoint when the server starts, along
+	 * with its key pair. Create the server with {@link SessionCheckpoint#getKeys()}
+	 * to skip generating a key pair that would be replaced.
+	 * @param checkpoint The checkpoint.
+	 * @return [{@link Server}] This server.
+	 */
+	public Server withCheckpoint(SessionCheckpoint checkpoint) {
+		this.checkpoint = checkpoint;
+		if(checkpoint.getKeys() != null)
+			this.keys = checkpoint.getKeys();
+		return this;
+	}
+	
+	/**
+	 * Keeps the profiles of the players between sessions. Players are put back
+	 * where they left when logging in and saved every {@link PlayerStore#SAVE_INTERVAL}
+	 * milliseconds and when leaving, the store writing them behind. The
+	 * server closes the store when it is stopped.
+	 * @param players The store.
+	 * @return [{@link Server}] This server.
+	 */
+	public Server withPlayerStore(PlayerStore players) {
+		this.players = players;
+		return this;
+	}
+	
+	/**
+	 * Sets the controller deciding when new clients are let in.
+	 * @param admission The controller, or null to let every client in.
+	 * @return [{@link Server}] This server.
+	 */
+	public Server withAdmission(AdmissionController admission) {
+		this.admission = admission;
+		return this;
+	}
+	
+	public AdmissionController getAdmission() {
+		return admission;
+	}
+	
+	/**
+	 * Caps the bandwidth used to send entity updates to all clients. The
+	 * budget of every client is cut evenly when they would go over it.
+	 * @param bytesPerSecond The server's uplink, or 0 for no limit.
+	 * @return [{@link Server}] This server.
+	 */
+	public Server withUplink(int bytesPerSecond) {
+		if(bytesPerSecond < 0)
+			throw new RuntimeException("Negative uplink specified.");
+		this.uplink = bytesPerSecond;
+		return this;
+	}
+	
+	/**
+	 * Makes the server own one of the zones of a cluster. Players leaving the zone
+	 * are handed off to the server owning the zone they enter.
+	 * @param zones The zones of the cluster.
+	 * @param index The index of the zone owned by this server.
+	 * @param clusterKey The key the servers of the cluster seal their messages with.
+	 * @return [{@link Server}] This server.
+	 */
+	public Server withZone(ZoneMap zones, int index, SecretKey clusterKey) {
+		this.zones = zones;
+		this.zoneIndex = index;
+		this.clusterNonces = new Seal.Nonces((byte)(index + 1));
+		return withClusterKey(clusterKey);
+	}
+	
+	/**
+	 * Sets the key shared by the servers and relays of the cluster. Only peers
+	 * sealing their packets with it may subscribe to the whole world state.
+	 * @param clusterKey The key of the cluster.
+	 * @return [{@link Server}] This server.
+	 */
+	public Server withClusterKey(SecretKey clusterKey) {
+		this.clusterKey = clusterKey;
+		return this;
+	}
+	
+	/**
+	 * Records every datagram received by the server into a capture.
+	 * @param capture The capture to record into.
+	 * @return [{@link Server}] This server.
+	 */
+	public Server withCapture(PacketCapture capture) {
+		this.capture = capture;
+		return this;
+	}
+	
+	/**
+	 * Sets the transport used by the server's sockets, UDP by default.
+	 * @param transport The factory opening the transports.
+	 * @return [{@link Server}] This server.
+	 */
+	public Server withTransport(TransportFactory transport) {
+		this.transport = transport;
+		return this;
+	}
+	
+	/**
+	 * Publishes the server's tick durations, clients, rates and traffic into a registry.
+	 * @param metrics The registry, see {@link MetricsServer} to serve it.
+	 * @param name The value of the server label of the metrics, telling the servers sharing the registry apart.
+	 * @return [{@link Server}] This server.
+	 */
+	public Server withMetrics(Metrics metrics, String name) {
+		if(name == null)
+			throw new RuntimeException("No server name specified.");
+		this.metrics = metrics;
+		this.metricsName = name;
+		return this;
+	}
+	
+	/**
+	 * Sets the clock the server's timeouts, rates and admissions run on, the
+	 * system clock by default. Must be set before the server is initialized.
+	 * @param clock The clock, in milliseconds.
+	 * @return [{@link Server}] This server.
+	 */
+	public Server withClock(LongSupplier clock) {
+		this.clock = clock;
+		this.timers = new TimingWheel(TIMER_SLOTS, TIMER_RESOLUTION, clock);
+		return this;
+	}
+	
 	public Server withPortRange(PortRange range) {
 		this.range = range;
 		return this;
 	}
 	
 	public Server init() {
+		if(metrics != null)
+			registerMetrics();
+		try {
+			this.broadcaster = new Broadcaster(transport.open(0));
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to open the broadcast transport.", e);
+		}
+		
 		int begin = 0;
 		if(range != null)
 			begin = range.getFrom();
 		
 		
 		for(int i = 0; i < workers.length; i++) {
-			workers[i] = new WorkerThread(begin == 0 ? begin : begin++, this.keys.getPrivate(), this::processPacket);
+			workers[i] = new WorkerThread(transport, begin == 0 ? begin : begin++, this.keys.getPrivate(), this::processPacket);
+			workers[i].setSessionKey(clusterKey);
+			if(capture != null)
+				workers[i].setCapture(capture, i);
 			System.out.println(begin);
 			workers[i].start();
 		}
+		
+		if(checkpoint != null) {
+			resumeSessions();
+			timers.every(SessionCheckpoint.INTERVAL, this::checkpoint);
+		}
+		if(players != null)
+			timers.every(PlayerStore.SAVE_INTERVAL, this::savePlayers);
 		return this;
 	}
 	
+	private void registerMetrics() {
+		
+		transport = MeteredTransport.factory(transport, metrics, labelled("role", "server"));
+		tickDurations = metrics.histogram("server_tick_seconds", "Time spent ticking the clients and the world.", Metrics.DURATION_BUCKETS, labelled());
+		
+		// Read the fields when rendered, they may be swapped after the server started.
+		metrics.gauge("server_clients", "Connected clients.", () -> numClientsConnected, labelled());
+		metrics.gauge("server_world_entities", "Entities in the world.", () -> world != null ? world.getEntities().size() : 0, labelled());
+		metrics.gauge("server_tick_rate_hz", "Rate the world is simulated at.", () -> governor != null ? governor.getSimulationRate() : 1000000000L / TICK_LENGTH, labelled());
+		metrics.gauge("server_snapshot_rate_hz", "Rate snapshots are sent at.", () -> governor != null ? governor.getSnapshotRate() : 1000000000L / TICK_LENGTH, labelled());
+		metrics.gauge("server_tick_level", "Level the tick governor stepped down to.", () -> governor != null ? governor.getLevel() : 0, labelled());
+		metrics.gauge("server_tick_load", "Smoothed share of the tick length spent ticking.", () -> governor != null ? governor.getLoad() : 0, labelled());
+		metrics.counter("server_tick_overruns_total", "Ticks longer than the tick length.", () -> governor != null ? governor.getOverruns() : 0, labelled());
+		metrics.counter("server_tick_steps_total", "Times the tick governor changed the rates.", () -> governor != null ? governor.getSteppedDown() : 0, labelled("direction", "down"));
+		metrics.counter("server_tick_steps_total", "Times the tick governor changed the rates.", () -> governor != null ? governor.getSteppedUp() : 0, labelled("direction", "up"));
+		metrics.gauge("server_admission_capacity", "Clients the server can take at the target load.", () -> admission != null ? admission.getCapacity() : 0, labelled());
+		metrics.gauge("server_admission_waiting", "Clients waiting in the login queue.", () -> admission != null ? admission.getWaiting() : 0, labelled());
+		metrics.counter("server_admissions_total", "Logins by outcome.", () -> admission != null ? admission.getAdmitted() : 0, labelled("outcome", "admitted"));
+		metrics.counter("server_admissions_total", "Logins by outcome.", () -> admission != null ? admission.getQueued() : 0, labelled("outcome", "queued"));
+		metrics.counter("server_admissions_total", "Logins by outcome.", () -> admission != null ? admission.getRejected() : 0, labelled("outcome", "rejected"));
+		metrics.gauge("server_profiles_pending", "Player profiles waiting to be written.", () -> players != null ? players.getPending() : 0, labelled());
+		metrics.counter("server_profiles_written_total", "Player profiles written.", () -> players != null ? players.getWritten() : 0, labelled());
+		
+	}
+	
+	/**
+	 * Adds the server label to the labels of a metric.
+	 */
+	private String[] labelled(String... labels) {
+		String[] all = Arrays.copyOf(labels, labels.length + 2);
+		all[labels.length] = "server";
+		all[labels.length + 1] = metricsName;
+		return all;
+	}
+	
+	/**
+	 * Takes the sessions of the last checkpoint back, the clients don't notice the restart.
+	 */
+	private void resumeSessions() {
+		
+		if(world != null)
+			world.resume(checkpoint.getTick());
+		
+		int resumed = 0;
+		for(SessionCheckpoint.Session session : checkpoint.getSessions()) {
+			SClient client = session.client;
+			if(getClient(client.ip, client.port) != null)
+				continue;
+			
+			if(world != null && client.username != null && !client.subscriber) {
+				client.entity = feed != null ? new WorldEntity(0, WorldEntity.SPECTATOR) : world.spawn(WorldEntity.PLAYER);
+				session.restore(client.entity);
+			}
+			
+			add(client);
+			getLeastChargedThread().serve(client);
+			client.resetTimer(clock.getAsLong());
+			scheduleTimeout(client, TIMEOUT);
+			resumed++;
+		}
+		
+		if(resumed > 0)
+			System.out.println("Resumed " + resumed + " sessions from the checkpoint.");
+		
+	}
+	
+	private void savePlayers() {
+		for(int i = 0; i < numClientsConnected; i++)
+			savePlayer(clients[i]);
+	}
+	
+	private void savePlayer(SClient client) {
+		WorldEntity entity = client.entity;
+		if(client.username == null || entity == null || entity.getKind() != WorldEntity.PLAYER)
+			return;
+		PlayerProfile saved = players.get(client.username);
+		players.save(PlayerProfile.of(client.username, entity, saved != null ? saved.logins : 1));
+	}
+	
+	private void checkpoint() {
+		try {
+			checkpoint.write(keys, world != null ? world.getTick() : 0, clients, numClientsConnected);
+		} catch (IOException e) {
+			System.out.println("Unable to write the session checkpoint.");
+		}
+	}
+	
 	public KeyPair keys;
 	
 	private PortRange range;
+	private TransportFactory transport = TransportFactory.UDP;
 	private WorkerThread[] workers;
-	private volatile SClient[] clients = new SClient[MAX_CLIENTS];
+	private World world;
+	private BandwidthScheduler bandwidth = new BandwidthScheduler();
+	private int uplink = 0;
+	private Consumer<World> feed;
+	private TickGovernor governor = new TickGovernor();
+	private AdmissionController admission = new AdmissionController();
+	private SessionCheckpoint checkpoint;
+	private PlayerStore players;
+	private Metrics metrics;
+	private String metricsName;
+	private Metrics.Histogram tickDurations;
+	
+	private volatile LockstepSession lockstep;
+	private TimingWheel.Timeout lockstepTimer;
+	
+	private PacketCapture capture;
+	
+	private ZoneMap zones;
+	private int zoneIndex;
+	private SecretKey clusterKey;
+	private Seal.Nonces clusterNonces;
+	
+	/**
+	 * Clients handed off to another zone, by address, still redirected there until it hears from them.
+	 */
+	private final Map<InetSocketAddress, SClient> forwards = new ConcurrentHashMap<InetSocketAddress, SClient>();
+	
+	/**
+	 * Last handoff taken over for each client, to turn replays down. Only used on the tick thread.
+	 */
+	private final Map<InetSocketAddress, Handoff> handoffs = new HashMap<InetSocketAddress, Handoff>();
+	private volatile SClient[] clients = new SClient[INITIAL_CLIENTS];
 	private int numClientsConnected = 0;
 	
+	private LongSupplier clock = System::currentTimeMillis;
+	private TimingWheel timers = new TimingWheel(TIMER_SLOTS, TIMER_RESOLUTION);
+	private final MessageRegistry<WorkerThread> messages;
+	private Broadcaster broadcaster;
+	
 	private volatile boolean running = false;
 	
 	@Override
@@ -107,9 +483,21 @@ public class Server extends Thread{
 		try {
 			join();
 		} catch (InterruptedException e) {}
+		
+		// Write every player out before the store's log is closed.
+		if(players != null) {
+			savePlayers();
+			players.close();
+		}
+		
+		// Leave the latest sessions for the next start.
+		if(checkpoint != null) {
+			checkpoint();
+			checkpoint.force();
+		}
 	}
 	
-
+	
 	public void run() {
 		
 		long lastTick = System.nanoTime();
@@ -119,23 +507,41 @@ public class Server extends Thread{
 			long currentTime = System.nanoTime();
 			if(currentTime - lastTime >= 1000000000) {
 				
-				System.out.println(currentClients());
+				System.out.println(currentClients() + (governor != null ? governor.report() : "") 
+						+ (admission != null ? "Admission : " + admission + "\n" : "") + Compression.report());
 				
 				lastTime = currentTime;
 			}
 			
 			long currentTick = System.nanoTime();
-			if(currentTick - lastTick >= 1000000000 / 60) {
+			long tickLength = governor != null ? governor.getTickLength() : TICK_LENGTH;
+			if(currentTick - lastTick >= tickLength) {
 				
 				tickClients();
+				tickWorld();
+				if(tickDurations != null)
+					tickDurations.observeNanos(System.nanoTime() - currentTick);
+				
+				// Step the rates down when ticks get too expensive, and back up when they aren't anymore.
+				if(governor != null && governor.record(System.nanoTime() - currentTick, clock.getAsLong()))
+					System.out.println("Tick rate changed to " + governor + ".");
+				if(admission != null)
+					admission.update(governor, numClientsConnected);
 				
-				lastTick = currentTick;
+				// Keep a fixed tick rate, but don't try to catch up after a long stall.
+				lastTick += tickLength;
+				if(currentTick - lastTick >= tickLength * MAX_CATCH_UP)
+					lastTick = currentTick;
 			}
 			
 		}
 		
 	}
 	
+	WorkerThread[] getWorkers() {
+		return workers;
+	}
+	
 	private WorkerThread getLeastChargedThread() {
 		ArrayList<Integer> sizes = new ArrayList<Integer>();
 		for(int i = 0; i < workers.length; i++)
@@ -157,44 +563,289 @@ public class Server extends Thread{
 	}
 	
 	public void tickClients() {
+		timers.advance(clock.getAsLong());
+	}
+	
+	/**
+	 * Returns the timing wheel used to schedule the server's timeouts and resends.
+	 * It is advanced by {@link #tickClients()}.
+	 * @return [{@link TimingWheel}] The server's timers.
+	 */
+	public TimingWheel getTimers() {
+		return timers;
+	}
+	
+	/**
+	 * Ticks the world, if the server hosts one, and publishes its state to every logged in client.
+	 * @return [<b>void</b>]
+	 */
+	public void tickWorld() {
+		if(world == null)
+			return;
+		
+		int steps = governor != null ? governor.getSimulationStep() : 1;
+		
+		// Every player moves by one of its buffered commands per world tick.
+		for(int i = 0; i < numClientsConnected; i++) {
+			WorldEntity entity = clients[i].entity;
+			if(entity != null)
+				clients[i].inputs.apply(entity, steps);
+		}
+		
+		// A fed world isn't simulated here, only the spectators' cameras move.
+		if(feed != null) {
+			feed.accept(world);
+			for(int i = 0; i < numClientsConnected; i++) {
+				WorldEntity camera = clients[i].entity;
+				if(camera != null)
+					camera.tick(world.getTick(), steps);
+			}
+		}else
+			world.tick(steps);
+		
+		if(zones != null)
+			checkZones();
+		
+		if(governor != null && !governor.isSnapshotTick())
+			return;
+		
+		if(bandwidth == null || broadcaster == null) {
+			for(byte[] state : world.snapshot())
+				broadcast(Packet.STATE, state);
+			return;
+		}
+		
+		// Congested clients get updates less often, with the same budget per update.
+		long now = clock.getAsLong();
+		float demand = 0;
+		for(int i = 0; i < numClientsConnected; i++) {
+			if(clients[i].subscriber)
+				continue;
+			int interval = clients[i].congestion.update(now);
+			clients[i].schedule.setInterval(interval);
+			demand += bandwidth.getBudget() / (float) interval;
+		}
+		float share = uplink == 0 || demand == 0 ? 1 : Math.min(1, uplink / (float) World.TICKS_PER_SECOND / demand);
+		
+		// Send each client the updates it has the most need of within its budget.
+		// Subscribers get the whole state, however many spectators they serve.
+		ArrayList<byte[]> full = null;
+		bandwidth.begin(world);
+		for(int i = 0; i < numClientsConnected; i++) {
+			SClient client = clients[i];
+			if(client.subscriber) {
+				if(full == null)
+					full = world.snapshot();
+				for(byte[] state : full)
+					broadcaster.send(client, Packet.STATE, state);
+				continue;
+			}
+			
+			client.schedule.setBudget((int)(bandwidth.getBudget() * share / client.schedule.getInterval()));
+			if(client.sessionKey != null && client.connected)
+				bandwidth.schedule(world.getTick(), client.schedule, client.entity, 
+						state -> broadcaster.send(client, Packet.STATE, state));
+		}
+	}
+	
+	/**
+	 * Starts a lockstep match between every logged in client. The server relays
+	 * their inputs and each of them runs the match's simulation.
+	 * @param seed The seed of the match.
+	 * @param unitsPerPeer The number of units each peer owns.
+	 * @return [{@link LockstepSession}] The match.
+	 */
+	public LockstepSession startLockstep(int seed, int unitsPerPeer) {
+		
+		ArrayList<SClient> peers = new ArrayList<SClient>();
 		for(int i = 0; i < numClientsConnected; i++)
-			if(System.currentTimeMillis() - clients[i].lastPacket >= TIMEOUT) {
-				System.out.println(clients[i] + " timed out.");
-				disconnect(i, "Connection timed out.", workers[0].socket);
+			if(clients[i].sessionKey != null)
+				peers.add(clients[i]);
+		
+		stopLockstep();
+		lockstep = new LockstepSession(peers.toArray(new SClient[peers.size()]), seed, unitsPerPeer);
+		lockstepTimer = timers.every(LockstepSession.TICK_LENGTH, this::tickLockstep);
+		return lockstep;
+		
+	}
+	
+	/**
+	 * Ends the lockstep match, if any, and tells its peers.
+	 * @return [<b>void</b>]
+	 */
+	public void stopLockstep() {
+		if(lockstepTimer != null)
+			lockstepTimer.cancel();
+		LockstepSession session = lockstep;
+		lockstep = null;
+		
+		// Repeated in case it is lost, the peers ignore it once they left.
+		if(session != null)
+			for(int i = 0; i < LOCKSTEP_STOP_REPEATS; i++)
+				timers.schedule(i * LockstepSession.TICK_LENGTH * 2, () -> sendLockstepStop(session));
+	}
+	
+	private void sendLockstepStop(LockstepSession session) {
+		if(broadcaster == null)
+			return;
+		LockstepStopMessage stop = messages.message(Packet.LOCKSTEP_STOP);
+		stop.match = session.getMatch();
+		broadcaster.broadcast(session.getActivePeers(), session.getActiveCount(), 
+				messages.toPacket(Packet.LOCKSTEP_STOP, stop));
+	}
+	
+	public LockstepSession getLockstep() {
+		return lockstep;
+	}
+	
+	private void tickLockstep() {
+		
+		LockstepSession session = lockstep;
+		if(session == null || broadcaster == null)
+			return;
+		
+		SClient[] peers = session.getPeers();
+		for(int i = 0; i < peers.length; i++)
+			if(session.needsStart(i)) {
+				LockstepStartMessage start = session.start(i, messages.message(Packet.LOCKSTEP_START));
+				broadcaster.send(peers[i], messages.toPacket(Packet.LOCKSTEP_START, start));
 			}
 		
+		if(!session.ready()) {
+			if(session.getActiveCount() == 0)
+				stopLockstep();
+			return;
+		}
+		
+		// Every peer still in the match gets the same packet, only sealed for each of them.
+		LockstepTickMessage tick = session.advance(messages.message(Packet.LOCKSTEP_TICK));
+		broadcaster.broadcast(session.getActivePeers(), session.getActiveCount(), 
+				messages.toPacket(Packet.LOCKSTEP_TICK, tick));
+		
+	}
+	
+	/**
+	 * Starts handing off the clients whose player left this server's zone.
+	 */
+	private void checkZones() {
+		Zone own = zones.get(zoneIndex);
+		for(int i = 0; i < numClientsConnected; i++) {
+			SClient client = clients[i];
+			if(client == null || client.entity == null || client.handoff != null || own.contains(client.entity))
+				continue;
+			
+			Zone target = zones.zoneAt(client.entity.getX(), client.entity.getZ());
+			if(target == null)
+				continue;
+			
+			// Send the session to the target zone and retry until it is acknowledged.
+			client.handoff = target;
+			sendSealed(clusterKey, clusterNonces, target.getAddress().getAddress(), target.getAddress().getPort(), 
+					Packet.HANDOFF, Handoff.write(zoneIndex, clock.getAsLong(), client), workers[0].socket);
+			timers.schedule(HANDOFF_RETRY, () -> {
+				if(client.connected)
+					client.handoff = null;
+			});
+		}
+	}
+	
+	public World getWorld() {
+		return world;
+	}
+	
+	/**
+	 * @return [<b>int</b>] The port clients connect to, once the server is initialized.
+	 */
+	public int getPort() {
+		return workers[0].getPort();
+	}
+	
+	private void scheduleTimeout(SClient client, long delay) {
+		timers.schedule(delay, () -> checkTimeout(client));
+	}
+	
+	private void checkTimeout(SClient client) {
+		if(!client.connected)
+			return;
+		
+		// The timer isn't moved on every packet, so check whether the client was heard from since.
+		long idle = clock.getAsLong() - client.lastPacket;
+		if(idle < TIMEOUT) {
+			scheduleTimeout(client, TIMEOUT - idle);
+			return;
+		}
+		
+		System.out.println(client + " timed out.");
+		disconnect(client, "Connection timed out.", workers[0].socket);
 	}
 	
 	public void processPacket(PacketInfo packetInfo, WorkerThread worker) {
-		switch(packetInfo.packet.getType()) {
-			case Packet.CONNECT:
-				WorkerThread takesOver = getLeastChargedThread();
-				if(takesOver != worker)
-					sendPacket(packetInfo, Packet.PORT_REDIRECT, ByteBuffer.allocate(4).putInt(takesOver.getPort()).array(), worker.socket);
-				else
-					processConnectPacket(packetInfo, worker);
-				break;
-			case Packet.LOGIN:
-				processLoginPacket(packetInfo, worker.socket);
-				break;
-			case Packet.PING:
-				processPingPacket(packetInfo, worker.socket);
-				break;
-			case Packet.INVALID:
-				processInvalidPacket(packetInfo, worker.socket);
-				break;
-			default:
-				SClient client = getClient(packetInfo.source, packetInfo.port);
-				if(client != null)
-					sendPacket(client, Packet.ERROR, "Invalid packet.".getBytes(), workers[0].socket);
-				else
-					sendPacket(packetInfo, Packet.ERROR, "Invalid packet.".getBytes(), workers[0].socket);
+		if(!forwards.isEmpty() && forward(packetInfo, worker))
+			return;
+		messages.dispatch(packetInfo, worker);
+	}
+	
+	private boolean forward(PacketInfo packetInfo, WorkerThread worker) {
+		
+		InetSocketAddress source = new InetSocketAddress(packetInfo.source, packetInfo.port);
+		SClient client = forwards.get(source);
+		if(client == null)
+			return false;
+		
+		// A client connecting again started over, it isn't on its way to the other zone anymore.
+		if(packetInfo.packet != null && packetInfo.packet.getType() == Packet.CONNECT) {
+			forwards.remove(source, client);
+			return false;
 		}
+		
+		// The redirect might have been lost, send it again until the new zone hears from the client.
+		Zone target = client.handoff;
+		sendSealed(client.sessionKey, client.nonces, client.ip, client.port, 
+				addressOf(Packet.ZONE_REDIRECT, target.getAddress().getAddress(), target.getAddress().getPort()), worker.socket);
+		return true;
+		
 	}
 	
-	private void disconnect(int clientIndex, String reason, DatagramSocket socket) {
+	private void processConnectRequest(PacketInfo packetInfo, WorkerThread worker) {
+		WorkerThread takesOver = getLeastChargedThread();
+		if(takesOver != worker) {
+			PortMessage redirect = messages.message(Packet.PORT_REDIRECT);
+			redirect.port = takesOver.getPort();
+			sendMessage(packetInfo, Packet.PORT_REDIRECT, redirect, worker.socket);
+		}else
+			processConnectPacket(packetInfo, worker);
+	}
+	
+	private void processUnknownPacket(PacketInfo packetInfo, WorkerThread worker) {
+		SClient client = getClient(packetInfo.source, packetInfo.port);
+		if(client != null)
+			sendPacket(client, Packet.ERROR, "Invalid packet.".getBytes(), workers[0].socket);
+		else
+			sendPacket(packetInfo, Packet.ERROR, "Invalid packet.".getBytes(), workers[0].socket);
+	}
+	
+	private void disconnect(SClient client, String reason, Transport socket) {
+		for(int i = 0; i < numClientsConnected; i++)
+			if(clients[i] == client) {
+				disconnect(i, reason, socket);
+				return;
+			}
+	}
+	
+	private void disconnect(int clientIndex, String reason, Transport socket) {
 		
 		sendPacket(clients[clientIndex], Packet.DISCONNECT, reason.getBytes(), socket);
+		remove(clientIndex);
+		
+	}
+	
+	private void remove(int clientIndex) {
+		
+		clients[clientIndex].connected = false;
+		if(players != null)
+			savePlayer(clients[clientIndex]);
+		if(world != null)
+			world.remove(clients[clientIndex].entity);
 		
 		for(int i = 0; i < workers.length; i++)
 			workers[i].disconnect(clients[clientIndex]);
@@ -202,13 +853,19 @@ public class Server extends Thread{
 		clients[clientIndex] = null;
 		numClientsConnected--;
 		
-		for(int i = clientIndex; i < MAX_CLIENTS - 1; i++)
+		for(int i = clientIndex; i < clients.length - 1; i++)
 			clients[i] = clients[i + 1];
 		
-		clients[MAX_CLIENTS - 1] = null;
+		clients[clients.length - 1] = null;
 			
 	}
 	
+	void add(SClient client) {
+		if(numClientsConnected == clients.length)
+			clients = Arrays.copyOf(clients, clients.length * 2);
+		clients[numClientsConnected++] = client;
+	}
+	
 	private void processConnectPacket(PacketInfo packetInfo, WorkerThread worker) {
 		
 		System.out.println("Processing connect packet.");
@@ -216,33 +873,11 @@ public class Server extends Thread{
 		if(packetInfo.packet.getType() != Packet.CONNECT)
 			return;
 		
-		if(numClientsConnected >= MAX_CLIENTS) {
-			// Send unencrypted error packet.
-			sendPacket(packetInfo, Packet.ERROR, "Server is full.".getBytes(), worker.socket);
-			return;
-		}
-		
 		PublicKey key = RSA.toPublicKey(packetInfo.packet.getContent());
 		if(key != null) {
 			
-			// Check if client is already connected.
-			if(getClient(packetInfo.source, packetInfo.port) != null) {
-				sendPacket(packetInfo, Packet.ERROR, "Already connected.".getBytes(), worker.socket);
-				return;
-			}
-			
-			// Register the new client.
-			SClient client = new SClient(packetInfo.source, packetInfo.port, key, System.currentTimeMillis());
-			clients[numClientsConnected++] = client;
-			worker.serve(client);
-			
-			// Reset timeout timer.
-			client.resetTimer();
-			
-			// Send unencrypted packet containing our server's public key.
-			sendPacket(packetInfo, Packet.ACCEPT_CONNECTION, keys.getPublic().getEncoded(), worker.socket);
-			
-			System.out.println(client.ip.toString() + " just connected. (" + client.ping + " ms)");
+			// The client list is only changed on the tick thread, register the client there.
+			timers.schedule(0, () -> register(packetInfo, key, worker));
 			
 		}else {
 			// Send unencrypted error packet.
@@ -252,7 +887,49 @@ public class Server extends Thread{
 		
 	}
 	
-	private void processLoginPacket(PacketInfo packetInfo, DatagramSocket socket) {
+	private void register(PacketInfo packetInfo, PublicKey key, WorkerThread worker) {
+		
+		// Check if client is already connected.
+		if(getClient(packetInfo.source, packetInfo.port) != null) {
+			sendPacket(packetInfo, Packet.ERROR, "Already connected.".getBytes(), worker.socket);
+			return;
+		}
+		
+		// Let the client in if there's room, otherwise tell it where it stands in the queue.
+		if(admission != null) {
+			int position = admission.admit(new InetSocketAddress(packetInfo.source, packetInfo.port), 
+					numClientsConnected, clock.getAsLong());
+			if(position == AdmissionController.REJECTED) {
+				// Send unencrypted error packet.
+				sendPacket(packetInfo, Packet.ERROR, "Server is full.".getBytes(), worker.socket);
+				return;
+			}
+			if(position != AdmissionController.ADMITTED) {
+				QueueMessage queue = messages.message(Packet.QUEUE);
+				queue.position = position;
+				queue.waiting = admission.getWaiting();
+				sendMessage(packetInfo, Packet.QUEUE, queue, worker.socket);
+				return;
+			}
+		}
+		
+		// Register the new client.
+		SClient client = new SClient(packetInfo.source, packetInfo.port, key, clock.getAsLong());
+		add(client);
+		worker.serve(client);
+		
+		// Reset timeout timer.
+		client.resetTimer(clock.getAsLong());
+		scheduleTimeout(client, TIMEOUT);
+		
+		// Send unencrypted packet containing our server's public key.
+		sendPacket(packetInfo, Packet.ACCEPT_CONNECTION, keys.getPublic().getEncoded(), worker.socket);
+		
+		System.out.println(client.ip.toString() + " just connected. (" + client.ping + " ms)");
+		
+	}
+	
+	private void processLoginPacket(PacketInfo packetInfo, Transport socket) {
 		
 		if(packetInfo.packet.getType() != Packet.LOGIN)
 			return;
@@ -271,17 +948,32 @@ public class Server extends Thread{
 		// Set the client's username.
 		client.username = new String(packetInfo.packet.getContent());
 		
+		// Give the client a session key for sealed packets.
+		client.sessionKey = Seal.generateKey();
+		
+		// Spawn the client's player, or its camera if it can only watch.
+		if(world != null)
+			client.entity = feed != null ? new WorldEntity(0, WorldEntity.SPECTATOR) : world.spawn(WorldEntity.PLAYER);
+		
+		// Put the player back where it left, its profile is already in memory.
+		if(players != null && client.entity != null && client.entity.getKind() == WorldEntity.PLAYER) {
+			PlayerProfile profile = players.get(client.username);
+			if(profile != null)
+				profile.restore(client.entity);
+			players.save(PlayerProfile.of(client.username, client.entity, profile != null ? profile.logins + 1 : 1));
+		}
+		
 		// Reset timeout timer.
-		client.resetTimer();
+		client.resetTimer(clock.getAsLong());
 		
-		// Send invalid packet to confirm.
-		sendPacket(client, Packet.INVALID, null, socket);
+		// Send invalid packet containing the session key to confirm.
+		sendPacket(client, Packet.INVALID, client.sessionKey.getEncoded(), socket);
 		
 		System.out.println(client.username + " just logged in. (" + client.ping + " ms)");
 		System.out.println(client);
 	}
 	
-	private void processInvalidPacket(PacketInfo packetInfo, DatagramSocket socket) {
+	private void processInvalidPacket(PacketInfo packetInfo, Transport socket) {
 		
 		if(packetInfo.packet.getType() != Packet.INVALID)
 			return;
@@ -291,68 +983,342 @@ public class Server extends Thread{
 			return;
 		
 		// Reset timeout timer.
-		client.resetTimer();
+		client.resetTimer(clock.getAsLong());
 		
 		// Send invalid packet to confirm.
 		sendPacket(packetInfo, Packet.INVALID, null, socket);
 		
 	}
 	
-	private void processPingPacket(PacketInfo packetInfo, DatagramSocket socket) {
+	private void processInputPacket(InputMessage input, PacketInfo packetInfo, WorkerThread worker) {
+		
+		SClient client = getClient(packetInfo.source, packetInfo.port);
+		if(client == null) 
+			return;
+		
+		// Reset timeout timer.
+		client.resetTimer(clock.getAsLong());
+		if(client.handedFrom != null)
+			confirmHandoff(client, worker);
+		
+		client.inputs.offer(input);
+		client.congestion.onPacket(input.sequence);
+		
+	}
+	
+	private void processSubscribePacket(PacketInfo packetInfo, WorkerThread worker) {
 		
-		if(packetInfo.packet.getType() != Packet.PING)
+		// The whole state skips interest and bandwidth limits, only relays of the cluster get it.
+		if(!packetInfo.sealed)
 			return;
 		
+		SClient client = getClient(packetInfo.source, packetInfo.port);
+		if(client == null || client.username == null) 
+			return;
+		
+		// Reset timeout timer, subscribers send no input.
+		client.resetTimer(clock.getAsLong());
+		
+		if(client.subscriber)
+			return;
+		
+		// A subscriber relays the state to spectators and doesn't play.
+		client.subscriber = true;
+		if(world != null)
+			world.remove(client.entity);
+		client.entity = null;
+		
+		System.out.println(client.username + " subscribed to the world's state.");
+		
+	}
+	
+	private void processLockstepInputPacket(LockstepInputMessage input, PacketInfo packetInfo, WorkerThread worker) {
+		
+		LockstepSession session = lockstep;
 		SClient client = getClient(packetInfo.source, packetInfo.port);
 		if(client == null) 
 			return;
 		
-		byte counter = 2;
-		if(packetInfo.packet.getContentLength() > 0)
-			counter++;
+		// Reset timeout timer.
+		client.resetTimer(clock.getAsLong());
+		
+		int peer = session == null || input.match != session.getMatch() ? -1 : session.indexOf(client);
+		if(peer >= 0 && !session.hasLeft(peer)) {
+			session.onInput(peer, input);
+			return;
+		}
+		
+		// The peer missed the end of its match.
+		LockstepStopMessage stop = messages.message(Packet.LOCKSTEP_STOP);
+		stop.match = input.match;
+		if(broadcaster != null)
+			broadcaster.send(client, messages.toPacket(Packet.LOCKSTEP_STOP, stop));
+		
+	}
+	
+	private void processLockstepStopPacket(LockstepStopMessage stop, PacketInfo packetInfo, WorkerThread worker) {
+		
+		LockstepSession session = lockstep;
+		SClient client = getClient(packetInfo.source, packetInfo.port);
+		if(client == null || session == null || stop.match != session.getMatch()) 
+			return;
+		
+		int peer = session.indexOf(client);
+		if(peer < 0 || !session.leave(peer))
+			return;
+		
+		System.out.println(client.username + " left the lockstep match at tick " + session.getTick() + ".");
+		if(session.getActiveCount() == 0)
+			stopLockstep();
+		
+	}
+	
+	private void processHandoffPacket(PacketInfo packetInfo, WorkerThread worker) {
+		
+		// Only trust sessions sealed with the cluster key.
+		if(packetInfo.packet.getType() != Packet.HANDOFF || !packetInfo.sealed || zones == null)
+			return;
 		
+		Handoff handoff = Handoff.fromData(packetInfo.packet.getContent());
+		if(handoff == null || handoff.fromZone < 0 || handoff.fromZone >= zones.size())
+			return;
 		
+		// The client list is only changed on the tick thread, take the session over there.
+		timers.schedule(0, () -> takeOver(handoff, worker));
 		
-		// Update client's ping.
-		client.updateLatency(packetInfo.packet);
+	}
+	
+	private void takeOver(Handoff handoff, WorkerThread worker) {
+		
+		SClient client = getClient(handoff.client.ip, handoff.client.port);
+		if(client == null) {
+			
+			// Turn down replays of handoffs of clients that since left, they'd bring their session back.
+			InetSocketAddress address = handoff.client.getAddress();
+			Handoff last = handoffs.get(address);
+			if(clock.getAsLong() - handoff.sent > HANDOFF_MAX_AGE 
+					|| last != null && last.fromZone == handoff.fromZone && handoff.sent <= last.sent)
+				return;
+			
+			// Players already in the game are let in as long as there's any room.
+			if(admission != null && numClientsConnected >= admission.getMaxClients())
+				return;
+			
+			// Older handoffs are too old to be trusted anyway once this one expires.
+			handoffs.put(address, handoff);
+			timers.schedule(HANDOFF_MAX_AGE, () -> handoffs.remove(address, handoff));
+			
+			// The client might be coming back before the zone it went to confirmed it.
+			forwards.remove(address);
+			
+			// Take over the session.
+			client = handoff.client;
+			if(world != null) {
+				client.entity = world.spawn(WorldEntity.PLAYER);
+				handoff.restore(client.entity);
+			}
+			add(client);
+			worker.serve(client);
+			client.resetTimer(clock.getAsLong());
+			client.handedFrom = zones.get(handoff.fromZone);
+			scheduleTimeout(client, TIMEOUT);
+			
+			System.out.println(client.username + " was handed off from zone " + handoff.fromZone + ".");
+			
+		}
+		
+		// Acknowledge the handoff, even if it was a retry.
+		Zone from = zones.get(handoff.fromZone);
+		sendSealed(clusterKey, clusterNonces, from.getAddress().getAddress(), from.getAddress().getPort(), 
+				addressOf(Packet.HANDOFF_ACK, client.ip, client.port), worker.socket);
+		
+	}
+	
+	private void processHandoffAckPacket(AddressMessage acknowledged, PacketInfo packetInfo, WorkerThread worker) {
+		
+		if(!packetInfo.sealed)
+			return;
+		
+		InetAddress ip = acknowledged.getAddress();
+		if(ip == null)
+			return;
+		
+		// The client list is only changed on the tick thread, forget the session there.
+		int port = acknowledged.port;
+		timers.schedule(0, () -> handOver(ip, port, worker));
+		
+	}
+	
+	private void handOver(InetAddress ip, int port, WorkerThread worker) {
+		
+		SClient client = getClient(ip, port);
+		if(client == null || client.handoff == null)
+			return;
+		
+		// Switch the client over to the new zone's server and forget the session.
+		Zone target = client.handoff;
+		sendSealed(client.sessionKey, client.nonces, client.ip, client.port, 
+				addressOf(Packet.ZONE_REDIRECT, target.getAddress().getAddress(), target.getAddress().getPort()), worker.socket);
+		
+		for(int i = 0; i < numClientsConnected; i++)
+			if(clients[i] == client) {
+				remove(i);
+				break;
+			}
+		
+		// Keep redirecting the client in case the redirect is lost, at most for as long as it would take to time out.
+		InetSocketAddress address = client.getAddress();
+		forwards.put(address, client);
+		timers.schedule(TIMEOUT, () -> forwards.remove(address, client));
+		
+		System.out.println(client.username + " was handed off to " + target + ".");
+		
+	}
+	
+	private void confirmHandoff(SClient client, WorkerThread worker) {
+		
+		Zone from = client.handedFrom;
+		client.handedFrom = null;
+		if(from == null)
+			return;
+		
+		// Tell the previous zone the client made it here, it can stop redirecting it.
+		sendSealed(clusterKey, clusterNonces, from.getAddress().getAddress(), from.getAddress().getPort(), 
+				addressOf(Packet.HANDOFF_DONE, client.ip, client.port), worker.socket);
+		
+	}
+	
+	private void processHandoffDonePacket(AddressMessage done, PacketInfo packetInfo, WorkerThread worker) {
+		
+		if(!packetInfo.sealed)
+			return;
+		
+		InetAddress ip = done.getAddress();
+		if(ip != null)
+			forwards.remove(new InetSocketAddress(ip, done.port));
+		
+	}
+	
+	private ByteBuffer addressOf(int type, InetAddress ip, int port) {
+		AddressMessage address = messages.message(type);
+		return messages.toPacket(type, address.set(ip, port));
+	}
+	
+	private void processPingPacket(PingMessage ping, PacketInfo packetInfo, WorkerThread worker) {
+		
+		SClient client = getClient(packetInfo.source, packetInfo.port);
+		if(client == null) 
+			return;
+		
+		// A ping answering ours carries the time we sent it at.
+		byte counter = 2;
+		if(ping.time != 0) {
+			counter++;
+			client.updateLatency(ping.time, clock.getAsLong());
+			client.congestion.sampleRtt(client.ping * 2);
+		}
 		
 		// Send ping packet back to client.
-		sendPacket(packetInfo, Packet.PING, ByteBuffer.allocate(Long.BYTES + Byte.BYTES)
-				.putLong(packetInfo.packet.getTimestamp())
-				.put(counter)
-				.array(), socket);
+		PingMessage answer = messages.message(Packet.PING);
+		answer.time = packetInfo.packet.getTimestamp();
+		answer.counter = counter;
+		answer.loss = (byte)(client.congestion.getLoss() * 100);
+		sendMessage(packetInfo, Packet.PING, answer, worker.socket);
 		
 		// Reset timeout timer.
-		client.resetTimer();
-
+		client.resetTimer(clock.getAsLong());
+		if(client.handedFrom != null)
+			confirmHandoff(client, worker);
+		
 	}
 	
-	public static boolean sendPacket(SClient recipient, int type, byte[] data, DatagramSocket socket) {
+	/**
+	 * Sends a packet to every logged in client. The packet is serialized once and
+	 * sealed with each client's session key instead of being RSA encrypted.
+	 * @param type The packet type.
+	 * @param data The packet content.
+	 * @return [<b>int</b>] The number of clients the packet was sent to.
+	 */
+	public int broadcast(int type, byte[] data) {
+		if(broadcaster == null)
+			return 0;
+		return broadcaster.broadcast(clients, numClientsConnected, type, data);
+	}
+	
+	public static boolean sendPacket(SClient recipient, int type, byte[] data, Transport socket) {
 		byte[] encrypted = RSA.encrypt(recipient.key, new Packet(type, data).serialize());
-		DatagramPacket dp = new DatagramPacket(encrypted, encrypted.length, recipient.ip, recipient.port);
 		try {
-			socket.send(dp);
+			socket.send(encrypted, recipient.ip, recipient.port);
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+	public static boolean sendSealed(SecretKey key, Seal.Nonces nonces, InetAddress ip, int port, int type, byte[] data, Transport socket) {
+		byte[] sealed = Seal.seal(key, nonces, new Packet(type, data).serialize());
+		if(sealed == null)
+			return false;
+		try {
+			socket.send(sealed, ip, port);
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+	/**
+	 * Sends a message unencrypted to where a packet came from, serialized in place.
+	 * @param recipient The packet being answered.
+	 * @param type The packet type.
+	 * @param message The message.
+	 * @param socket The transport to send it through.
+	 * @return [<b>boolean</b>] Whether the packet was sent.
+	 */
+	private boolean sendMessage(PacketInfo recipient, int type, Object message, Transport socket) {
+		try {
+			socket.send(messages.toPacket(type, message), new InetSocketAddress(recipient.source, recipient.port));
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Seals a serialized packet and sends it.
+	 * @param key The key to seal it with.
+	 * @param nonces The nonce source of the key.
+	 * @param ip The address of the recipient.
+	 * @param port The port of the recipient.
+	 * @param packet The serialized packet.
+	 * @param socket The transport to send it through.
+	 * @return [<b>boolean</b>] Whether the packet was sent.
+	 */
+	public static boolean sendSealed(SecretKey key, Seal.Nonces nonces, InetAddress ip, int port, ByteBuffer packet, Transport socket) {
+		ByteBuffer sealed = ByteBuffer.allocate(packet.remaining() + Seal.OVERHEAD);
+		if(!Seal.seal(key, nonces, packet, sealed))
+			return false;
+		sealed.flip();
+		try {
+			socket.send(sealed, new InetSocketAddress(ip, port));
 			return true;
 		} catch (IOException e) {
 			return false;
 		}
 	}
-	public static boolean sendPacket(PacketInfo recipient, int type, byte[] data, DatagramSocket socket) {
+	public static boolean sendPacket(PacketInfo recipient, int type, byte[] data, Transport socket) {
 		byte[] packetData = new Packet(type, data).serialize();
-		DatagramPacket dp = new DatagramPacket(packetData, packetData.length, recipient.source, recipient.port);
 		try {
-			socket.send(dp);
+			socket.send(packetData, recipient.source, recipient.port);
 			return true;
 		} catch (IOException e) {
 			return false;
 		}
 	}
-
-	private SClient getClient(InetAddress ip, int port) {
+	
+	SClient getClient(InetAddress ip, int port) {
 		for(SClient client : clients)
 			if(client != null && client.ip.equals(ip) && client.port == port)
 				return client;
 		return null;
 	}
-
+	
 }
@@ -0,0 +1,382 @@
+package api.main.src;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import api.main.src.Server.SClient;
+
+/**
+ * Memory-mapped checkpoint of a server's sessions, letting a restarted server
+ * resume them instead of having every client redo the RSA handshake at once.
+ * It holds the server's key pair, the world's tick and, for every client, its
+ * connection identity, keys and player state.
+ * <p>
+ * The file has two slots written in turn, each with a sequence number and a
+ * checksum, so a server dying halfway through a checkpoint still leaves the
+ * previous one readable. Checkpoints are written to the mapping and left to
+ * the operating system, which keeps them when the process dies; they only
+ * need to be forced to the disk to survive the machine going down.
+ * <p>
+ * The file is a secret: it holds the server's private key and every client's
+ * session key, enough to impersonate the server or read its traffic. It is
+ * created readable and writable by its owner only where the file system has
+ * POSIX permissions, elsewhere it should be kept in a directory only the
+ * server's user can read.
+ */
+public class SessionCheckpoint {
+	
+	/**
+	 * Milliseconds between two checkpoints of a server.
+	 */
+	public static final int INTERVAL = 1000;
+	
+	private static final int MAGIC = 0x33444743;
+	private static final int HEADER_LENGTH = Integer.BYTES * 2;
+	private static final int SLOT_HEADER = Long.BYTES + Integer.BYTES * 2;
+	private static final int INITIAL_CAPACITY = 1 << 16;
+	
+	private static final int LOGGED_IN = 1, SUBSCRIBER = 2, PLAYER = 4;
+	
+	/**
+	 * Session of a client read from a checkpoint.
+	 */
+	public static class Session{
+		public final SClient client;
+		
+		/**
+		 * Position, rotation and velocity of the client's player, or null if it had none.
+		 */
+		public final float[] state;
+		public final int health;
+		
+		private Session(SClient client, float[] state, int health) {
+			this.client = client;
+			this.state = state;
+			this.health = health;
+		}
+		
+		/**
+		 * Restores the player state of the session on an entity.
+		 * @param entity The entity.
+		 * @return [<b>void</b>]
+		 */
+		public void restore(WorldEntity entity) {
+			if(state == null)
+				return;
+			entity.setPosition(state[0], state[1], state[2]);
+			entity.setRotation(state[3], state[4], state[5]);
+			entity.setVelocity(state[6], state[7], state[8]);
+			entity.setHealth(health);
+		}
+	}
+	
+	private final File file;
+	private RandomAccessFile raf;
+	private MappedByteBuffer buffer;
+	private int capacity;
+	private long sequence = 0;
+	private int slot = 0;
+	
+	private KeyPair keys;
+	private long tick;
+	private List<Session> sessions = Collections.emptyList();
+	
+	/**
+	 * Opens a checkpoint file, reading the last checkpoint it holds.
+	 * @param file The file, created if it doesn't exist.
+	 * @throws IOException If the file couldn't be opened.
+	 */
+	public SessionCheckpoint(File file) throws IOException {
+		this.file = file;
+		map();
+		
+		// Read the newest slot that is whole.
+		for(int i = 0; i < 2; i++) {
+			long written = buffer.getLong(slotOffset(i));
+			if(written > sequence && read(i)) {
+				sequence = written;
+				slot = i;
+			}
+		}
+	}
+	
+	private void map() throws IOException {
+		createPrivate(file.toPath());
+		raf = new RandomAccessFile(file, "rw");
+		if(raf.length() < HEADER_LENGTH || raf.readInt() != MAGIC) {
+			raf.setLength(0);
+			raf.setLength(HEADER_LENGTH + (SLOT_HEADER + INITIAL_CAPACITY) * 2);
+			raf.seek(0);
+			raf.writeInt(MAGIC);
+			raf.writeInt(INITIAL_CAPACITY);
+		}
+		raf.seek(Integer.BYTES);
+		capacity = raf.readInt();
+		buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_LENGTH + (SLOT_HEADER + (long) capacity) * 2);
+	}
+	
+	private int slotOffset(int slot) {
+		return HEADER_LENGTH + (SLOT_HEADER + capacity) * slot;
+	}
+	
+	/**
+	 * @return [{@link KeyPair}] The server's key pair, or null if there's no checkpoint.
+	 */
+	public KeyPair getKeys() {
+		return keys;
+	}
+	
+	/**
+	 * @return [<b>long</b>] The world's tick at the time of the checkpoint.
+	 */
+	public long getTick() {
+		return tick;
+	}
+	
+	/**
+	 * @return [<b>List&lt;Session&gt;</b>] The sessions of the checkpoint.
+	 */
+	public List<Session> getSessions() {
+		return sessions;
+	}
+	
+	/**
+	 * Writes a checkpoint over the oldest one.
+	 * @param keys The server's key pair.
+	 * @param tick The world's tick.
+	 * @param clients The server's clients.
+	 * @param count The number of clients in the array.
+	 * @return [<b>void</b>]
+	 * @throws IOException If the checkpoint couldn't be written.
+	 */
+	public synchronized void write(KeyPair keys, long tick, SClient[] clients, int count) throws IOException {
+		
+		byte[] payload = serialize(keys, tick, clients, count);
+		if(payload.length > capacity)
+			grow(payload.length * 2);
+		
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		
+		// Write the other slot and number it last, the one being replaced stays whole until then.
+		int target = 1 - slot;
+		int offset = slotOffset(target);
+		buffer.putLong(offset, 0);
+		buffer.putInt(offset + Long.BYTES, payload.length);
+		buffer.putInt(offset + Long.BYTES + Integer.BYTES, (int) crc.getValue());
+		ByteBuffer data = buffer.duplicate();
+		data.position(offset + SLOT_HEADER);
+		data.put(payload);
+		buffer.putLong(offset, ++sequence);
+		slot = target;
+		
+	}
+	
+	/**
+	 * Forces the checkpoint to the disk.
+	 * @return [<b>void</b>]
+	 */
+	public synchronized void force() {
+		buffer.force();
+	}
+	
+	public synchronized void close() {
+		try {
+			raf.close();
+		} catch (IOException e) {}
+	}
+	
+	/**
+	 * Moves the checkpoint to a larger file, replacing the old one at once.
+	 */
+	private void grow(int newCapacity) throws IOException {
+		File grown = new File(file.getPath() + ".tmp");
+		Files.deleteIfExists(grown.toPath());
+		createPrivate(grown.toPath());
+		try(RandomAccessFile out = new RandomAccessFile(grown, "rw")) {
+			out.setLength(0);
+			out.setLength(HEADER_LENGTH + (SLOT_HEADER + (long) newCapacity) * 2);
+			out.writeInt(MAGIC);
+			out.writeInt(newCapacity);
+			
+			// Keep the current checkpoint, in the first slot.
+			byte[] current = new byte[SLOT_HEADER + buffer.getInt(slotOffset(slot) + Long.BYTES)];
+			ByteBuffer data = buffer.duplicate();
+			data.position(slotOffset(slot));
+			data.get(current);
+			out.write(current);
+			out.getChannel().force(true);
+		}
+		
+		raf.close();
+		Files.move(grown.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		map();
+		slot = 0;
+	}
+	
+	/**
+	 * Creates a file only its owner can read and write, or takes the permissions
+	 * of an existing one back to that.
+	 */
+	private static void createPrivate(Path path) throws IOException {
+		if(!path.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+			if(!Files.exists(path))
+				Files.createFile(path);
+			File created = path.toFile();
+			created.setReadable(false, false);
+			created.setReadable(true, true);
+			created.setWritable(false, false);
+			created.setWritable(true, true);
+			return;
+		}
+		
+		Set<PosixFilePermission> owner = PosixFilePermissions.fromString("rw-------");
+		try {
+			Files.createFile(path, PosixFilePermissions.asFileAttribute(owner));
+		} catch (FileAlreadyExistsException e) {
+			Files.setPosixFilePermissions(path, owner);
+		}
+	}
+	
+	private static byte[] serialize(KeyPair keys, long tick, SClient[] clients, int count) throws IOException {
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		
+		writeBytes(out, keys.getPublic().getEncoded());
+		writeBytes(out, keys.getPrivate().getEncoded());
+		out.writeLong(tick);
+		
+		ArrayList<SClient> kept = new ArrayList<SClient>();
+		for(int i = 0; i < count; i++) {
+			SClient client = clients[i];
+			
+			// Clients being handed off to another zone are that zone's to keep.
+			if(client != null && client.connected && client.handoff == null)
+				kept.add(client);
+		}
+		out.writeInt(kept.size());
+		
+		for(SClient client : kept) {
+			WorldEntity entity = client.entity;
+			boolean player = entity != null && entity.getKind() == WorldEntity.PLAYER;
+			boolean loggedIn = client.username != null && client.sessionKey != null;
+			
+			writeBytes(out, client.ip.getAddress());
+			out.writeInt(client.port);
+			writeBytes(out, client.key.getEncoded());
+			out.writeByte((loggedIn ? LOGGED_IN : 0) | (client.subscriber ? SUBSCRIBER : 0) | (player ? PLAYER : 0));
+			out.writeInt(client.ping);
+			
+			if(loggedIn) {
+				writeBytes(out, client.sessionKey.getEncoded());
+				writeBytes(out, client.username.getBytes());
+			}
+			
+			if(player) {
+				out.writeFloat(entity.x);
+				out.writeFloat(entity.y);
+				out.writeFloat(entity.z);
+				out.writeFloat(entity.rotX);
+				out.writeFloat(entity.rotY);
+				out.writeFloat(entity.rotZ);
+				out.writeFloat(entity.velX);
+				out.writeFloat(entity.velY);
+				out.writeFloat(entity.velZ);
+				out.writeInt(entity.health);
+			}
+		}
+		
+		return bytes.toByteArray();
+		
+	}
+	
+	private boolean read(int slot) {
+		try {
+			int offset = slotOffset(slot);
+			int length = buffer.getInt(offset + Long.BYTES);
+			if(length <= 0 || length > capacity)
+				return false;
+			
+			byte[] payload = new byte[length];
+			ByteBuffer data = buffer.duplicate();
+			data.position(offset + SLOT_HEADER);
+			data.get(payload);
+			
+			CRC32 crc = new CRC32();
+			crc.update(payload);
+			if((int) crc.getValue() != buffer.getInt(offset + Long.BYTES + Integer.BYTES))
+				return false;
+			
+			ByteBuffer in = ByteBuffer.wrap(payload);
+			KeyPair keys = new KeyPair(RSA.toPublicKey(readBytes(in)), RSA.toPrivateKey(readBytes(in)));
+			if(keys.getPublic() == null || keys.getPrivate() == null)
+				return false;
+			long tick = in.getLong();
+			
+			long now = System.currentTimeMillis();
+			ArrayList<Session> sessions = new ArrayList<Session>();
+			for(int i = in.getInt(); i > 0; i--) {
+				InetAddress ip = InetAddress.getByAddress(readBytes(in));
+				int port = in.getInt();
+				SClient client = new SClient(ip, port, RSA.toPublicKey(readBytes(in)), now);
+				int flags = in.get();
+				client.ping = in.getInt();
+				client.subscriber = (flags & SUBSCRIBER) != 0;
+				
+				if((flags & LOGGED_IN) != 0) {
+					client.sessionKey = Seal.toKey(readBytes(in));
+					client.username = new String(readBytes(in));
+				}
+				
+				float[] state = null;
+				int health = 0;
+				if((flags & PLAYER) != 0) {
+					state = new float[9];
+					for(int j = 0; j < state.length; j++)
+						state[j] = in.getFloat();
+					health = in.getInt();
+				}
+				
+				if(client.key != null)
+					sessions.add(new Session(client, state, health));
+			}
+			
+			this.keys = keys;
+			this.tick = tick;
+			this.sessions = sessions;
+			return true;
+		}catch(Exception e) {return false;}
+	}
+	
+	private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+	
+	private static byte[] readBytes(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return bytes;
+	}
+	
+}
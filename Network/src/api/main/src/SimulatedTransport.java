@@ -0,0 +1,128 @@
+package api.main.src;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transport wrapper injecting latency, jitter, loss, duplication and
+ * reordering into the datagrams sent through another transport. Only sends
+ * are impaired, so both ends should be wrapped to impair both directions.
+ */
+public class SimulatedTransport implements Transport {
+	
+	/**
+	 * Extra delay, in multiples of the latency plus jitter, given to reordered datagrams.
+	 */
+	private static final int REORDER_DELAY = 2;
+	
+	private final Transport inner;
+	private final NetworkConditions conditions;
+	private final Random random = new Random();
+	
+	private final DelayQueue<Delayed> queue = new DelayQueue<Delayed>();
+	private final Thread sender;
+	private volatile boolean running = true;
+	
+	/**
+	 * A datagram waiting for its delay to expire.
+	 */
+	private static class DelayedDatagram implements Delayed{
+		private final byte[] data;
+		private final InetSocketAddress target;
+		private final long time;
+		
+		private DelayedDatagram(byte[] data, InetSocketAddress target, long time) {
+			this.data = data;
+			this.target = target;
+			this.time = time;
+		}
+		
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(time - System.nanoTime(), TimeUnit.NANOSECONDS);
+		}
+		
+		public int compareTo(Delayed other) {
+			return Long.compare(time, ((DelayedDatagram) other).time);
+		}
+	}
+	
+	public SimulatedTransport(Transport inner, NetworkConditions conditions) {
+		this.inner = inner;
+		this.conditions = conditions;
+		this.sender = new Thread(this::sendDelayed, "SimulatedTransport-" + inner.getLocalPort());
+		this.sender.setDaemon(true);
+		this.sender.start();
+	}
+	
+	/**
+	 * Creates a factory wrapping every transport opened by another factory.
+	 * @param inner The factory opening the real transports.
+	 * @param conditions The impairments to apply.
+	 * @return [{@link TransportFactory}] The factory.
+	 */
+	public static TransportFactory factory(TransportFactory inner, NetworkConditions conditions) {
+		return port -> new SimulatedTransport(inner.open(port), conditions);
+	}
+	
+	public void send(ByteBuffer data, InetSocketAddress target) throws IOException {
+		
+		if(roll(conditions.getLoss()))
+			return;
+		
+		byte[] copy = new byte[data.remaining()];
+		data.get(copy);
+		
+		int copies = roll(conditions.getDuplication()) ? 2 : 1;
+		for(int i = 0; i < copies; i++) {
+			long delay = conditions.getLatency();
+			if(conditions.getJitter() > 0)
+				delay += random.nextInt(conditions.getJitter() + 1);
+			if(roll(conditions.getReordering()))
+				delay += REORDER_DELAY * (conditions.getLatency() + conditions.getJitter() + 1);
+			
+			if(delay == 0)
+				inner.send(ByteBuffer.wrap(copy), target);
+			else
+				queue.add(new DelayedDatagram(copy, target, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay)));
+		}
+		
+	}
+	
+	public InetSocketAddress receive(ByteBuffer buffer) throws IOException {
+		return inner.receive(buffer);
+	}
+	
+	public int getLocalPort() {
+		return inner.getLocalPort();
+	}
+	
+	public NetworkConditions getConditions() {
+		return conditions;
+	}
+	
+	public void close() {
+		running = false;
+		sender.interrupt();
+		inner.close();
+	}
+	
+	private void sendDelayed() {
+		while(running) {
+			try {
+				DelayedDatagram datagram = (DelayedDatagram) queue.take();
+				inner.send(ByteBuffer.wrap(datagram.data), datagram.target);
+			} catch (InterruptedException e) {
+			} catch (IOException e) {}
+		}
+	}
+	
+	private boolean roll(double probability) {
+		return probability > 0 && random.nextDouble() < probability;
+	}
+	
+}
@@ -1,5 +1,7 @@
 package api.main.src;
 
+import java.util.Base64;
+
 public class Test {
 	
 	public static void main(String[] args) throws Exception {
@@ -7,30 +9,17 @@ public class Test {
 		Server server = new Server()
 				.withPortRange(PortRange.create().from(42353).to(42360))
 				.withThreads(3)
-				.init();
+				.withWorld(new World())
+				.withMetrics(Metrics.DEFAULT.withJvmMetrics(), "test");
+		
+		// Relays sealing their subscription with this key get the whole world.
+		String clusterKey = System.getProperty("cluster.key");
+		if(clusterKey != null)
+			server.withClusterKey(Seal.toKey(Base64.getDecoder().decode(clusterKey)));
+		
+		server.init().start();
+		new MetricsServer(Metrics.DEFAULT, MetricsServer.DEFAULT_PORT);
 		
-		long lastTick = System.nanoTime();
-		long lastTime = System.nanoTime();
-		while(true) {
-				
-			long currentTime = System.nanoTime();
-			if(currentTime - lastTime >= 1000000000) {
-				
-				System.out.println(server.currentClients());
-				
-				lastTime = currentTime;
-			}
-			
-			long currentTick = System.nanoTime();
-			if(currentTick - lastTick >= 1000000000 / 60) {
-				
-				server.tickClients();
-				
-				lastTick = currentTick;
-			}
-			
-		}
-
 	}
 	
 }
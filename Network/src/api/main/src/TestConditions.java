@@ -0,0 +1,95 @@
+package api.main.src;
+
+import java.net.InetAddress;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runs a server and a client on loopback over an impaired network and checks
+ * how much of the state stream the server scheduled for the client made it
+ * there. Congestion control and the bandwidth scheduler leave out states on
+ * purpose, only the ones actually sent are counted.
+ */
+public class TestConditions {
+	
+	/**
+	 * Milliseconds the client is given to log in before states are counted.
+	 */
+	private static final int WARMUP = 3000;
+	
+	/**
+	 * Milliseconds states are counted for.
+	 */
+	private static final int DURATION = 10000;
+	
+	/**
+	 * Milliseconds left for the last states sent to arrive, above the latency and jitter.
+	 */
+	private static final int DRAIN = 500;
+	
+	/**
+	 * Share of the sent states the client must receive, below the 95% the loss leaves.
+	 */
+	private static final double MIN_DELIVERED = 0.9;
+	
+	public static void main(String[] args) throws Exception {
+		
+		NetworkConditions conditions = NetworkConditions.create()
+				.latency(50)
+				.jitter(20)
+				.loss(0.05)
+				.duplication(0.01)
+				.reordering(0.02);
+		
+		TransportFactory transport = SimulatedTransport.factory(TransportFactory.UDP, conditions);
+		
+		// Ticks the server sent the client a state on, the client is the only one scheduled.
+		Set<Long> sent = ConcurrentHashMap.newKeySet(), received = ConcurrentHashMap.newKeySet();
+		BandwidthScheduler bandwidth = new BandwidthScheduler() {
+			public int schedule(long tick, Schedule schedule, WorldEntity viewer, Sender sender) {
+				return super.schedule(tick, schedule, viewer, state -> {
+					sent.add(tick);
+					sender.send(state);
+				});
+			}
+		};
+		
+		Server server = new Server()
+				.withBandwidth(bandwidth)
+				.withPortRange(PortRange.create().from(42353).to(42360))
+				.withThreads(1)
+				.withWorld(new World())
+				.withTransport(transport)
+				.init();
+		server.start();
+		
+		// Duplicated packets arrive twice, count the ticks instead.
+		Client client = new Client(InetAddress.getLoopbackAddress(), 42353, "APE", transport)
+				.withStateCallback(state -> received.add(state.tick));
+		client.start();
+		
+		Thread.sleep(WARMUP);
+		sent.clear();
+		Thread.sleep(DURATION);
+		
+		// Only the states sent so far are counted, the late ones get time to arrive.
+		Set<Long> counted = new HashSet<Long>(sent);
+		Thread.sleep(DRAIN);
+		int delivered = 0;
+		for(long tick : counted)
+			if(received.contains(tick))
+				delivered++;
+		
+		client.stopServer();
+		server.stopServer();
+		
+		double share = counted.isEmpty() ? 0 : delivered / (double) counted.size();
+		boolean passed = share >= MIN_DELIVERED;
+		System.out.printf("%s[%s] received %d of %d states sent (%.1f%%)%n", passed ? "[OK]   " : "[FAIL] ", 
+				conditions, delivered, counted.size(), 100.0 * share);
+		System.exit(passed ? 0 : 1);
+		
+	}
+	
+}
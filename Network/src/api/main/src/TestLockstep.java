@@ -0,0 +1,51 @@
+package api.main.src;
+
+import java.net.InetAddress;
+
+/**
+ * Runs a lockstep match between a few clients on loopback over a lossy
+ * network and reports whether their simulations stay identical.
+ */
+public class TestLockstep {
+	
+	private static final int PEERS = 3;
+	private static final int UNITS_PER_PEER = 2000;
+	
+	public static void main(String[] args) throws Exception {
+		
+		TransportFactory transport = SimulatedTransport.factory(TransportFactory.UDP, 
+				NetworkConditions.create().latency(30).jitter(10).loss(0.05));
+		
+		Server server = new Server()
+				.withPortRange(PortRange.create().from(42353).to(42360))
+				.withThreads(1)
+				.withTransport(transport)
+				.init();
+		server.start();
+		
+		Client[] clients = new Client[PEERS];
+		for(int i = 0; i < PEERS; i++) {
+			clients[i] = new Client(InetAddress.getLoopbackAddress(), 42353, "PEER" + i, transport);
+			clients[i].setInput(WorldEntity.FORWARD << (i % 4), i * 90);
+			clients[i].start();
+		}
+		
+		// Give every client time to log in.
+		Thread.sleep(5000);
+		LockstepSession match = server.startLockstep(1234, UNITS_PER_PEER);
+		
+		while(true) {
+			Thread.sleep(1000);
+			
+			StringBuilder status = new StringBuilder("[server tick " + match.getTick() + ", " + match.getDesyncs() + " desyncs]");
+			for(Client client : clients) {
+				LockstepSimulation simulation = client.getLockstep();
+				if(simulation != null)
+					status.append(String.format(" %d:%08x", simulation.getTick(), simulation.checksum()));
+			}
+			System.out.println(status);
+		}
+		
+	}
+	
+}
@@ -0,0 +1,63 @@
+package api.main.src;
+
+import java.util.ArrayList;
+
+/**
+ * Runs timeouts on a timing wheel driven by a fake clock and reports whether
+ * they fire on time, including periods as long as or longer than the wheel.
+ */
+public class TestTimingWheel {
+	
+	private static final int SLOTS = 8;
+	private static final int RESOLUTION = 10;
+	
+	private static long now = 0;
+	
+	public static void main(String[] args) {
+		
+		boolean passed = true;
+		int turn = SLOTS * RESOLUTION;
+		
+		for(long delay : new long[] {0, 5, RESOLUTION, turn - RESOLUTION, turn, turn + 5, 3 * turn})
+			passed &= check("schedule(" + delay + ")", delay, 0);
+		
+		for(long period : new long[] {RESOLUTION, 30, turn, turn + RESOLUTION, 2 * turn})
+			passed &= check("every(" + period + ")", period, period);
+		
+		System.out.println(passed ? "All timeouts fired on time." : "Some timeouts didn't fire on time.");
+		
+	}
+	
+	/**
+	 * Runs a timeout for 10 turns of the wheel and compares its firing times to its deadlines.
+	 */
+	private static boolean check(String name, long delay, long period) {
+		
+		now = 0;
+		TimingWheel wheel = new TimingWheel(SLOTS, RESOLUTION, () -> now);
+		ArrayList<Long> fired = new ArrayList<Long>();
+		if(period > 0)
+			wheel.every(period, () -> fired.add(now));
+		else
+			wheel.schedule(delay, () -> fired.add(now));
+		
+		long end = 10 * SLOTS * RESOLUTION;
+		for(now = 1; now <= end; now++)
+			wheel.advance(now);
+		
+		// Each firing is due within one slot after its deadline.
+		boolean passed = !fired.isEmpty();
+		for(int i = 0; i < fired.size(); i++) {
+			long deadline = delay + i * period;
+			long late = fired.get(i) - deadline;
+			passed &= late >= 0 && late < RESOLUTION + 1;
+		}
+		if(period > 0)
+			passed &= fired.size() == (end - delay) / period + 1;
+		
+		System.out.println((passed ? "[OK]   " : "[FAIL] ") + name + " fired at " + fired);
+		return passed;
+		
+	}
+	
+}
@@ -0,0 +1,54 @@
+package api.main.src;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.security.KeyPair;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Runs two zone servers on loopback, split at x = 0, and a client walking
+ * west then east across the border.
+ */
+public class TestZones {
+	
+	public static void main(String[] args) throws Exception {
+		
+		InetAddress loopback = InetAddress.getLoopbackAddress();
+		
+		ZoneMap zones = ZoneMap.create()
+				.add(new Zone(-1000, -1000, 0, 1000, new InetSocketAddress(loopback, 42353)))
+				.add(new Zone(0, -1000, 1000, 1000, new InetSocketAddress(loopback, 42363)));
+		
+		// Every server of the cluster shares the same identity and cluster key.
+		KeyPair keys = RSA.generateKeyPair(Server.KEY_SIZE);
+		SecretKey clusterKey = Seal.generateKey();
+		
+		Server west = new Server(keys)
+				.withPortRange(PortRange.create().from(42353).to(42355))
+				.withThreads(1)
+				.withWorld(new World())
+				.withZone(zones, 0, clusterKey)
+				.init();
+		
+		Server east = new Server(keys)
+				.withPortRange(PortRange.create().from(42363).to(42365))
+				.withThreads(1)
+				.withWorld(new World())
+				.withZone(zones, 1, clusterKey)
+				.init();
+		
+		west.start();
+		east.start();
+		
+		// The player spawns at the origin, which belongs to the east zone, so it is handed off right away.
+		Client client = new Client(loopback, 42353, "APE");
+		client.setInput(WorldEntity.LEFT, 0);
+		client.start();
+		
+		Thread.sleep(5000);
+		client.setInput(WorldEntity.RIGHT, 0);
+		
+	}
+	
+}
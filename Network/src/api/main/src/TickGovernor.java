@@ -0,0 +1,188 @@
+package api.main.src;
+
+/**
+ * Adapts a server's tick rate to how expensive its ticks are. The cost of
+ * every tick is measured against the time available for it; when the server
+ * keeps going over budget it steps down to coarser simulation steps and less
+ * frequent snapshots, and steps back up once there is headroom again.
+ * <p>
+ * Every adjustment is counted so the server's degradation can be followed.
+ */
+public class TickGovernor {
+	
+	/**
+	 * World ticks simulated in a single step, per level.
+	 */
+	private static final int[] SIMULATION_STEPS = {1, 1, 2, 2, 3};
+	
+	/**
+	 * Steps between two snapshots, per level.
+	 */
+	private static final int[] SNAPSHOT_INTERVALS = {1, 2, 1, 2, 2};
+	
+	/**
+	 * Lowest level, with every level the cost of a second of ticks about halves or more.
+	 */
+	public static final int MAX_LEVEL = SIMULATION_STEPS.length - 1;
+	
+	/**
+	 * Default share of a tick's time its cost may take before stepping down.
+	 */
+	public static final float HIGH_LOAD = 0.8f;
+	
+	/**
+	 * Default share of a tick's time under which to step back up, low enough for
+	 * the faster rates to fit under {@link #HIGH_LOAD}.
+	 */
+	public static final float LOW_LOAD = 0.35f;
+	
+	/**
+	 * Milliseconds between two adjustments, for the load to settle.
+	 */
+	public static final int COOLDOWN = 1000;
+	
+	private static final float SMOOTHING = 0.05f;
+	
+	private float highLoad = HIGH_LOAD;
+	private float lowLoad = LOW_LOAD;
+	
+	private int level = 0;
+	private float load = 0;
+	private long lastChange = 0;
+	
+	private long ticks = 0;
+	private long overruns = 0;
+	private long steppedDown = 0;
+	private long steppedUp = 0;
+	
+	/**
+	 * Sets the loads stepping the rates down and back up.
+	 * @param low The share of a tick's time under which to step up.
+	 * @param high The share of a tick's time over which to step down.
+	 * @return [{@link TickGovernor}] This governor.
+	 */
+	public TickGovernor withLoads(float low, float high) {
+		if(low < 0 || high <= low)
+			throw new RuntimeException("Invalid loads specified.");
+		this.lowLoad = low;
+		this.highLoad = high;
+		return this;
+	}
+	
+	/**
+	 * Records the cost of a tick and adjusts the rates if needed.
+	 * @param cost The time the tick took, in nanoseconds.
+	 * @param now The current time, in milliseconds.
+	 * @return [<b>boolean</b>] Whether the rates changed.
+	 */
+	public synchronized boolean record(long cost, long now) {
+		
+		long period = getTickLength();
+		load += (cost / (float) period - load) * SMOOTHING;
+		if(cost > period)
+			overruns++;
+		ticks++;
+		
+		if(now - lastChange < COOLDOWN)
+			return false;
+		
+		if(load > highLoad && level < MAX_LEVEL) {
+			level++;
+			steppedDown++;
+		}else if(load < lowLoad && level > 0) {
+			level--;
+			steppedUp++;
+		}else
+			return false;
+		
+		lastChange = now;
+		ticks = 0;
+		return true;
+		
+	}
+	
+	/**
+	 * @return [<b>int</b>] The number of world ticks each step simulates.
+	 */
+	public synchronized int getSimulationStep() {
+		return SIMULATION_STEPS[level];
+	}
+	
+	/**
+	 * @return [<b>int</b>] The number of steps between two snapshots.
+	 */
+	public synchronized int getSnapshotInterval() {
+		return SNAPSHOT_INTERVALS[level];
+	}
+	
+	/**
+	 * @return [<b>boolean</b>] Whether the coming step publishes a snapshot.
+	 */
+	public synchronized boolean isSnapshotTick() {
+		return ticks % SNAPSHOT_INTERVALS[level] == 0;
+	}
+	
+	/**
+	 * @return [<b>long</b>] The time between two steps, in nanoseconds.
+	 */
+	public synchronized long getTickLength() {
+		return Server.TICK_LENGTH * SIMULATION_STEPS[level];
+	}
+	
+	public synchronized int getSimulationRate() {
+		return World.TICKS_PER_SECOND / SIMULATION_STEPS[level];
+	}
+	
+	public synchronized int getSnapshotRate() {
+		return World.TICKS_PER_SECOND / SIMULATION_STEPS[level] / SNAPSHOT_INTERVALS[level];
+	}
+	
+	/**
+	 * @return [<b>int</b>] The current level, 0 being the full rates.
+	 */
+	public synchronized int getLevel() {
+		return level;
+	}
+	
+	/**
+	 * @return [<b>float</b>] The smoothed share of a tick's time its cost takes.
+	 */
+	public synchronized float getLoad() {
+		return load;
+	}
+	
+	/**
+	 * @return [<b>long</b>] The number of ticks that took longer than their time.
+	 */
+	public synchronized long getOverruns() {
+		return overruns;
+	}
+	
+	/**
+	 * @return [<b>long</b>] The number of times the rates were stepped down.
+	 */
+	public synchronized long getSteppedDown() {
+		return steppedDown;
+	}
+	
+	/**
+	 * @return [<b>long</b>] The number of times the rates were stepped back up.
+	 */
+	public synchronized long getSteppedUp() {
+		return steppedUp;
+	}
+	
+	public synchronized String toString() {
+		return getSimulationRate() + " Hz simulation, " + getSnapshotRate() + " Hz snapshots, " 
+				+ Math.round(load * 100) + "% load";
+	}
+	
+	/**
+	 * Returns a report of the tick rates and every adjustment so far.
+	 * @return [<b>String</b>] The report.
+	 */
+	public synchronized String report() {
+		return "Tick rate : " + this + " (" + steppedDown + " down, " + steppedUp + " up, " + overruns + " overruns)\n";
+	}
+	
+}
@@ -0,0 +1,179 @@
+package api.main.src;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.LongSupplier;
+
+/**
+ * Hashed timing wheel used to run session timeouts, keepalives and resends.
+ * Timeouts are hashed into slots by their deadline, so advancing the wheel
+ * only visits the timeouts that land in the current slot instead of every
+ * session. The wheel must always be advanced from the same thread, but
+ * timeouts can be scheduled and cancelled from any thread.
+ */
+public class TimingWheel {
+	
+	/**
+	 * A task scheduled on the wheel.
+	 */
+	public static class Timeout{
+		private final Runnable task;
+		private final long period;
+		private long deadline;
+		private int rounds;
+		private Timeout next;
+		private volatile boolean cancelled = false;
+		
+		private Timeout(Runnable task, long deadline, long period) {
+			this.task = task;
+			this.deadline = deadline;
+			this.period = period;
+		}
+		
+		/**
+		 * Cancels the timeout. It is dropped the next time its slot is visited.
+		 * @return [<b>void</b>]
+		 */
+		public void cancel() {
+			cancelled = true;
+		}
+		
+		public boolean isCancelled() {
+			return cancelled;
+		}
+	}
+	
+	private final Timeout[] slots;
+	private final int mask;
+	private final long resolution;
+	
+	private final ConcurrentLinkedQueue<Timeout> pending = new ConcurrentLinkedQueue<Timeout>();
+	
+	private final LongSupplier clock;
+	private final long startTime;
+	private long currentTick = 0;
+	
+	/**
+	 * Creates a timing wheel running on the system clock.
+	 * @param numSlots The number of slots in the wheel, rounded up to a power of two.
+	 * @param resolution The duration of a slot in milliseconds.
+	 */
+	public TimingWheel(int numSlots, long resolution) {
+		this(numSlots, resolution, System::currentTimeMillis);
+	}
+	
+	/**
+	 * Creates a timing wheel.
+	 * @param numSlots The number of slots in the wheel, rounded up to a power of two.
+	 * @param resolution The duration of a slot in milliseconds.
+	 * @param clock The clock deadlines are computed from, in milliseconds. The wheel must be advanced with the same clock.
+	 */
+	public TimingWheel(int numSlots, long resolution, LongSupplier clock) {
+		if(numSlots < 1 || resolution < 1)
+			throw new RuntimeException("Invalid timing wheel size.");
+		int size = Integer.highestOneBit(numSlots);
+		if(size < numSlots)
+			size <<= 1;
+		this.slots = new Timeout[size];
+		this.mask = size - 1;
+		this.resolution = resolution;
+		this.clock = clock;
+		this.startTime = clock.getAsLong();
+	}
+	
+	/**
+	 * Schedules a task to be run after a delay.
+	 * @param delay The delay in milliseconds.
+	 * @param task The task to run.
+	 * @return [{@link Timeout}] A handle that can be used to cancel the task.
+	 */
+	public Timeout schedule(long delay, Runnable task) {
+		Timeout timeout = new Timeout(task, clock.getAsLong() + Math.max(0, delay), 0);
+		pending.add(timeout);
+		return timeout;
+	}
+	
+	/**
+	 * Schedules a task to be run at a fixed period until it is cancelled.
+	 * @param period The period in milliseconds.
+	 * @param task The task to run.
+	 * @return [{@link Timeout}] A handle that can be used to cancel the task.
+	 */
+	public Timeout every(long period, Runnable task) {
+		if(period < 1)
+			throw new RuntimeException("Invalid timeout period.");
+		Timeout timeout = new Timeout(task, clock.getAsLong() + period, period);
+		pending.add(timeout);
+		return timeout;
+	}
+	
+	/**
+	 * Advances the wheel up to the specified time and runs every expired task.
+	 * @param now The current time in milliseconds.
+	 * @return [<b>void</b>]
+	 */
+	public void advance(long now) {
+		
+		long targetTick = (now - startTime) / resolution;
+		
+		while(currentTick < targetTick) {
+			
+			currentTick++;
+			
+			// Hash newly scheduled timeouts into their slots.
+			Timeout timeout;
+			while((timeout = pending.poll()) != null)
+				place(timeout, 0);
+			
+			// Run the expired timeouts of the current slot and keep the others.
+			int index = (int)(currentTick & mask);
+			Timeout current = slots[index];
+			slots[index] = null;
+			
+			while(current != null) {
+				Timeout next = current.next;
+				if(!current.cancelled) {
+					if(current.rounds == 0) {
+						current.task.run();
+						
+						// Re-arm periodic timeouts.
+						if(current.period > 0 && !current.cancelled) {
+							current.deadline += current.period;
+							place(current, 1);
+						}
+					}else {
+						current.rounds--;
+						current.next = slots[index];
+						slots[index] = current;
+					}
+				}
+				current = next;
+			}
+			
+		}
+		
+	}
+	
+	/**
+	 * Returns the duration of a slot in milliseconds.
+	 * @return [<b>long</b>] The wheel's resolution.
+	 */
+	public long getResolution() {
+		return resolution;
+	}
+	
+	private void place(Timeout timeout, long minTicks) {
+		if(timeout.cancelled)
+			return;
+		
+		long deadlineTick = (timeout.deadline - startTime + resolution - 1) / resolution;
+		long ticks = Math.max(minTicks, deadlineTick - currentTick);
+		
+		// Pending timeouts are placed right before the current slot is visited, re-armed
+		// ones (minTicks of 1) while it is, so those only see it again after a whole turn.
+		timeout.rounds = (int)((ticks - minTicks) / slots.length);
+		int index = (int)((currentTick + ticks) & mask);
+		timeout.next = slots[index];
+		slots[index] = timeout;
+	}
+	
+}
@@ -0,0 +1,42 @@
+package api.main.src;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Datagram transport used by servers and clients to exchange packets.
+ * Datagrams may be lost, duplicated or reordered, just like with UDP.
+ */
+public interface Transport {
+	
+	/**
+	 * Sends a datagram.
+	 * @param data The datagram's data, from its position to its limit.
+	 * @param target The address to send the datagram to.
+	 * @throws IOException If the datagram couldn't be sent.
+	 */
+	void send(ByteBuffer data, InetSocketAddress target) throws IOException;
+	
+	/**
+	 * Blocks until a datagram is received.
+	 * @param buffer The buffer to read the datagram into.
+	 * @return [{@link InetSocketAddress}] The address of the sender.
+	 * @throws IOException If the transport was closed.
+	 */
+	InetSocketAddress receive(ByteBuffer buffer) throws IOException;
+	
+	/**
+	 * Returns the port the transport is bound to.
+	 * @return [<b>int</b>] The local port.
+	 */
+	int getLocalPort();
+	
+	void close();
+	
+	default void send(byte[] data, InetAddress ip, int port) throws IOException {
+		send(ByteBuffer.wrap(data), new InetSocketAddress(ip, port));
+	}
+	
+}
@@ -0,0 +1,48 @@
+package api.main.src;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Opens the transports of a server or client.
+ */
+@FunctionalInterface
+public interface TransportFactory {
+	
+	public static final TransportFactory UDP = UdpTransport::new;
+	
+	/**
+	 * Transports reaching the other local transports of this JVM.
+	 */
+	public static final TransportFactory LOCAL = LocalTransport::new;
+	
+	/**
+	 * Transports reaching the other mapped transports of this host through the
+	 * ring files of {@link MappedTransport#DEFAULT_DIRECTORY}.
+	 */
+	public static final TransportFactory MAPPED = MappedTransport::new;
+	
+	/**
+	 * Transports dropping everything they send and never receiving anything.
+	 */
+	public static final TransportFactory NULL = NullTransport::new;
+	
+	/**
+	 * Creates a factory of transports reaching the other mapped transports of
+	 * this host using the same directory.
+	 * @param directory The directory of the ring files.
+	 * @return [{@link TransportFactory}] The factory.
+	 */
+	public static TransportFactory mapped(File directory) {
+		return port -> new MappedTransport(directory, port);
+	}
+	
+	/**
+	 * Opens a transport.
+	 * @param port The port to bind to, 0 for any free port.
+	 * @return [{@link Transport}] The opened transport.
+	 * @throws IOException If the transport couldn't be opened.
+	 */
+	Transport open(int port) throws IOException;
+	
+}
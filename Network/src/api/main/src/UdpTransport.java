@@ -0,0 +1,38 @@
+package api.main.src;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * Transport sending datagrams over UDP through a {@link DatagramChannel}.
+ */
+public class UdpTransport implements Transport {
+	
+	private final DatagramChannel channel;
+	
+	public UdpTransport(int port) throws IOException {
+		this.channel = DatagramChannel.open();
+		this.channel.bind(new InetSocketAddress(port));
+	}
+	
+	public void send(ByteBuffer data, InetSocketAddress target) throws IOException {
+		channel.send(data, target);
+	}
+	
+	public InetSocketAddress receive(ByteBuffer buffer) throws IOException {
+		return (InetSocketAddress) channel.receive(buffer);
+	}
+	
+	public int getLocalPort() {
+		return channel.socket().getLocalPort();
+	}
+	
+	public void close() {
+		try {
+			channel.close();
+		} catch (IOException e) {}
+	}
+	
+}
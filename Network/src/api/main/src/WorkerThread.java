@@ -1,7 +1,6 @@
 package api.main.src;
 
-import java.net.DatagramSocket;
-import java.net.SocketException;
+import java.io.IOException;
 import java.security.PrivateKey;
 import java.util.ArrayList;
 import java.util.function.BiConsumer;
@@ -14,14 +13,18 @@ public class WorkerThread extends Receiver{
 	
 	private BiConsumer<PacketInfo, WorkerThread> callbackPointer;
 	
-	public DatagramSocket socket;
+	public Transport socket;
 	
 	public WorkerThread(int port, PrivateKey key, BiConsumer<PacketInfo, WorkerThread> callbackPointer) {
-		super(port, key);
+		this(TransportFactory.UDP, port, key, callbackPointer);
+	}
+	
+	public WorkerThread(TransportFactory transport, int port, PrivateKey key, BiConsumer<PacketInfo, WorkerThread> callbackPointer) {
+		super(transport, port, key);
 		withCallback(this::callback);
 		start();
 		this.callbackPointer = callbackPointer;
-		try {this.socket = new DatagramSocket();} catch (SocketException e) {}
+		try {this.socket = transport.open(0);} catch (IOException e) {}
 	}
 	
 	public void serve(SClient client) {
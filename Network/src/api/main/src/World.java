@@ -0,0 +1,169 @@
+package api.main.src;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Authoritative game state hosted by a {@link Server}. The world is ticked at
+ * a fixed rate by the server, applies the inputs received from clients and
+ * publishes its state back to them.
+ */
+public class World {
+	
+	public static final int TICKS_PER_SECOND = 60;
+	
+	/**
+	 * Ticks after which a mirrored entity that wasn't received again is removed.
+	 */
+	public static final int MIRROR_TIMEOUT = TICKS_PER_SECOND;
+	
+	/**
+	 * Size of the header of a state packet (tick, chunk index, entity count).
+	 */
+	static final int STATE_HEADER = Long.BYTES + Short.BYTES + Short.BYTES;
+	
+	/**
+	 * Maximum number of entities sent in a single state packet.
+	 */
+	public static final int ENTITIES_PER_PACKET = 
+			(Receiver.BUFFER_LENGTH - Seal.OVERHEAD - Packet.HEADER_LENGTH - STATE_HEADER) / WorldEntity.STATE_LENGTH;
+	
+	private final Map<Integer, WorldEntity> entities = new ConcurrentHashMap<Integer, WorldEntity>();
+	private final AtomicInteger nextId = new AtomicInteger(1);
+	
+	private long tick = 0;
+	
+	/**
+	 * Spawns a new entity in the world.
+	 * @param kind The kind of entity ({@link WorldEntity#PLAYER} or {@link WorldEntity#MONSTER}).
+	 * @return [{@link WorldEntity}] The spawned entity.
+	 */
+	public WorldEntity spawn(byte kind) {
+		WorldEntity entity = new WorldEntity(nextId.getAndIncrement(), kind);
+		entities.put(entity.getId(), entity);
+		return entity;
+	}
+	
+	/**
+	 * Removes an entity from the world.
+	 * @param entity The entity to remove.
+	 * @return [<b>void</b>]
+	 */
+	public void remove(WorldEntity entity) {
+		if(entity != null)
+			entities.remove(entity.getId());
+	}
+	
+	public WorldEntity getEntity(int id) {
+		return entities.get(id);
+	}
+	
+	public Collection<WorldEntity> getEntities() {
+		return entities.values();
+	}
+	
+	public long getTick() {
+		return tick;
+	}
+	
+	/**
+	 * Moves the world's tick forward, for a restarted server to go on from where it stopped.
+	 * @param tick The tick to go on from.
+	 * @return [<b>void</b>]
+	 */
+	public void resume(long tick) {
+		this.tick = Math.max(this.tick, tick);
+	}
+	
+	/**
+	 * Advances the simulation by one fixed tick.
+	 * @return [<b>void</b>]
+	 */
+	public void tick() {
+		tick(1);
+	}
+	
+	/**
+	 * Advances the simulation by several fixed ticks in a single step, which
+	 * costs as much as one tick but moves entities as far as all of them.
+	 * @param steps The number of ticks.
+	 * @return [<b>void</b>]
+	 */
+	public void tick(int steps) {
+		if(steps < 1)
+			throw new RuntimeException("Invalid number of steps specified.");
+		for(WorldEntity entity : entities.values())
+			entity.tick(tick, steps);
+		tick += steps;
+	}
+	
+	/**
+	 * Copies the state received from another world, for a world that isn't
+	 * simulated but republishes the state of a remote one. Entities keep their
+	 * remote ids and are removed once they weren't received for
+	 * {@link #MIRROR_TIMEOUT} ticks. The world's tick follows the remote one.
+	 * @param snapshot The received state.
+	 * @return [<b>void</b>]
+	 */
+	public void mirror(WorldSnapshot snapshot) {
+		for(WorldEntity received : snapshot.entities) {
+			WorldEntity entity = entities.get(received.getId());
+			if(entity == null || entity.getKind() != received.getKind()) {
+				entity = new WorldEntity(received.getId(), received.getKind());
+				entities.put(entity.getId(), entity);
+			}
+			
+			// Chunks can arrive out of order, keep the latest state.
+			if(snapshot.tick >= entity.mirrored)
+				entity.mirror(received, snapshot.tick);
+		}
+		
+		if(snapshot.tick > tick) {
+			tick = snapshot.tick;
+			entities.values().removeIf(entity -> entity.mirrored >= 0 && entity.mirrored < tick - MIRROR_TIMEOUT);
+		}
+	}
+	
+	/**
+	 * Serializes the state of every entity. The state is split in several
+	 * packets so each of them fits in a single datagram.
+	 * @return [<b>ArrayList&lt;byte[]&gt;</b>] The content of the state packets.
+	 */
+	public ArrayList<byte[]> snapshot() {
+		
+		ArrayList<byte[]> packets = new ArrayList<byte[]>();
+		ArrayList<WorldEntity> all = new ArrayList<WorldEntity>(entities.values());
+		
+		short chunk = 0;
+		for(int start = 0; start < all.size() || start == 0; start += ENTITIES_PER_PACKET) {
+			int count = Math.min(ENTITIES_PER_PACKET, all.size() - start);
+			ByteBuffer buffer = ByteBuffer.allocate(STATE_HEADER + count * WorldEntity.STATE_LENGTH)
+					.putLong(tick)
+					.putShort(chunk++)
+					.putShort((short) count);
+			for(int i = start; i < start + count; i++)
+				write(all.get(i), buffer);
+			packets.add(buffer.array());
+		}
+		
+		return packets;
+		
+	}
+	
+	static void write(WorldEntity entity, ByteBuffer buffer) {
+		buffer.putInt(entity.getId())
+			.put(entity.getKind())
+			.putFloat(entity.x)
+			.putFloat(entity.y)
+			.putFloat(entity.z)
+			.putFloat(entity.rotX)
+			.putFloat(entity.rotY)
+			.putFloat(entity.rotZ);
+		entity.animation.write(buffer);
+	}
+	
+}
@@ -0,0 +1,246 @@
+package api.main.src;
+
+/**
+ * Headless counterpart of the game's entities. Holds the same position,
+ * rotation and velocity state and applies the same movement rules without
+ * depending on GLFW, OpenGL or the math library used by the renderer.
+ */
+public class WorldEntity {
+	
+	public static final byte PLAYER = 0;
+	public static final byte MONSTER = 1;
+	
+	/**
+	 * Invisible free camera of a spectator, never part of a world's state.
+	 */
+	public static final byte SPECTATOR = 2;
+	
+	/**
+	 * Movement input bits, matching the game's movement key bindings.
+	 */
+	public static final int FORWARD = 1, BACKWARD = 2, LEFT = 4, RIGHT = 8;
+	
+	public static final float PLAYER_SPEED = 0.5f;
+	public static final float SPECTATOR_SPEED = 1.5f;
+	
+	/**
+	 * Size of an entity in a state snapshot.
+	 */
+	public static final int STATE_LENGTH = Integer.BYTES + Byte.BYTES + Float.BYTES * 6 + AnimationState.LENGTH;
+	
+	private final int id;
+	private final byte kind;
+	
+	/**
+	 * Position, rotation and velocity of the entity.
+	 */
+	protected float x, y, z;
+	protected float rotX, rotY, rotZ;
+	protected float velX, velY, velZ;
+	
+	protected float speed;
+	protected int health;
+	
+	protected final AnimationState animation = new AnimationState();
+	
+	/**
+	 * Tick of the last state copied from another world, see {@link World#mirror(WorldSnapshot)}.
+	 */
+	long mirrored = -1;
+	
+	/**
+	 * Latest movement input received for the entity.
+	 */
+	private volatile int inputMask = 0;
+	private volatile float inputYaw = 0;
+	
+	public WorldEntity(int id, byte kind) {
+		this.id = id;
+		this.kind = kind;
+		this.speed = kind == PLAYER ? PLAYER_SPEED : kind == SPECTATOR ? SPECTATOR_SPEED : 0;
+	}
+	
+	/**
+	 * Sets the movement input to apply on the next tick.
+	 * @param mask The movement bits.
+	 * @param yaw The yaw of the player's camera in degrees.
+	 * @return [<b>void</b>]
+	 */
+	public void setInput(int mask, float yaw) {
+		this.inputYaw = yaw;
+		this.inputMask = mask;
+	}
+	
+	/**
+	 * Ticks the entity's logic.
+	 * @param tick The world's tick.
+	 * @return [<b>void</b>]
+	 */
+	public void tick(long tick) {
+		tick(tick, 1);
+	}
+	
+	/**
+	 * Ticks the entity's logic over several world ticks at once.
+	 * @param tick The world's tick.
+	 * @param steps The number of world ticks the tick stands for.
+	 * @return [<b>void</b>]
+	 */
+	public void tick(long tick, int steps) {
+		
+		if(kind == PLAYER || kind == SPECTATOR)
+			updateVelocity(inputMask, inputYaw);
+		
+		translate(velX * steps, velY * steps, velZ * steps);
+		updateAnimation(tick);
+		
+	}
+	
+	/**
+	 * Walks while moving, at a pace matching the entity's speed, and idles otherwise.
+	 * @param tick The world's tick.
+	 * @return [<b>void</b>]
+	 */
+	private void updateAnimation(long tick) {
+		float moved = (float) Math.sqrt(velX * velX + velY * velY + velZ * velZ);
+		if(moved > 0)
+			animation.play(AnimationState.WALK, tick, Math.max(1, Math.round(moved / PLAYER_SPEED * 16)) / 16f);
+		else
+			animation.play(AnimationState.IDLE, tick, 1);
+	}
+	
+	/**
+	 * Updates the velocity of the entity from movement input, relative to the camera's yaw.
+	 * @param mask The movement bits.
+	 * @param yaw The yaw of the camera in degrees.
+	 * @return [<b>void</b>]
+	 */
+	public void updateVelocity(int mask, float yaw) {
+		
+		float dx = 0, dz = 0;
+		
+		if((mask & FORWARD) != 0)
+			dz -= 1;
+		
+		if((mask & BACKWARD) != 0)
+			dz += 1;
+		
+		if((mask & LEFT) != 0)
+			dx -= 1;
+		
+		if((mask & RIGHT) != 0)
+			dx += 1;
+		
+		dx *= speed;
+		dz *= speed;
+		
+		// Transposed yaw rotation, same as the player's camera relative movement.
+		float cos = (float) Math.cos(Math.toRadians(yaw));
+		float sin = (float) Math.sin(Math.toRadians(yaw));
+		setVelocity(cos * dx - sin * dz, 0, sin * dx + cos * dz);
+		
+		// Players face the direction the camera looks at while moving.
+		if(dx != 0 || dz != 0)
+			rotZ = -yaw + 180;
+		
+	}
+	
+	public void setPosition(float x, float y, float z) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+	}
+	
+	public void setRotation(float rotX, float rotY, float rotZ) {
+		this.rotX = rotX;
+		this.rotY = rotY;
+		this.rotZ = rotZ;
+	}
+	
+	public void setVelocity(float velX, float velY, float velZ) {
+		this.velX = velX;
+		this.velY = velY;
+		this.velZ = velZ;
+	}
+	
+	/**
+	 * Copies the state of the same entity in another world. The velocity is
+	 * derived from the movement since the last copy.
+	 * @param source The entity's state.
+	 * @param tick The tick of the state.
+	 * @return [<b>void</b>]
+	 */
+	void mirror(WorldEntity source, long tick) {
+		if(mirrored >= 0 && tick > mirrored) {
+			float ticks = tick - mirrored;
+			setVelocity((source.x - x) / ticks, (source.y - y) / ticks, (source.z - z) / ticks);
+		}
+		setPosition(source.x, source.y, source.z);
+		setRotation(source.rotX, source.rotY, source.rotZ);
+		animation.set(source.animation);
+		mirrored = tick;
+	}
+	
+	public void translate(float dx, float dy, float dz) {
+		this.x += dx;
+		this.y += dy;
+		this.z += dz;
+	}
+	
+	public void stop() {
+		setVelocity(0, 0, 0);
+	}
+	
+	public int getId() {
+		return id;
+	}
+	
+	public byte getKind() {
+		return kind;
+	}
+	
+	public float getX() {
+		return x;
+	}
+	
+	public float getY() {
+		return y;
+	}
+	
+	public float getZ() {
+		return z;
+	}
+	
+	public float getRotX() {
+		return rotX;
+	}
+	
+	public float getRotY() {
+		return rotY;
+	}
+	
+	public float getRotZ() {
+		return rotZ;
+	}
+	
+	public float getSpeed() {
+		return speed;
+	}
+	
+	public void setSpeed(float speed) {
+		this.speed = speed;
+	}
+	
+	public AnimationState getAnimation() {
+		return animation;
+	}
+	
+	public int getHealth() {
+		return health;
+	}
+	
+	public void setHealth(int health) {
+		this.health = health;
+	}
+	
+}
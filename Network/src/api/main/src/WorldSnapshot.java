@@ -0,0 +1,43 @@
+package api.main.src;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Entity states received in a state packet from the server's {@link World}.
+ */
+public class WorldSnapshot {
+	
+	public final long tick;
+	public final int chunk;
+	public final WorldEntity[] entities;
+	
+	private WorldSnapshot(long tick, int chunk, WorldEntity[] entities) {
+		this.tick = tick;
+		this.chunk = chunk;
+		this.entities = entities;
+	}
+	
+	/**
+	 * Reads the content of a state packet.
+	 * @param content The packet's content.
+	 * @return [{@link WorldSnapshot}] The snapshot, or null if the content is invalid.
+	 */
+	public static WorldSnapshot fromData(byte[] content) {
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(content);
+			long tick = buffer.getLong();
+			int chunk = buffer.getShort();
+			WorldEntity[] entities = new WorldEntity[buffer.getShort()];
+			
+			for(int i = 0; i < entities.length; i++) {
+				entities[i] = new WorldEntity(buffer.getInt(), buffer.get());
+				entities[i].setPosition(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+				entities[i].setRotation(buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+				entities[i].animation.read(buffer, tick);
+			}
+			
+			return new WorldSnapshot(tick, chunk, entities);
+		}catch(Exception e) {return null;}
+	}
+	
+}
@@ -0,0 +1,47 @@
+package api.main.src;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Rectangular area of the world owned by a single {@link Server}.
+ */
+public class Zone {
+	
+	private final float minX, minZ, maxX, maxZ;
+	private final InetSocketAddress address;
+	
+	/**
+	 * Creates a zone.
+	 * @param minX The lowest x coordinate of the zone (inclusive).
+	 * @param minZ The lowest z coordinate of the zone (inclusive).
+	 * @param maxX The highest x coordinate of the zone (exclusive).
+	 * @param maxZ The highest z coordinate of the zone (exclusive).
+	 * @param address The address clients and other servers reach the zone's server at.
+	 */
+	public Zone(float minX, float minZ, float maxX, float maxZ, InetSocketAddress address) {
+		if(maxX <= minX || maxZ <= minZ)
+			throw new RuntimeException("Invalid zone bounds.");
+		this.minX = minX;
+		this.minZ = minZ;
+		this.maxX = maxX;
+		this.maxZ = maxZ;
+		this.address = address;
+	}
+	
+	public boolean contains(float x, float z) {
+		return x >= minX && x < maxX && z >= minZ && z < maxZ;
+	}
+	
+	public boolean contains(WorldEntity entity) {
+		return contains(entity.getX(), entity.getZ());
+	}
+	
+	public InetSocketAddress getAddress() {
+		return address;
+	}
+	
+	public String toString() {
+		return "[" + minX + ", " + minZ + " -> " + maxX + ", " + maxZ + "] " + address;
+	}
+	
+}
@@ -0,0 +1,47 @@
+package api.main.src;
+
+import java.util.ArrayList;
+
+/**
+ * The zones the world is split into, shared by every server of a cluster.
+ * All servers must be created with the same zones in the same order.
+ */
+public class ZoneMap {
+	
+	private ArrayList<Zone> zones = new ArrayList<Zone>();
+	
+	public static ZoneMap create() {
+		return new ZoneMap();
+	}
+	
+	public ZoneMap add(Zone zone) {
+		zones.add(zone);
+		return this;
+	}
+	
+	public Zone get(int index) {
+		return zones.get(index);
+	}
+	
+	public int indexOf(Zone zone) {
+		return zones.indexOf(zone);
+	}
+	
+	public int size() {
+		return zones.size();
+	}
+	
+	/**
+	 * Returns the zone containing a point.
+	 * @param x The x coordinate.
+	 * @param z The z coordinate.
+	 * @return [{@link Zone}] The zone, or null if no zone contains the point.
+	 */
+	public Zone zoneAt(float x, float z) {
+		for(Zone zone : zones)
+			if(zone.contains(x, z))
+				return zone;
+		return null;
+	}
+	
+}